@@ -1,5 +1,7 @@
 package com.okta.developer.blog.config;
 
+import com.okta.developer.blog.repository.search.IndexPartitioning;
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -9,4 +11,808 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * See {@link tech.jhipster.config.JHipsterProperties} for a good example.
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
-public class ApplicationProperties {}
+public class ApplicationProperties {
+
+    private final Elasticsearch elasticsearch = new Elasticsearch();
+
+    public Elasticsearch getElasticsearch() {
+        return elasticsearch;
+    }
+
+    public static class Elasticsearch {
+
+        private final Bulk bulk = new Bulk();
+
+        private final Reindex reindex = new Reindex();
+
+        private final Search search = new Search();
+
+        private final Propagation propagation = new Propagation();
+
+        private final Partitioning partitioning = new Partitioning();
+
+        private final Routing routing = new Routing();
+
+        private final Sorting sorting = new Sorting();
+
+        private final ChangeStream changeStream = new ChangeStream();
+
+        private final Reconcile reconcile = new Reconcile();
+
+        private final Index index = new Index();
+
+        public Bulk getBulk() {
+            return bulk;
+        }
+
+        public Reindex getReindex() {
+            return reindex;
+        }
+
+        public Search getSearch() {
+            return search;
+        }
+
+        public Propagation getPropagation() {
+            return propagation;
+        }
+
+        public Partitioning getPartitioning() {
+            return partitioning;
+        }
+
+        public Routing getRouting() {
+            return routing;
+        }
+
+        public Sorting getSorting() {
+            return sorting;
+        }
+
+        public ChangeStream getChangeStream() {
+            return changeStream;
+        }
+
+        public Reconcile getReconcile() {
+            return reconcile;
+        }
+
+        public Index getIndex() {
+            return index;
+        }
+
+        public static class Index {
+
+            /**
+             * Number of primary shards of each search index, fixed once the index is created.
+             */
+            private int numberOfShards = 1;
+
+            /**
+             * Number of replicas of each shard: 0 on a single node cluster, which cannot allocate them.
+             */
+            private int numberOfReplicas = 1;
+
+            public int getNumberOfShards() {
+                return numberOfShards;
+            }
+
+            public void setNumberOfShards(int numberOfShards) {
+                this.numberOfShards = numberOfShards;
+            }
+
+            public int getNumberOfReplicas() {
+                return numberOfReplicas;
+            }
+
+            public void setNumberOfReplicas(int numberOfReplicas) {
+                this.numberOfReplicas = numberOfReplicas;
+            }
+        }
+
+        public static class Bulk {
+
+            /**
+             * Maximum number of index/delete operations sent in one {@code _bulk} request.
+             */
+            private int maxActions = 500;
+
+            /**
+             * Maximum time an operation waits for its batch to fill up before it is flushed.
+             */
+            private Duration flushInterval = Duration.ofMillis(200);
+
+            /**
+             * Number of {@code _bulk} requests allowed in flight at the same time.
+             */
+            private int concurrency = 2;
+
+            /**
+             * Maximum number of operations queued or in flight; callers wait for a free slot beyond that.
+             */
+            private int queueCapacity = 10000;
+
+            /**
+             * How long a caller waits for a free slot before its operation is rejected.
+             */
+            private Duration enqueueTimeout = Duration.ofSeconds(30);
+
+            public int getMaxActions() {
+                return maxActions;
+            }
+
+            public void setMaxActions(int maxActions) {
+                this.maxActions = maxActions;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+
+            public int getConcurrency() {
+                return concurrency;
+            }
+
+            public void setConcurrency(int concurrency) {
+                this.concurrency = concurrency;
+            }
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public Duration getEnqueueTimeout() {
+                return enqueueTimeout;
+            }
+
+            public void setEnqueueTimeout(Duration enqueueTimeout) {
+                this.enqueueTimeout = enqueueTimeout;
+            }
+        }
+
+        public static class Reindex {
+
+            /**
+             * Number of {@code _id} ranges of a collection read in parallel during a reindex.
+             */
+            private int slices = 4;
+
+            /**
+             * Number of documents in flight per slice during a reindex.
+             */
+            private int concurrency = 64;
+
+            public int getSlices() {
+                return slices;
+            }
+
+            public void setSlices(int slices) {
+                this.slices = slices;
+            }
+
+            public int getConcurrency() {
+                return concurrency;
+            }
+
+            public void setConcurrency(int concurrency) {
+                this.concurrency = concurrency;
+            }
+        }
+
+        public static class Propagation {
+
+            /**
+             * Number of scrolls run in parallel by an {@code _update_by_query}, 0 for one per shard.
+             */
+            private int slices = 0;
+
+            /**
+             * Maximum number of documents an {@code _update_by_query} updates per second, 0 for no limit.
+             */
+            private float requestsPerSecond = 1000;
+
+            /**
+             * Number of documents updated per scroll batch.
+             */
+            private int batchSize = 1000;
+
+            /**
+             * How often the progress of a running {@code _update_by_query} is polled.
+             */
+            private Duration pollInterval = Duration.ofSeconds(1);
+
+            public int getSlices() {
+                return slices;
+            }
+
+            public void setSlices(int slices) {
+                this.slices = slices;
+            }
+
+            public float getRequestsPerSecond() {
+                return requestsPerSecond;
+            }
+
+            public void setRequestsPerSecond(float requestsPerSecond) {
+                this.requestsPerSecond = requestsPerSecond;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getPollInterval() {
+                return pollInterval;
+            }
+
+            public void setPollInterval(Duration pollInterval) {
+                this.pollInterval = pollInterval;
+            }
+        }
+
+        public static class Partitioning {
+
+            /**
+             * Split the posts into one index per time interval, behind the {@code post} alias. An existing post index
+             * must be rebuilt after enabling it: until then, the {@code post} index is in the way of the alias and
+             * the writes of posts fail.
+             */
+            private boolean enabled = false;
+
+            /**
+             * Length of the time interval covered by each post index.
+             */
+            private IndexPartitioning.Interval interval = IndexPartitioning.Interval.MONTH;
+
+            /**
+             * Number of intervals after its end that a post index is force merged, 0 to never merge.
+             */
+            private int mergeAfter = 2;
+
+            /**
+             * How often the next post index is created and the old ones are force merged, in ISO-8601 format.
+             */
+            private Duration maintenanceInterval = Duration.ofHours(1);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public IndexPartitioning.Interval getInterval() {
+                return interval;
+            }
+
+            public void setInterval(IndexPartitioning.Interval interval) {
+                this.interval = interval;
+            }
+
+            public int getMergeAfter() {
+                return mergeAfter;
+            }
+
+            public void setMergeAfter(int mergeAfter) {
+                this.mergeAfter = mergeAfter;
+            }
+
+            public Duration getMaintenanceInterval() {
+                return maintenanceInterval;
+            }
+
+            public void setMaintenanceInterval(Duration maintenanceInterval) {
+                this.maintenanceInterval = maintenanceInterval;
+            }
+        }
+
+        public static class Routing {
+
+            /**
+             * Route the post documents by the id of their blog, so that the searches scoped to a blog only query one
+             * shard. Only useful with several shards ({@code application.elasticsearch.index.number-of-shards}); the
+             * post index must be rebuilt after changing it.
+             */
+            private boolean postByBlog = false;
+
+            public boolean isPostByBlog() {
+                return postByBlog;
+            }
+
+            public void setPostByBlog(boolean postByBlog) {
+                this.postByBlog = postByBlog;
+            }
+        }
+
+        public static class Sorting {
+
+            /**
+             * Sort the segments of the post indices by date, newest first, so that the searches showing the latest
+             * posts first can stop collecting early. Slows down indexing; the post index must be rebuilt after changing it.
+             */
+            private boolean postByDate = false;
+
+            public boolean isPostByDate() {
+                return postByDate;
+            }
+
+            public void setPostByDate(boolean postByDate) {
+                this.postByDate = postByDate;
+            }
+        }
+
+        public static class ChangeStream {
+
+            /**
+             * Index the changes from the MongoDB change stream in the background instead of during the requests.
+             * Requires MongoDB to run as a replica set.
+             */
+            private boolean enabled = false;
+
+            /**
+             * Maximum number of changes applied to Elasticsearch at once.
+             */
+            private int batchSize = 500;
+
+            /**
+             * Maximum time a change waits for its batch to fill up before it is applied.
+             */
+            private Duration flushInterval = Duration.ofMillis(200);
+
+            /**
+             * First delay before resuming the change stream after a failure, doubled on each consecutive failure.
+             */
+            private Duration retryBackoff = Duration.ofSeconds(1);
+
+            /**
+             * Time after which the lease of the instance tailing the change stream expires if it is not renewed,
+             * letting another instance take it over.
+             */
+            private Duration leaseDuration = Duration.ofSeconds(30);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+
+            public Duration getRetryBackoff() {
+                return retryBackoff;
+            }
+
+            public void setRetryBackoff(Duration retryBackoff) {
+                this.retryBackoff = retryBackoff;
+            }
+
+            public Duration getLeaseDuration() {
+                return leaseDuration;
+            }
+
+            public void setLeaseDuration(Duration leaseDuration) {
+                this.leaseDuration = leaseDuration;
+            }
+        }
+
+        public static class Reconcile {
+
+            /**
+             * Interval between two consistency checks of the search indices against MongoDB.
+             */
+            private Duration interval = Duration.ofHours(24);
+
+            /**
+             * Number of documents compared at once.
+             */
+            private int chunkSize = 500;
+
+            /**
+             * Pause between two chunks, limiting the load of a check on MongoDB and Elasticsearch.
+             */
+            private Duration chunkDelay = Duration.ofMillis(100);
+
+            public Duration getInterval() {
+                return interval;
+            }
+
+            public void setInterval(Duration interval) {
+                this.interval = interval;
+            }
+
+            public int getChunkSize() {
+                return chunkSize;
+            }
+
+            public void setChunkSize(int chunkSize) {
+                this.chunkSize = chunkSize;
+            }
+
+            public Duration getChunkDelay() {
+                return chunkDelay;
+            }
+
+            public void setChunkDelay(Duration chunkDelay) {
+                this.chunkDelay = chunkDelay;
+            }
+        }
+
+        public static class Search {
+
+            /**
+             * How long the point in time of a cursor-paginated search is kept open between two pages.
+             */
+            private Duration cursorKeepAlive = Duration.ofMinutes(1);
+
+            /**
+             * The number of matching documents a search counts exactly, past which its total is only a lower bound,
+             * 0 to leave the default of Elasticsearch (10000). Counting all the matches of a broad query dominates its
+             * latency.
+             */
+            private int totalHitsUpTo = 0;
+
+            private final Cache cache = new Cache();
+
+            private final Suggest suggest = new Suggest();
+
+            private final Resilience resilience = new Resilience();
+
+            private final SlowLog slowLog = new SlowLog();
+
+            private final Guard guard = new Guard();
+
+            public Duration getCursorKeepAlive() {
+                return cursorKeepAlive;
+            }
+
+            public void setCursorKeepAlive(Duration cursorKeepAlive) {
+                this.cursorKeepAlive = cursorKeepAlive;
+            }
+
+            public int getTotalHitsUpTo() {
+                return totalHitsUpTo;
+            }
+
+            public void setTotalHitsUpTo(int totalHitsUpTo) {
+                this.totalHitsUpTo = totalHitsUpTo;
+            }
+
+            public Cache getCache() {
+                return cache;
+            }
+
+            public Suggest getSuggest() {
+                return suggest;
+            }
+
+            public Resilience getResilience() {
+                return resilience;
+            }
+
+            public SlowLog getSlowLog() {
+                return slowLog;
+            }
+
+            public Guard getGuard() {
+                return guard;
+            }
+
+            public static class Guard {
+
+                /**
+                 * Maximum number of characters of a query string.
+                 */
+                private int maxLength = 500;
+
+                /**
+                 * Maximum number of terms, phrases and ranges of a query string.
+                 */
+                private int maxClauses = 32;
+
+                /**
+                 * Maximum nesting of the parentheses of a query string.
+                 */
+                private int maxDepth = 4;
+
+                /**
+                 * Maximum number of terms a fuzzy term of a query string is expanded to.
+                 */
+                private int fuzzyMaxExpansions = 10;
+
+                /**
+                 * Maximum number of hits of a page of search results.
+                 */
+                private int maxPageSize = 100;
+
+                /**
+                 * Time after which Elasticsearch returns the hits of a query string search collected so far.
+                 */
+                private Duration timeout = Duration.ofSeconds(1);
+
+                /**
+                 * Number of hits per shard after which Elasticsearch stops collecting the hits of a query string search, 0 for no limit.
+                 */
+                private int terminateAfter = 100000;
+
+                public int getMaxLength() {
+                    return maxLength;
+                }
+
+                public void setMaxLength(int maxLength) {
+                    this.maxLength = maxLength;
+                }
+
+                public int getMaxClauses() {
+                    return maxClauses;
+                }
+
+                public void setMaxClauses(int maxClauses) {
+                    this.maxClauses = maxClauses;
+                }
+
+                public int getMaxDepth() {
+                    return maxDepth;
+                }
+
+                public void setMaxDepth(int maxDepth) {
+                    this.maxDepth = maxDepth;
+                }
+
+                public int getFuzzyMaxExpansions() {
+                    return fuzzyMaxExpansions;
+                }
+
+                public void setFuzzyMaxExpansions(int fuzzyMaxExpansions) {
+                    this.fuzzyMaxExpansions = fuzzyMaxExpansions;
+                }
+
+                public int getMaxPageSize() {
+                    return maxPageSize;
+                }
+
+                public void setMaxPageSize(int maxPageSize) {
+                    this.maxPageSize = maxPageSize;
+                }
+
+                public Duration getTimeout() {
+                    return timeout;
+                }
+
+                public void setTimeout(Duration timeout) {
+                    this.timeout = timeout;
+                }
+
+                public int getTerminateAfter() {
+                    return terminateAfter;
+                }
+
+                public void setTerminateAfter(int terminateAfter) {
+                    this.terminateAfter = terminateAfter;
+                }
+            }
+
+            public static class Cache {
+
+                /**
+                 * Maximum number of cached search results, 0 to disable the cache.
+                 */
+                private int maximumSize = 1000;
+
+                /**
+                 * How long a search result is cached, bounding how long a write can be missing from it.
+                 */
+                private Duration timeToLive = Duration.ofSeconds(10);
+
+                public int getMaximumSize() {
+                    return maximumSize;
+                }
+
+                public void setMaximumSize(int maximumSize) {
+                    this.maximumSize = maximumSize;
+                }
+
+                public Duration getTimeToLive() {
+                    return timeToLive;
+                }
+
+                public void setTimeToLive(Duration timeToLive) {
+                    this.timeToLive = timeToLive;
+                }
+            }
+
+            public static class Suggest {
+
+                /**
+                 * Time budget of a suggest request, past which no suggestion is returned.
+                 */
+                private Duration timeout = Duration.ofMillis(50);
+
+                /**
+                 * Number of the most used tags kept in memory to complete prefixes without a search.
+                 */
+                private int hotTags = 100;
+
+                /**
+                 * How often the most used tags are reloaded, in ISO-8601 format.
+                 */
+                private Duration hotTagsRefreshInterval = Duration.ofMinutes(5);
+
+                public Duration getTimeout() {
+                    return timeout;
+                }
+
+                public void setTimeout(Duration timeout) {
+                    this.timeout = timeout;
+                }
+
+                public int getHotTags() {
+                    return hotTags;
+                }
+
+                public void setHotTags(int hotTags) {
+                    this.hotTags = hotTags;
+                }
+
+                public Duration getHotTagsRefreshInterval() {
+                    return hotTagsRefreshInterval;
+                }
+
+                public void setHotTagsRefreshInterval(Duration hotTagsRefreshInterval) {
+                    this.hotTagsRefreshInterval = hotTagsRefreshInterval;
+                }
+            }
+
+            public static class Resilience {
+
+                /**
+                 * Time budget of a search, past which it fails and counts as a failure of Elasticsearch.
+                 */
+                private Duration timeout = Duration.ofSeconds(2);
+
+                /**
+                 * Maximum number of searches running at the same time, past which searches are rejected.
+                 */
+                private int maxConcurrentSearches = 64;
+
+                /**
+                 * Percentage of failed searches opening the circuit breaker.
+                 */
+                private float failureRateThreshold = 50;
+
+                /**
+                 * Number of the latest searches the failure rate is computed on.
+                 */
+                private int slidingWindowSize = 20;
+
+                /**
+                 * Minimum number of searches before the failure rate is computed.
+                 */
+                private int minimumNumberOfCalls = 10;
+
+                /**
+                 * How long the circuit breaker stays open before letting trial searches through.
+                 */
+                private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+
+                /**
+                 * Number of trial searches deciding whether the circuit breaker closes again.
+                 */
+                private int permittedCallsInHalfOpenState = 3;
+
+                public Duration getTimeout() {
+                    return timeout;
+                }
+
+                public void setTimeout(Duration timeout) {
+                    this.timeout = timeout;
+                }
+
+                public int getMaxConcurrentSearches() {
+                    return maxConcurrentSearches;
+                }
+
+                public void setMaxConcurrentSearches(int maxConcurrentSearches) {
+                    this.maxConcurrentSearches = maxConcurrentSearches;
+                }
+
+                public float getFailureRateThreshold() {
+                    return failureRateThreshold;
+                }
+
+                public void setFailureRateThreshold(float failureRateThreshold) {
+                    this.failureRateThreshold = failureRateThreshold;
+                }
+
+                public int getSlidingWindowSize() {
+                    return slidingWindowSize;
+                }
+
+                public void setSlidingWindowSize(int slidingWindowSize) {
+                    this.slidingWindowSize = slidingWindowSize;
+                }
+
+                public int getMinimumNumberOfCalls() {
+                    return minimumNumberOfCalls;
+                }
+
+                public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+                    this.minimumNumberOfCalls = minimumNumberOfCalls;
+                }
+
+                public Duration getWaitDurationInOpenState() {
+                    return waitDurationInOpenState;
+                }
+
+                public void setWaitDurationInOpenState(Duration waitDurationInOpenState) {
+                    this.waitDurationInOpenState = waitDurationInOpenState;
+                }
+
+                public int getPermittedCallsInHalfOpenState() {
+                    return permittedCallsInHalfOpenState;
+                }
+
+                public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+                    this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+                }
+            }
+
+            public static class SlowLog {
+
+                /**
+                 * Round trip from which a search is logged as slow, 0 to disable the slow search log.
+                 */
+                private Duration threshold = Duration.ofMillis(500);
+
+                /**
+                 * Number of the latest slow searches kept in memory.
+                 */
+                private int size = 100;
+
+                public Duration getThreshold() {
+                    return threshold;
+                }
+
+                public void setThreshold(Duration threshold) {
+                    this.threshold = threshold;
+                }
+
+                public int getSize() {
+                    return size;
+                }
+
+                public void setSize(int size) {
+                    this.size = size;
+                }
+            }
+        }
+    }
+}
@@ -1,16 +1,49 @@
 package com.okta.developer.blog.config;
 
+import static java.util.Map.entry;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.ElasticsearchByQueryUpdater;
+import com.okta.developer.blog.repository.search.ElasticsearchIndexManager;
+import com.okta.developer.blog.repository.search.ElasticsearchMappings;
+import com.okta.developer.blog.repository.search.ElasticsearchSearchExecutor;
+import com.okta.developer.blog.repository.search.HotSuggestions;
+import com.okta.developer.blog.repository.search.IndexPartitioning;
+import com.okta.developer.blog.repository.search.IndexRouting;
+import com.okta.developer.blog.repository.search.SearchQueryGuard;
+import com.okta.developer.blog.repository.search.SearchResultCache;
+import com.okta.developer.blog.repository.search.SlowSearchLog;
+import com.okta.developer.blog.service.ElasticsearchChangeStreamIndexer;
+import com.okta.developer.blog.service.ElasticsearchReconciler;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.convert.ReadingConverter;
 import org.springframework.data.convert.WritingConverter;
 import org.springframework.data.elasticsearch.config.ElasticsearchConfigurationSupport;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.convert.ElasticsearchCustomConversions;
 import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentProperty;
 import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
@@ -20,10 +53,15 @@ import org.springframework.data.mapping.PersistentEntity;
 import org.springframework.data.mapping.model.Property;
 import org.springframework.data.mapping.model.PropertyNameFieldNamingStrategy;
 import org.springframework.data.mapping.model.SimpleTypeHolder;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.IntervalTask;
 
 @Configuration
 public class ElasticsearchConfiguration extends ElasticsearchConfigurationSupport {
 
+    private static final String SEARCH_CIRCUIT_BREAKER = "elasticsearch";
+
     @Bean
     @Override
     public ElasticsearchCustomConversions elasticsearchCustomConversions() {
@@ -119,6 +157,371 @@ public class ElasticsearchConfiguration extends ElasticsearchConfigurationSuppor
         mappingContext.setSimpleTypeHolder(this.elasticsearchCustomConversions().getSimpleTypeHolder());
         return mappingContext;
     }
+
+    /**
+     * Explicit settings and mappings of the search indices. Only the fields that are searched, sorted or
+     * aggregated on are indexed: other fields, like the relationships embedded in the blog and user
+     * documents, are kept in {@code _source} only.
+     */
+    @Bean
+    public ElasticsearchMappings elasticsearchMappings(ApplicationProperties applicationProperties) {
+        ApplicationProperties.Elasticsearch.Index index = applicationProperties.getElasticsearch().getIndex();
+        Map<String, Object> postSettings = indexSettings(index);
+        if (applicationProperties.getElasticsearch().getSorting().isPostByDate()) {
+            // the same order as the default sort of the post searches, id included, so that they can terminate early
+            postSettings.put("index.sort.field", List.of("date", "id"));
+            postSettings.put("index.sort.order", List.of("desc", "asc"));
+        }
+        return new ElasticsearchMappings()
+            .register(PostSearchDocument.class, postSettings, postMapping())
+            .register(TagSearchDocument.class, indexSettings(index), tagMapping())
+            .register(Blog.class, indexSettings(index), blogMapping())
+            .register(User.class, indexSettings(index), userMapping());
+    }
+
+    private static Map<String, Object> indexSettings(ApplicationProperties.Elasticsearch.Index index) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("index.number_of_shards", index.getNumberOfShards());
+        settings.put("index.number_of_replicas", index.getNumberOfReplicas());
+        return settings;
+    }
+
+    private static Map<String, Object> postMapping() {
+        return rootMapping(
+            Map.ofEntries(
+                entry("id", keyword()),
+                entry("title", withOffsets(withCompletion(sortableText()))),
+                entry("content", withOffsets(text())),
+                entry("excerpt", Map.of("type", "text", "index", false)),
+                entry("date", date()),
+                entry("blogId", keyword()),
+                entry("blogName", sortableText()),
+                entry("blogHandle", keyword()),
+                entry("tagNames", keyword())
+            )
+        );
+    }
+
+    private static Map<String, Object> tagMapping() {
+        return rootMapping(Map.ofEntries(entry("id", keyword()), entry("name", withCompletion(sortableText()))));
+    }
+
+    private static Map<String, Object> blogMapping() {
+        return rootMapping(
+            Map.ofEntries(
+                entry("id", keyword()),
+                entry("name", sortableText()),
+                entry("handle", keyword()),
+                entry(
+                    "user",
+                    object(
+                        Map.ofEntries(
+                            entry("id", keyword()),
+                            entry("login", keyword()),
+                            entry("firstName", sortableText()),
+                            entry("lastName", sortableText()),
+                            entry("email", keyword())
+                        )
+                    )
+                )
+            )
+        );
+    }
+
+    private static Map<String, Object> userMapping() {
+        return rootMapping(
+            Map.ofEntries(
+                entry("id", keyword()),
+                entry("login", keyword()),
+                entry("firstName", sortableText()),
+                entry("lastName", sortableText()),
+                entry("email", keyword()),
+                entry("activated", Map.of("type", "boolean")),
+                entry("langKey", keyword()),
+                entry("imageUrl", Map.of("type", "keyword", "index", false, "doc_values", false)),
+                entry("authorities", object(Map.of("name", keyword()))),
+                entry("createdBy", keyword()),
+                entry("createdDate", date()),
+                entry("lastModifiedBy", keyword()),
+                entry("lastModifiedDate", date())
+            )
+        );
+    }
+
+    /**
+     * Root of an index mapping: unmapped fields are stored in {@code _source} but not indexed, and neither the
+     * {@code _class} type hint written by Spring Data nor the content hash written by the bulk indexer are indexed
+     * or sortable.
+     */
+    private static Map<String, Object> rootMapping(Map<String, Object> properties) {
+        Map<String, Object> rootProperties = new LinkedHashMap<>(properties);
+        rootProperties.put("_class", Map.of("type", "keyword", "index", false, "doc_values", false));
+        rootProperties.put(ElasticsearchBulkIndexer.HASH_FIELD, Map.of("type", "keyword", "index", false, "doc_values", false));
+        Map<String, Object> mapping = new LinkedHashMap<>();
+        mapping.put("dynamic", false);
+        mapping.put("properties", rootProperties);
+        return mapping;
+    }
+
+    private static Map<String, Object> object(Map<String, Object> properties) {
+        return Map.of("type", "object", "properties", properties);
+    }
+
+    private static Map<String, Object> keyword() {
+        return Map.of("type", "keyword");
+    }
+
+    private static Map<String, Object> text() {
+        return Map.of("type", "text");
+    }
+
+    /**
+     * A full-text field with a {@code keyword} sub-field to sort on.
+     */
+    private static Map<String, Object> sortableText() {
+        return Map.of("type", "text", "fields", Map.of("keyword", Map.of("type", "keyword", "ignore_above", 256)));
+    }
+
+    /**
+     * Indexes the character offsets of the terms of a full-text field, so that highlighting does not need
+     * to re-analyze the whole field of every hit.
+     */
+    private static Map<String, Object> withOffsets(Map<String, Object> field) {
+        Map<String, Object> mapping = new LinkedHashMap<>(field);
+        mapping.put("index_options", "offsets");
+        return mapping;
+    }
+
+    /**
+     * Adds a {@code suggest} sub-field to a field, indexing its values in the in-memory structure of the
+     * completion suggester for autocompletion.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> withCompletion(Map<String, Object> field) {
+        Map<String, Object> subFields = new LinkedHashMap<>((Map<String, Object>) field.getOrDefault("fields", Map.of()));
+        subFields.put("suggest", Map.of("type", "completion"));
+        Map<String, Object> mapping = new LinkedHashMap<>(field);
+        mapping.put("fields", subFields);
+        return mapping;
+    }
+
+    private static Map<String, Object> date() {
+        return Map.of("type", "date");
+    }
+
+    @Bean
+    public ElasticsearchBulkIndexer elasticsearchBulkIndexer(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.Elasticsearch.Bulk bulk = applicationProperties.getElasticsearch().getBulk();
+        return new ElasticsearchBulkIndexer(
+            reactiveElasticsearchTemplate,
+            elasticsearchIndexManager,
+            bulk.getMaxActions(),
+            bulk.getFlushInterval(),
+            bulk.getConcurrency(),
+            bulk.getQueueCapacity(),
+            bulk.getEnqueueTimeout()
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.elasticsearch.partitioning", name = "enabled", havingValue = "true")
+    public IndexPartitioning<PostSearchDocument> postIndexPartitioning(ApplicationProperties applicationProperties) {
+        ApplicationProperties.Elasticsearch.Partitioning partitioning = applicationProperties.getElasticsearch().getPartitioning();
+        return new IndexPartitioning<>(
+            PostSearchDocument.class,
+            "post",
+            partitioning.getInterval(),
+            partitioning.getMergeAfter(),
+            PostSearchDocument::getDate
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.elasticsearch.routing", name = "post-by-blog", havingValue = "true")
+    public IndexRouting<PostSearchDocument> postIndexRouting() {
+        return new IndexRouting<>(PostSearchDocument.class, PostSearchDocument::getBlogId);
+    }
+
+    @Bean
+    public ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        SearchResultCache<PostSearchDocument> postSearchResultCache,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.Elasticsearch.ChangeStream changeStream = applicationProperties.getElasticsearch().getChangeStream();
+        return new ElasticsearchChangeStreamIndexer(
+            reactiveMongoTemplate,
+            reactiveElasticsearchTemplate,
+            elasticsearchBulkIndexer,
+            elasticsearchIndexManager,
+            postSearchResultCache,
+            postSearchDocumentMapper,
+            tagSearchDocumentMapper,
+            meterRegistry,
+            changeStream.isEnabled(),
+            changeStream.getBatchSize(),
+            changeStream.getFlushInterval(),
+            changeStream.getRetryBackoff(),
+            changeStream.getLeaseDuration()
+        );
+    }
+
+    @Bean
+    public ElasticsearchReconciler elasticsearchReconciler(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchSearchExecutor elasticsearchSearchExecutor,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.Elasticsearch.Reconcile reconcile = applicationProperties.getElasticsearch().getReconcile();
+        return new ElasticsearchReconciler(
+            reactiveMongoTemplate,
+            reactiveElasticsearchTemplate,
+            elasticsearchSearchExecutor,
+            elasticsearchBulkIndexer,
+            elasticsearchIndexManager,
+            postSearchDocumentMapper,
+            tagSearchDocumentMapper,
+            meterRegistry,
+            reconcile.getChunkSize(),
+            reconcile.getChunkDelay()
+        );
+    }
+
+    /**
+     * Schedule the checks of the search indices from the bound interval: the {@code @Scheduled} delay strings only
+     * accept ISO-8601 durations or milliseconds, not the {@code 24h} form of the other durations.
+     */
+    @Bean
+    public SchedulingConfigurer elasticsearchReconcilerScheduling(
+        ElasticsearchReconciler elasticsearchReconciler,
+        ApplicationProperties applicationProperties
+    ) {
+        long interval = applicationProperties.getElasticsearch().getReconcile().getInterval().toMillis();
+        return taskRegistrar ->
+            taskRegistrar.addFixedDelayTask(new IntervalTask(elasticsearchReconciler::reconcileAll, interval, interval));
+    }
+
+    @Bean
+    public ElasticsearchSearchExecutor elasticsearchSearchExecutor(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ReactiveCircuitBreakerFactory<?, ?> reactiveCircuitBreakerFactory,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry,
+        SlowSearchLog slowSearchLog,
+        SearchQueryGuard searchQueryGuard
+    ) {
+        ApplicationProperties.Elasticsearch.Search search = applicationProperties.getElasticsearch().getSearch();
+        return new ElasticsearchSearchExecutor(
+            reactiveElasticsearchTemplate,
+            search.getCursorKeepAlive(),
+            search.getTotalHitsUpTo(),
+            search.getSuggest().getTimeout(),
+            reactiveCircuitBreakerFactory.create(SEARCH_CIRCUIT_BREAKER),
+            search.getResilience().getMaxConcurrentSearches(),
+            meterRegistry,
+            slowSearchLog,
+            searchQueryGuard
+        );
+    }
+
+    @Bean
+    public SlowSearchLog slowSearchLog(ApplicationProperties applicationProperties) {
+        ApplicationProperties.Elasticsearch.Search.SlowLog slowLog = applicationProperties.getElasticsearch().getSearch().getSlowLog();
+        return new SlowSearchLog(slowLog.getThreshold(), slowLog.getSize());
+    }
+
+    @Bean
+    public SearchQueryGuard searchQueryGuard(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        ApplicationProperties.Elasticsearch.Search.Guard guard = applicationProperties.getElasticsearch().getSearch().getGuard();
+        return new SearchQueryGuard(
+            guard.getMaxLength(),
+            guard.getMaxClauses(),
+            guard.getMaxDepth(),
+            guard.getFuzzyMaxExpansions(),
+            guard.getMaxPageSize(),
+            guard.getTimeout(),
+            guard.getTerminateAfter(),
+            meterRegistry
+        );
+    }
+
+    @Bean
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> searchCircuitBreakerCustomizer(
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.Elasticsearch.Search.Resilience resilience = applicationProperties
+            .getElasticsearch()
+            .getSearch()
+            .getResilience();
+        return factory ->
+            factory.configure(
+                builder ->
+                    builder
+                        .circuitBreakerConfig(
+                            CircuitBreakerConfig
+                                .custom()
+                                .failureRateThreshold(resilience.getFailureRateThreshold())
+                                .slidingWindowSize(resilience.getSlidingWindowSize())
+                                .minimumNumberOfCalls(resilience.getMinimumNumberOfCalls())
+                                .waitDurationInOpenState(resilience.getWaitDurationInOpenState())
+                                .permittedNumberOfCallsInHalfOpenState(resilience.getPermittedCallsInHalfOpenState())
+                                .recordException(ElasticsearchSearchExecutor::isFailure)
+                                .build()
+                        )
+                        .timeLimiterConfig(TimeLimiterConfig.custom().timeoutDuration(resilience.getTimeout()).build()),
+                SEARCH_CIRCUIT_BREAKER
+            );
+    }
+
+    @Bean
+    public ElasticsearchByQueryUpdater elasticsearchByQueryUpdater(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.Elasticsearch.Propagation propagation = applicationProperties.getElasticsearch().getPropagation();
+        return new ElasticsearchByQueryUpdater(
+            reactiveElasticsearchTemplate,
+            propagation.getSlices(),
+            propagation.getRequestsPerSecond(),
+            propagation.getBatchSize(),
+            propagation.getPollInterval()
+        );
+    }
+
+    @Bean
+    public SearchResultCache<PostSearchDocument> postSearchResultCache(
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        ApplicationProperties.Elasticsearch.Search.Cache cache = applicationProperties.getElasticsearch().getSearch().getCache();
+        SearchResultCache<PostSearchDocument> postSearchResultCache = new SearchResultCache<>(
+            cache.getMaximumSize(),
+            cache.getTimeToLive()
+        );
+        new SearchResultCache.Metrics(postSearchResultCache, "postSearch", Tags.empty()).bindTo(meterRegistry);
+        return postSearchResultCache;
+    }
+
+    @Bean
+    public HotSuggestions hotTagSuggestions(ApplicationProperties applicationProperties) {
+        return new HotSuggestions(applicationProperties.getElasticsearch().getSearch().getSuggest().getHotTags());
+    }
 }
 
 /**
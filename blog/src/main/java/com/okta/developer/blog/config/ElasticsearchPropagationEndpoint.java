@@ -0,0 +1,29 @@
+package com.okta.developer.blog.config;
+
+import com.okta.developer.blog.service.ElasticsearchPropagationService;
+import com.okta.developer.blog.service.dto.PropagationStatusDTO;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint to follow the propagation of blog and tag renames to the posts.
+ * <p>
+ * {@code GET /management/elasticsearchpropagation} lists the latest propagation jobs.
+ */
+@Component
+@Endpoint(id = "elasticsearchpropagation")
+public class ElasticsearchPropagationEndpoint {
+
+    private final ElasticsearchPropagationService elasticsearchPropagationService;
+
+    public ElasticsearchPropagationEndpoint(ElasticsearchPropagationService elasticsearchPropagationService) {
+        this.elasticsearchPropagationService = elasticsearchPropagationService;
+    }
+
+    @ReadOperation
+    public List<PropagationStatusDTO> statuses() {
+        return elasticsearchPropagationService.getStatuses();
+    }
+}
@@ -0,0 +1,52 @@
+package com.okta.developer.blog.config;
+
+import com.okta.developer.blog.service.ElasticsearchReconciler;
+import com.okta.developer.blog.service.dto.ReconcileStatusDTO;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint to check the search indices against MongoDB, repairing the documents that differ, and
+ * follow the progress of the checks.
+ * <p>
+ * {@code GET /management/elasticsearchreconcile} lists the checks, {@code POST /management/elasticsearchreconcile}
+ * checks every index and {@code POST /management/elasticsearchreconcile/{alias}} checks a single one.
+ */
+@Component
+@Endpoint(id = "elasticsearchreconcile")
+public class ElasticsearchReconcileEndpoint {
+
+    private final ElasticsearchReconciler elasticsearchReconciler;
+
+    public ElasticsearchReconcileEndpoint(ElasticsearchReconciler elasticsearchReconciler) {
+        this.elasticsearchReconciler = elasticsearchReconciler;
+    }
+
+    @ReadOperation
+    public List<ReconcileStatusDTO> statuses() {
+        return elasticsearchReconciler.getStatuses();
+    }
+
+    @WriteOperation
+    public List<ReconcileStatusDTO> reconcileAll() {
+        elasticsearchReconciler.reconcileAll();
+        return elasticsearchReconciler.getStatuses();
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<ReconcileStatusDTO> reconcile(@Selector String alias) {
+        try {
+            return new WebEndpointResponse<>(elasticsearchReconciler.reconcile(alias));
+        } catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(HttpStatus.CONFLICT.value());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.okta.developer.blog.config;
+
+import com.okta.developer.blog.service.ElasticsearchReindexService;
+import com.okta.developer.blog.service.dto.ReindexStatusDTO;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint to rebuild the search indices from MongoDB and follow the progress of the rebuild.
+ * <p>
+ * {@code GET /management/elasticsearchreindex} lists the jobs, {@code POST /management/elasticsearchreindex}
+ * rebuilds every index and {@code POST /management/elasticsearchreindex/{alias}} rebuilds a single one.
+ */
+@Component
+@Endpoint(id = "elasticsearchreindex")
+public class ElasticsearchReindexEndpoint {
+
+    private final ElasticsearchReindexService elasticsearchReindexService;
+
+    private final ApplicationProperties applicationProperties;
+
+    public ElasticsearchReindexEndpoint(
+        ElasticsearchReindexService elasticsearchReindexService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.elasticsearchReindexService = elasticsearchReindexService;
+        this.applicationProperties = applicationProperties;
+    }
+
+    @ReadOperation
+    public List<ReindexStatusDTO> statuses() {
+        return elasticsearchReindexService.getStatuses();
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<List<ReindexStatusDTO>> reindexAll(@Nullable Integer slices, @Nullable Integer concurrency) {
+        List<ReindexStatusDTO> started = elasticsearchReindexService
+            .getAliases()
+            .stream()
+            .map(alias -> reindex(alias, slices, concurrency))
+            .filter(response -> response.getStatus() == WebEndpointResponse.STATUS_OK)
+            .map(WebEndpointResponse::getBody)
+            .collect(Collectors.toList());
+        return new WebEndpointResponse<>(started);
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<ReindexStatusDTO> reindex(@Selector String alias, @Nullable Integer slices, @Nullable Integer concurrency) {
+        ApplicationProperties.Elasticsearch.Reindex reindex = applicationProperties.getElasticsearch().getReindex();
+        try {
+            return new WebEndpointResponse<>(
+                elasticsearchReindexService.reindex(
+                    alias,
+                    slices != null ? slices : reindex.getSlices(),
+                    concurrency != null ? concurrency : reindex.getConcurrency()
+                )
+            );
+        } catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(HttpStatus.CONFLICT.value());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.okta.developer.blog.config;
+
+import com.okta.developer.blog.repository.search.SlowSearchLog;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint listing the latest slow searches.
+ * <p>
+ * {@code GET /management/slowsearches} returns the searches slower than
+ * {@code application.elasticsearch.search.slow-log.threshold}, latest first, with their request body.
+ */
+@Component
+@Endpoint(id = "slowsearches")
+public class SlowSearchEndpoint {
+
+    private final SlowSearchLog slowSearchLog;
+
+    public SlowSearchEndpoint(SlowSearchLog slowSearchLog) {
+        this.slowSearchLog = slowSearchLog;
+    }
+
+    @ReadOperation
+    public List<SlowSearchLog.Entry> slowSearches() {
+        return slowSearchLog.getEntries();
+    }
+}
@@ -0,0 +1,46 @@
+package com.okta.developer.blog.config.dbmigrations;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.service.PostService;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+/**
+ * Computes the excerpt of the posts written before excerpts were maintained on save.
+ */
+@ChangeUnit(id = "post-excerpts", order = "002")
+public class PostExcerptMigration {
+
+    private final MongoTemplate template;
+
+    public PostExcerptMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        Query withoutExcerpt = query(where("content").exists(true).and("excerpt").exists(false));
+        try (CloseableIterator<Post> posts = template.stream(withoutExcerpt, Post.class)) {
+            posts.forEachRemaining(post ->
+                template.updateFirst(
+                    query(where("id").is(post.getId())),
+                    Update.update("excerpt", PostService.excerptOf(post.getContent())),
+                    Post.class
+                )
+            );
+        }
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.updateMulti(query(where("excerpt").exists(true)), new Update().unset("excerpt"), Post.class);
+    }
+}
@@ -0,0 +1,39 @@
+package com.okta.developer.blog.config.dbmigrations;
+
+import com.okta.developer.blog.domain.Post;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Indexes the ids of the blog and tags embedded in the posts, so that a rename only touches the posts
+ * embedding the renamed blog or tag.
+ */
+@ChangeUnit(id = "post-reference-indexes", order = "003")
+public class PostReferenceIndexesMigration {
+
+    private static final String BLOG_INDEX = "blog_id";
+
+    private static final String TAGS_INDEX = "tags_id";
+
+    private final MongoTemplate template;
+
+    public PostReferenceIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template.indexOps(Post.class).ensureIndex(new Index().on("blog._id", Sort.Direction.ASC).named(BLOG_INDEX).background());
+        template.indexOps(Post.class).ensureIndex(new Index().on("tags._id", Sort.Direction.ASC).named(TAGS_INDEX).background());
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(Post.class).dropIndex(BLOG_INDEX);
+        template.indexOps(Post.class).dropIndex(TAGS_INDEX);
+    }
+}
@@ -0,0 +1,36 @@
+package com.okta.developer.blog.config.dbmigrations;
+
+import com.okta.developer.blog.domain.Post;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+
+/**
+ * Creates the text index of the title and content of the posts, used to search them in MongoDB while
+ * Elasticsearch is unavailable. Words of the title weigh twice as much as words of the content.
+ */
+@ChangeUnit(id = "post-text-index", order = "004")
+public class PostTextIndexMigration {
+
+    private static final String TEXT_INDEX = "post_text";
+
+    private final MongoTemplate template;
+
+    public PostTextIndexMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template
+            .indexOps(Post.class)
+            .ensureIndex(TextIndexDefinition.builder().onField("title", 2F).onField("content").named(TEXT_INDEX).build());
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(Post.class).dropIndex(TEXT_INDEX);
+    }
+}
@@ -10,7 +10,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
  * A Blog.
  */
 @Document(collection = "blog")
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "blog")
+@org.springframework.data.elasticsearch.annotations.Document(indexName = "blog", createIndex = false)
 public class Blog implements Serializable {
 
     private static final long serialVersionUID = 1L;
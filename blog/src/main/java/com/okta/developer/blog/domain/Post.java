@@ -14,7 +14,6 @@ import org.springframework.data.mongodb.core.mapping.Field;
  * A Post.
  */
 @Document(collection = "post")
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "post")
 public class Post implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -29,6 +28,12 @@ public class Post implements Serializable {
     @Field("content")
     private String content;
 
+    /**
+     * Short plain-text beginning of the content, computed on each write, for list views.
+     */
+    @Field("excerpt")
+    private String excerpt;
+
     @NotNull(message = "must not be null")
     @Field("date")
     private Instant date;
@@ -82,6 +87,19 @@ public class Post implements Serializable {
         this.content = content;
     }
 
+    public String getExcerpt() {
+        return this.excerpt;
+    }
+
+    public Post excerpt(String excerpt) {
+        this.setExcerpt(excerpt);
+        return this;
+    }
+
+    public void setExcerpt(String excerpt) {
+        this.excerpt = excerpt;
+    }
+
     public Instant getDate() {
         return this.date;
     }
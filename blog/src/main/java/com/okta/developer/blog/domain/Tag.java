@@ -13,7 +13,6 @@ import org.springframework.data.mongodb.core.mapping.Field;
  * A Tag.
  */
 @Document(collection = "tag")
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "tag")
 public class Tag implements Serializable {
 
     private static final long serialVersionUID = 1L;
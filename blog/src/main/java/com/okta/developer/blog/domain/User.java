@@ -20,7 +20,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
  * A user.
  */
 @org.springframework.data.mongodb.core.mapping.Document(collection = "jhi_user")
-@org.springframework.data.elasticsearch.annotations.Document(indexName = "user")
+@org.springframework.data.elasticsearch.annotations.Document(indexName = "user", createIndex = false)
 public class User extends AbstractAuditingEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
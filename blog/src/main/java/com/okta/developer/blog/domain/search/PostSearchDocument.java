@@ -0,0 +1,182 @@
+package com.okta.developer.blog.domain.search;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+
+/**
+ * The search document of a {@link com.okta.developer.blog.domain.Post}: its own fields, with its blog and
+ * tags flattened to the fields that are searched, filtered or displayed in search results.
+ */
+@Document(indexName = "post", createIndex = false)
+public class PostSearchDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String id;
+
+    private String title;
+
+    private String content;
+
+    private String excerpt;
+
+    private Instant date;
+
+    private String blogId;
+
+    private String blogName;
+
+    private String blogHandle;
+
+    private List<String> tagNames = new ArrayList<>();
+
+    public String getId() {
+        return this.id;
+    }
+
+    public PostSearchDocument id(String id) {
+        this.setId(id);
+        return this;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return this.title;
+    }
+
+    public PostSearchDocument title(String title) {
+        this.setTitle(title);
+        return this;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getContent() {
+        return this.content;
+    }
+
+    public PostSearchDocument content(String content) {
+        this.setContent(content);
+        return this;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public String getExcerpt() {
+        return this.excerpt;
+    }
+
+    public PostSearchDocument excerpt(String excerpt) {
+        this.setExcerpt(excerpt);
+        return this;
+    }
+
+    public void setExcerpt(String excerpt) {
+        this.excerpt = excerpt;
+    }
+
+    public Instant getDate() {
+        return this.date;
+    }
+
+    public PostSearchDocument date(Instant date) {
+        this.setDate(date);
+        return this;
+    }
+
+    public void setDate(Instant date) {
+        this.date = date;
+    }
+
+    public String getBlogId() {
+        return this.blogId;
+    }
+
+    public PostSearchDocument blogId(String blogId) {
+        this.setBlogId(blogId);
+        return this;
+    }
+
+    public void setBlogId(String blogId) {
+        this.blogId = blogId;
+    }
+
+    public String getBlogName() {
+        return this.blogName;
+    }
+
+    public PostSearchDocument blogName(String blogName) {
+        this.setBlogName(blogName);
+        return this;
+    }
+
+    public void setBlogName(String blogName) {
+        this.blogName = blogName;
+    }
+
+    public String getBlogHandle() {
+        return this.blogHandle;
+    }
+
+    public PostSearchDocument blogHandle(String blogHandle) {
+        this.setBlogHandle(blogHandle);
+        return this;
+    }
+
+    public void setBlogHandle(String blogHandle) {
+        this.blogHandle = blogHandle;
+    }
+
+    public List<String> getTagNames() {
+        return this.tagNames;
+    }
+
+    public PostSearchDocument tagNames(List<String> tagNames) {
+        this.setTagNames(tagNames);
+        return this;
+    }
+
+    public void setTagNames(List<String> tagNames) {
+        this.tagNames = tagNames;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PostSearchDocument)) {
+            return false;
+        }
+        return id != null && id.equals(((PostSearchDocument) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PostSearchDocument{" +
+            "id=" + getId() +
+            ", title='" + getTitle() + "'" +
+            ", date='" + getDate() + "'" +
+            ", blogId='" + getBlogId() + "'" +
+            ", tagNames=" + getTagNames() +
+            "}";
+    }
+}
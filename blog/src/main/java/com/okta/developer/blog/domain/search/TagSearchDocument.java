@@ -0,0 +1,70 @@
+package com.okta.developer.blog.domain.search;
+
+import java.io.Serializable;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+
+/**
+ * The search document of a {@link com.okta.developer.blog.domain.Tag}, without its posts.
+ */
+@Document(indexName = "tag", createIndex = false)
+public class TagSearchDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String id;
+
+    private String name;
+
+    public String getId() {
+        return this.id;
+    }
+
+    public TagSearchDocument id(String id) {
+        this.setId(id);
+        return this;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public TagSearchDocument name(String name) {
+        this.setName(name);
+        return this;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TagSearchDocument)) {
+            return false;
+        }
+        return id != null && id.equals(((TagSearchDocument) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "TagSearchDocument{" +
+            "id=" + getId() +
+            ", name='" + getName() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Search documents, the flat representation of the domain objects in the Elasticsearch indices.
+ */
+package com.okta.developer.blog.domain.search;
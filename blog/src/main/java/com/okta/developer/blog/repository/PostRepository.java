@@ -1,7 +1,15 @@
 package com.okta.developer.blog.repository;
 
 import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.repository.search.PostSearchCriteria;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
@@ -13,7 +21,7 @@ import reactor.core.publisher.Mono;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface PostRepository extends ReactiveMongoRepository<Post, String> {
+public interface PostRepository extends ReactiveMongoRepository<Post, String>, PostRepositoryInternal {
     Flux<Post> findAllBy(Pageable pageable);
 
     @Query("{}")
@@ -25,3 +33,82 @@ public interface PostRepository extends ReactiveMongoRepository<Post, String> {
     @Query("{'id': ?0}")
     Mono<Post> findOneWithEagerRelationships(String id);
 }
+
+interface PostRepositoryInternal {
+    Flux<Post> findAllBy(Pageable pageable, List<String> fields);
+
+    Flux<Post> findAllByCriteria(PostSearchCriteria criteria, Pageable pageable, List<String> fields);
+
+    Mono<Long> countByCriteria(PostSearchCriteria criteria);
+}
+
+class PostRepositoryInternalImpl implements PostRepositoryInternal {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    PostRepositoryInternalImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Get a page of posts with only the given fields (and the id) read from the database.
+     */
+    @Override
+    public Flux<Post> findAllBy(Pageable pageable, List<String> fields) {
+        org.springframework.data.mongodb.core.query.Query query = new org.springframework.data.mongodb.core.query.Query().with(pageable);
+        fields.forEach(field -> query.fields().include(field));
+        return reactiveMongoTemplate.find(query, Post.class);
+    }
+
+    /**
+     * Get a page of the posts matching search criteria, with only the given fields (and the id) read from the
+     * database. The text is matched with the {@code post_text} text index, the best matches first unless the
+     * pageable is sorted, and the posts without text are sorted by date, newest first, unless the pageable is sorted.
+     */
+    @Override
+    public Flux<Post> findAllByCriteria(PostSearchCriteria criteria, Pageable pageable, List<String> fields) {
+        org.springframework.data.mongodb.core.query.Query query = toQuery(criteria);
+        if (pageable.getSort().isUnsorted()) {
+            if (query instanceof TextQuery) {
+                ((TextQuery) query).sortByScore();
+            } else {
+                query.with(Sort.by(Sort.Order.desc("date"), Sort.Order.asc("id")));
+            }
+        }
+        query.with(pageable);
+        fields.forEach(field -> query.fields().include(field));
+        return reactiveMongoTemplate.find(query, Post.class);
+    }
+
+    @Override
+    public Mono<Long> countByCriteria(PostSearchCriteria criteria) {
+        return reactiveMongoTemplate.count(toQuery(criteria), Post.class);
+    }
+
+    private static org.springframework.data.mongodb.core.query.Query toQuery(PostSearchCriteria criteria) {
+        if (criteria.getFrom() != null && criteria.getTo() != null && !criteria.getFrom().isBefore(criteria.getTo())) {
+            throw new IllegalArgumentException("The start of the date range must be before its end");
+        }
+        org.springframework.data.mongodb.core.query.Query query = criteria.hasText()
+            ? TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(criteria.getText().trim()))
+            : new org.springframework.data.mongodb.core.query.Query();
+        if (criteria.getBlogId() != null && !criteria.getBlogId().isBlank()) {
+            query.addCriteria(Criteria.where("blog.id").is(criteria.getBlogId()));
+        }
+        List<String> tags = criteria.getTags().stream().filter(tag -> !tag.isBlank()).collect(Collectors.toList());
+        if (!tags.isEmpty()) {
+            query.addCriteria(Criteria.where("tags.name").all(tags));
+        }
+        if (criteria.getFrom() != null || criteria.getTo() != null) {
+            Criteria date = Criteria.where("date");
+            if (criteria.getFrom() != null) {
+                date.gte(criteria.getFrom());
+            }
+            if (criteria.getTo() != null) {
+                date.lt(criteria.getTo());
+            }
+            query.addCriteria(date);
+        }
+        return query;
+    }
+}
@@ -1,13 +1,16 @@
 package com.okta.developer.blog.repository.search;
 
-import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
-
 import com.okta.developer.blog.domain.Blog;
-import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import java.util.List;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data Elasticsearch repository for the {@link Blog} entity.
@@ -15,20 +18,60 @@ import reactor.core.publisher.Flux;
 public interface BlogSearchRepository extends ReactiveElasticsearchRepository<Blog, String>, BlogSearchRepositoryInternal {}
 
 interface BlogSearchRepositoryInternal {
-    Flux<Blog> search(String query);
+    Flux<Blog> search(String query, List<String> fields);
+
+    Flux<Blog> stream(String query, List<String> fields);
 }
 
 class BlogSearchRepositoryInternalImpl implements BlogSearchRepositoryInternal {
 
-    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+    private static final int MAX_HITS = 100;
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
 
-    BlogSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
-        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+    private final SearchQueryGuard searchQueryGuard;
+
+    BlogSearchRepositoryInternalImpl(ElasticsearchSearchExecutor elasticsearchSearchExecutor, SearchQueryGuard searchQueryGuard) {
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.searchQueryGuard = searchQueryGuard;
+    }
+
+    /**
+     * Search the blogs best matching the query, in a single page of at most {@value #MAX_HITS} hits, or fewer
+     * if the guard caps page sizes lower. Use {@link #stream(String, List)} to read all of them.
+     */
+    @Override
+    public Flux<Blog> search(String query, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, searchQueryGuard.pageSize(MAX_HITS)));
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, Blog.class))
+            .flatMapIterable(SearchResult::getContent);
     }
 
     @Override
-    public Flux<Blog> search(String query) {
-        NativeSearchQuery nativeSearchQuery = new NativeSearchQuery(queryStringQuery(query));
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, Blog.class).map(SearchHit::getContent);
+    public Flux<Blog> stream(String query, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, STREAM_BATCH_SIZE))
+                    .withSort(new FieldSortBuilder("_shard_doc").order(SortOrder.ASC));
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMapMany(nativeSearchQuery -> elasticsearchSearchExecutor.stream(nativeSearchQuery, Blog.class))
+            .map(SearchHit::getContent);
     }
 }
@@ -0,0 +1,49 @@
+package com.okta.developer.blog.repository.search;
+
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.lang.Nullable;
+
+/**
+ * Thrown when an operation submitted to the {@link ElasticsearchBulkIndexer} could not be applied.
+ */
+public class BulkIndexingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    @Nullable
+    private final RestStatus status;
+
+    public BulkIndexingException(String message) {
+        this(message, (RestStatus) null);
+    }
+
+    public BulkIndexingException(String message, @Nullable RestStatus status) {
+        super(message);
+        this.status = status;
+    }
+
+    public BulkIndexingException(String message, Throwable cause) {
+        super(message, cause);
+        this.status = null;
+    }
+
+    /**
+     * Returns the status Elasticsearch answered the operation with, if it was applied and failed.
+     *
+     * @return the status of the operation, {@code null} if it was not applied.
+     */
+    @Nullable
+    public RestStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Tell whether Elasticsearch rejected the operation itself, for instance a document not matching the mapping,
+     * in which case applying it again fails again.
+     *
+     * @return {@code true} if the operation failed with a client error other than {@code 429 Too Many Requests}.
+     */
+    public boolean isRejected() {
+        return status != null && status.getStatus() >= 400 && status.getStatus() < 500 && status != RestStatus.TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,519 @@
+package com.okta.developer.blog.repository.search;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.lang.Nullable;
+import org.springframework.util.DigestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Shared write path to Elasticsearch for all search repositories.
+ * <p>
+ * Index and delete operations are queued and flushed as {@code _bulk} requests, either when
+ * {@code maxActions} operations are waiting or when {@code flushInterval} has elapsed. The number of
+ * operations queued or in flight is bounded by {@code queueCapacity}: when Elasticsearch slows down,
+ * callers wait in line for a free slot, for at most {@code enqueueTimeout}, instead of piling up requests. A slot
+ * is handed to the next caller in line as soon as an operation completes. Each caller's {@link Mono} completes with
+ * the outcome of its own item in the bulk response.
+ * <p>
+ * Documents are written to the index {@link ElasticsearchIndexManager#writeIndexFor(Object)} picks: the partition
+ * of their date for a time partitioned entity, the alias of their entity otherwise. They are routed with the
+ * value {@link ElasticsearchIndexManager#routingOf(Object)} returns, if any.
+ * <p>
+ * While an index is being rebuilt, writes for its entity can be mirrored to the new index with
+ * {@link #startMirroring(Class, IndexCoordinates)} so that no change is lost before the alias is swapped. The
+ * deletes applied to a mirror are remembered, so that the copy of a deleted document can be skipped with
+ * {@link #indexIfAbsent(Object, IndexCoordinates)} and the deletes replayed with {@link #replayMirroredDeletes(Class)}.
+ * <p>
+ * Every document is written with a hash of its content in its {@value #HASH_FIELD} field, so that it can be
+ * compared with its entity without reading it whole.
+ */
+public class ElasticsearchBulkIndexer {
+
+    /**
+     * Name of the field holding the {@link #hashOf(Object) hash} of the content of a document.
+     */
+    public static final String HASH_FIELD = "_hash";
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchBulkIndexer.class);
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final ElasticsearchIndexManager elasticsearchIndexManager;
+
+    private final Duration enqueueTimeout;
+
+    private final Deque<BulkOperation> waiting = new ArrayDeque<>();
+
+    private int freeSlots;
+
+    private final Sinks.Many<BulkOperation> operations = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final Map<Class<?>, Mirror> mirrors = new ConcurrentHashMap<>();
+
+    public ElasticsearchBulkIndexer(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        int maxActions,
+        Duration flushInterval,
+        int concurrency,
+        int queueCapacity,
+        Duration enqueueTimeout
+    ) {
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.elasticsearchIndexManager = elasticsearchIndexManager;
+        this.enqueueTimeout = enqueueTimeout;
+        this.freeSlots = queueCapacity;
+        operations.asFlux().bufferTimeout(maxActions, flushInterval).onBackpressureBuffer().flatMap(this::flush, concurrency).subscribe();
+    }
+
+    /**
+     * Index (create or replace) the document for an entity.
+     *
+     * @param entity the entity to index.
+     * @return a {@link Mono} completing once the entity is indexed, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> index(Object entity) {
+        return elasticsearchIndexManager
+            .writeIndexFor(entity)
+            .flatMap(index -> index(entity, index).and(mirror(entity.getClass(), entity, mirror -> mirrorIndex(entity, mirror))));
+    }
+
+    /**
+     * Index the new document for an updated entity, and delete its previous document if the change moved it to
+     * another partition or routing value.
+     *
+     * @param entity the entity to index.
+     * @param previous the entity before the update, {@code null} if unknown.
+     * @return a {@link Mono} completing once the entity is indexed, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> update(Object entity, @Nullable Object previous) {
+        if (previous == null || !isMoved(previous, entity)) {
+            return index(entity);
+        }
+        return index(entity).then(delete(previous));
+    }
+
+    /**
+     * Index (create or replace) the document for an entity in a given index.
+     *
+     * @param entity the entity to index.
+     * @param index the index to write to.
+     * @return a {@link Mono} completing once the entity is indexed, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> index(Object entity, IndexCoordinates index) {
+        return Mono.fromCallable(() -> indexRequest(entity, index)).flatMap(this::submit);
+    }
+
+    /**
+     * Index the document for an entity in a given index, unless a document with the same id is already there, or
+     * its entity was deleted while being mirrored.
+     *
+     * @param entity the entity to index.
+     * @param index the index to write to.
+     * @return a {@link Mono} emitting {@code true} once the entity is indexed, or {@code false} if it was found to be
+     * present already or skipped.
+     */
+    public Mono<Boolean> indexIfAbsent(Object entity, IndexCoordinates index) {
+        return Mono
+            .fromCallable(() -> indexRequest(entity, index).create(true))
+            .filter(request -> !isMirroredDelete(entity.getClass(), request.id()))
+            .flatMap(this::write)
+            .defaultIfEmpty(false);
+    }
+
+    private boolean isMoved(Object previous, Object entity) {
+        return (
+            !elasticsearchIndexManager.indexOf(previous).equals(elasticsearchIndexManager.indexOf(entity)) ||
+            !Objects.equals(elasticsearchIndexManager.routingOf(previous), elasticsearchIndexManager.routingOf(entity))
+        );
+    }
+
+    /**
+     * Delete the document of an entity whose index is neither partitioned nor routed.
+     *
+     * @param id the id of the entity.
+     * @param entityClass the class of the entity.
+     * @return a {@link Mono} completing once the document is deleted, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> delete(String id, Class<?> entityClass) {
+        return Mono
+            .fromCallable(() -> persistentEntity(entityClass).getIndexCoordinates())
+            .flatMap(index -> delete(id, index).and(mirror(entityClass, null, mirror -> mirrorDelete(entityClass, id, null, mirror))));
+    }
+
+    /**
+     * Delete the document of an entity from the index and shard it was written to.
+     *
+     * @param entity the entity whose document to delete.
+     * @return a {@link Mono} completing once the document is deleted, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> delete(Object entity) {
+        return Mono
+            .fromCallable(() -> identifier(entity))
+            .flatMap(id -> {
+                String routing = elasticsearchIndexManager.routingOf(entity);
+                return delete(id, routing, elasticsearchIndexManager.indexOf(entity))
+                    .and(mirror(entity.getClass(), entity, mirror -> mirrorDelete(entity.getClass(), id, routing, mirror)));
+            });
+    }
+
+    private Mono<Void> delete(String id, IndexCoordinates index) {
+        return delete(id, null, index);
+    }
+
+    private Mono<Void> delete(String id, @Nullable String routing, IndexCoordinates index) {
+        return submit(new DeleteRequest(index.getIndexName(), id).routing(routing));
+    }
+
+    /**
+     * Also apply the writes of an entity to a second index, until {@link #stopMirroring(Class)} is called.
+     * Failures on the mirror are logged but not reported to callers.
+     *
+     * @param entityClass the class of the entity.
+     * @param index the index receiving the copies.
+     */
+    public void startMirroring(Class<?> entityClass, IndexCoordinates index) {
+        Mono<IndexCoordinates> mirror = Mono.just(index);
+        mirrors.put(entityClass, new Mirror(document -> mirror));
+    }
+
+    /**
+     * Also apply the writes of an entity to the index a function picks for each document, until
+     * {@link #stopMirroring(Class)} is called. Failures on the mirror are logged but not reported to callers.
+     *
+     * @param entityClass the class of the entity.
+     * @param indexFor the function returning the index receiving the copy of a document.
+     */
+    public void startMirroring(Class<?> entityClass, Function<Object, Mono<IndexCoordinates>> indexFor) {
+        mirrors.put(entityClass, new Mirror(indexFor));
+    }
+
+    /**
+     * Stop mirroring the writes of an entity.
+     *
+     * @param entityClass the class of the entity.
+     */
+    public void stopMirroring(Class<?> entityClass) {
+        mirrors.remove(entityClass);
+    }
+
+    /**
+     * Delete again, from the mirror of an entity, the documents deleted while it was mirrored. A copy that read a
+     * document before its delete may have written it to the mirror after the delete: once the copy is complete,
+     * this removes it again.
+     *
+     * @param entityClass the class of the entity.
+     * @return a {@link Mono} completing once the deletes are applied, or failing with a {@link BulkIndexingException}.
+     */
+    public Mono<Void> replayMirroredDeletes(Class<?> entityClass) {
+        Mirror mirror = mirrors.get(entityClass);
+        if (mirror == null) {
+            return Mono.empty();
+        }
+        return Flux
+            .fromIterable(mirror.deletes.values())
+            .flatMap(delete -> submit(new DeleteRequest(delete.index(), delete.id()).routing(delete.routing())))
+            .then();
+    }
+
+    private boolean isMirroredDelete(Class<?> entityClass, String id) {
+        Mirror mirror = mirrors.get(entityClass);
+        return mirror != null && mirror.deletes.containsKey(id);
+    }
+
+    private Mono<Void> mirrorIndex(Object entity, IndexCoordinates index) {
+        return Mono
+            .fromCallable(() -> indexRequest(entity, index))
+            .doOnNext(request -> {
+                Mirror mirror = mirrors.get(entity.getClass());
+                if (mirror != null) {
+                    mirror.deletes.remove(request.id());
+                }
+            })
+            .flatMap(this::submit);
+    }
+
+    private Mono<Void> mirrorDelete(Class<?> entityClass, String id, @Nullable String routing, IndexCoordinates index) {
+        DeleteRequest request = new DeleteRequest(index.getIndexName(), id).routing(routing);
+        Mirror mirror = mirrors.get(entityClass);
+        if (mirror != null) {
+            mirror.deletes.put(id, request);
+        }
+        return submit(request);
+    }
+
+    private Mono<Void> mirror(Class<?> entityClass, @Nullable Object entity, Function<IndexCoordinates, Mono<Void>> operation) {
+        Mirror mirror = mirrors.get(entityClass);
+        if (mirror == null) {
+            return Mono.empty();
+        }
+        return Mono
+            .defer(() -> mirror.indexFor.apply(entity))
+            .flatMap(index ->
+                operation
+                    .apply(index)
+                    .onErrorResume(e -> {
+                        log.warn("Mirrored write to {} failed: {}", index.getIndexName(), e.getMessage());
+                        return Mono.empty();
+                    })
+            )
+            .onErrorResume(e -> {
+                log.warn("Mirrored write of {} failed: {}", entityClass.getSimpleName(), e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Stop accepting operations; operations already queued are still flushed, callers still waiting for a slot are
+     * rejected.
+     */
+    public void close() {
+        synchronized (operations) {
+            operations.tryEmitComplete();
+        }
+        List<BulkOperation> rejected;
+        synchronized (waiting) {
+            rejected = List.copyOf(waiting);
+            waiting.clear();
+        }
+        for (BulkOperation operation : rejected) {
+            operation.expiry.dispose();
+            operation.reject(new BulkIndexingException("Bulk indexer is closed, rejected " + describe(operation.request)));
+        }
+    }
+
+    /**
+     * Returns the hash of the content of the document of an entity, as written in its {@value #HASH_FIELD} field.
+     *
+     * @param entity the entity.
+     * @return the hash of its document.
+     */
+    public String hashOf(Object entity) {
+        return hash(reactiveElasticsearchTemplate.getElasticsearchConverter().mapObject(entity));
+    }
+
+    private static String hash(Document document) {
+        return DigestUtils.md5DigestAsHex(document.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private IndexRequest indexRequest(Object entity, IndexCoordinates index) {
+        ElasticsearchConverter converter = reactiveElasticsearchTemplate.getElasticsearchConverter();
+        Document document = converter.mapObject(entity);
+        document.put(HASH_FIELD, hash(document));
+        return new IndexRequest(index.getIndexName())
+            .id(identifier(entity))
+            .routing(elasticsearchIndexManager.routingOf(entity))
+            .source(document);
+    }
+
+    private String identifier(Object entity) {
+        ElasticsearchConverter converter = reactiveElasticsearchTemplate.getElasticsearchConverter();
+        return converter.convertId(persistentEntity(entity.getClass()).getIdentifierAccessor(entity).getRequiredIdentifier());
+    }
+
+    private ElasticsearchPersistentEntity<?> persistentEntity(Class<?> entityClass) {
+        return reactiveElasticsearchTemplate.getElasticsearchConverter().getMappingContext().getRequiredPersistentEntity(entityClass);
+    }
+
+    private Mono<Void> submit(DocWriteRequest<?> request) {
+        return write(request).then();
+    }
+
+    /**
+     * Submit an operation, and emit whether it was applied: {@code false} for a create that found its document present.
+     */
+    private Mono<Boolean> write(DocWriteRequest<?> request) {
+        return Mono.create(sink -> {
+            BulkOperation operation = new BulkOperation(request, sink);
+            sink.onCancel(() -> withdraw(operation));
+            admit(operation);
+        });
+    }
+
+    /**
+     * Enqueue an operation if a slot is free, or else put it in line until one is freed or {@code enqueueTimeout}
+     * has elapsed. A slot is taken and the operation enqueued in the same call, so that a cancelled caller can
+     * never hold a slot without its operation being queued: the slot is released once that operation is flushed.
+     */
+    private void admit(BulkOperation operation) {
+        synchronized (waiting) {
+            if (freeSlots == 0) {
+                operation.expiry = Mono.delay(enqueueTimeout).subscribe(tick -> expire(operation));
+                waiting.add(operation);
+                return;
+            }
+            freeSlots--;
+        }
+        enqueue(operation);
+    }
+
+    /**
+     * Hand the slot of a completed operation to the next one in line, or free it.
+     */
+    private void release() {
+        BulkOperation next;
+        synchronized (waiting) {
+            next = waiting.poll();
+            if (next == null) {
+                freeSlots++;
+                return;
+            }
+        }
+        next.expiry.dispose();
+        enqueue(next);
+    }
+
+    private void expire(BulkOperation operation) {
+        if (remove(operation)) {
+            operation.reject(new BulkIndexingException("Bulk indexer is saturated, rejected " + describe(operation.request)));
+        }
+    }
+
+    private void withdraw(BulkOperation operation) {
+        if (remove(operation)) {
+            operation.expiry.dispose();
+        }
+    }
+
+    private boolean remove(BulkOperation operation) {
+        synchronized (waiting) {
+            return waiting.remove(operation);
+        }
+    }
+
+    private void enqueue(BulkOperation operation) {
+        Sinks.EmitResult result;
+        synchronized (operations) {
+            result = operations.tryEmitNext(operation);
+        }
+        if (result.isFailure()) {
+            operation.fail(new BulkIndexingException("Bulk indexer is closed, rejected " + describe(operation.request)));
+        }
+    }
+
+    private Mono<Void> flush(List<BulkOperation> batch) {
+        BulkRequest bulkRequest = new BulkRequest();
+        batch.forEach(operation -> bulkRequest.add(operation.request));
+        log.debug("Flushing {} operations to Elasticsearch", batch.size());
+        return Flux
+            .from(reactiveElasticsearchTemplate.execute(client -> client.bulk(bulkRequest)))
+            .next()
+            .doOnNext(response -> complete(batch, response))
+            .doOnError(e -> {
+                log.warn("Bulk request of {} operations failed: {}", batch.size(), e.getMessage());
+                batch.forEach(operation -> operation.fail(new BulkIndexingException("Bulk request failed", e)));
+            })
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    private void complete(List<BulkOperation> batch, BulkResponse response) {
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < batch.size(); i++) {
+            BulkOperation operation = batch.get(i);
+            if (i >= items.length) {
+                operation.fail(new BulkIndexingException("No bulk response item for " + describe(operation.request)));
+            } else if (isConflictOnCreate(operation.request, items[i])) {
+                operation.succeed(false);
+            } else if (items[i].isFailed()) {
+                operation.fail(
+                    new BulkIndexingException(describe(operation.request) + " failed: " + items[i].getFailureMessage(), items[i].status())
+                );
+            } else {
+                operation.succeed(true);
+            }
+        }
+    }
+
+    private static boolean isConflictOnCreate(DocWriteRequest<?> request, BulkItemResponse item) {
+        return request.opType() == DocWriteRequest.OpType.CREATE && item.status() == RestStatus.CONFLICT;
+    }
+
+    private static String describe(DocWriteRequest<?> request) {
+        return request.opType().getLowercase() + " " + request.index() + "/" + request.id();
+    }
+
+    /**
+     * The index receiving the copies of the writes of an entity, with the deletes applied to it by id.
+     */
+    private static class Mirror {
+
+        private final Function<Object, Mono<IndexCoordinates>> indexFor;
+
+        private final Map<String, DeleteRequest> deletes = new ConcurrentHashMap<>();
+
+        Mirror(Function<Object, Mono<IndexCoordinates>> indexFor) {
+            this.indexFor = indexFor;
+        }
+    }
+
+    /**
+     * An operation and the caller waiting for its outcome. An operation completes once: its slot is only released
+     * the first time, even if a failure of the bulk request is reported after some items completed.
+     */
+    private class BulkOperation {
+
+        private final DocWriteRequest<?> request;
+
+        private final MonoSink<Boolean> sink;
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Disposable expiry;
+
+        BulkOperation(DocWriteRequest<?> request, MonoSink<Boolean> sink) {
+            this.request = request;
+            this.sink = sink;
+        }
+
+        void succeed(boolean applied) {
+            if (completed.compareAndSet(false, true)) {
+                release();
+                sink.success(applied);
+            }
+        }
+
+        void fail(Throwable error) {
+            if (completed.compareAndSet(false, true)) {
+                release();
+                sink.error(error);
+            }
+        }
+
+        /**
+         * Fail an operation that never got a slot.
+         */
+        void reject(Throwable error) {
+            if (completed.compareAndSet(false, true)) {
+                sink.error(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.okta.developer.blog.repository.search;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.script.Script;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs {@code _update_by_query} requests as background Elasticsearch tasks and follows their progress.
+ * <p>
+ * The update is split into {@code slices} scrolls run in parallel and throttled to {@code requestsPerSecond}
+ * documents, so that a large update does not starve the live writes and searches. Documents written while
+ * the update runs are skipped instead of failing it: they were indexed from the database, which is updated
+ * first. The reactive client only supports waiting for the whole update in one request, so the REST API is
+ * used directly to start the task and poll it.
+ */
+public class ElasticsearchByQueryUpdater {
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final int slices;
+
+    private final float requestsPerSecond;
+
+    private final int batchSize;
+
+    private final Duration pollInterval;
+
+    /**
+     * @param slices the number of parallel scrolls, {@code 0} to let Elasticsearch use one per shard.
+     * @param requestsPerSecond the maximum number of documents updated per second, {@code 0} for no limit.
+     * @param batchSize the number of documents updated per scroll batch.
+     * @param pollInterval how often the progress of a running update is polled.
+     */
+    public ElasticsearchByQueryUpdater(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        int slices,
+        float requestsPerSecond,
+        int batchSize,
+        Duration pollInterval
+    ) {
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.slices = slices;
+        this.requestsPerSecond = requestsPerSecond;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Update the documents of a search entity matching a query with a script.
+     *
+     * @param documentClass the search document.
+     * @param query the query selecting the documents to update.
+     * @param script the script updating a document.
+     * @return the progress of the update, polled until its last value, which is completed.
+     */
+    public Flux<Progress> updateByQuery(Class<?> documentClass, QueryBuilder query, Script script) {
+        IndexCoordinates index = reactiveElasticsearchTemplate.getIndexCoordinatesFor(documentClass);
+        return start(index, "{\"query\":" + query + ",\"script\":" + Strings.toString(script) + "}")
+            .flatMapMany(taskId -> Flux.interval(pollInterval).concatMap(tick -> poll(taskId)))
+            .takeUntil(Progress::isCompleted);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<String> start(IndexCoordinates index, String body) {
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .post()
+                            .uri(
+                                "/{index}/_update_by_query?conflicts=proceed&slices={slices}&requests_per_second={rps}" +
+                                "&scroll_size={batchSize}&refresh=true&wait_for_completion=false",
+                                index.getIndexName(),
+                                slices > 0 ? String.valueOf(slices) : "auto",
+                                requestsPerSecond > 0 ? String.valueOf(requestsPerSecond) : "-1",
+                                batchSize
+                            )
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(body)
+                            .retrieve()
+                            .bodyToMono(Map.class)
+                    )
+                )
+            )
+            .map(response -> (String) response.get("task"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Progress> poll(String taskId) {
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient -> webClient.get().uri("/_tasks/{taskId}", taskId).retrieve().bodyToMono(Map.class))
+                )
+            )
+            .map(response -> {
+                if (response.get("error") != null) {
+                    throw new IllegalStateException("Update by query task " + taskId + " failed: " + response.get("error"));
+                }
+                Map<String, Object> result = (Map<String, Object>) response.get("response");
+                if (result != null && !((List<Object>) result.getOrDefault("failures", List.of())).isEmpty()) {
+                    throw new IllegalStateException("Update by query task " + taskId + " failed: " + result.get("failures"));
+                }
+                Map<String, Object> task = (Map<String, Object>) response.get("task");
+                Map<String, Object> status = result != null ? result : (Map<String, Object>) task.get("status");
+                return new Progress(taskId, Boolean.TRUE.equals(response.get("completed")), status != null ? status : Map.of());
+            });
+    }
+
+    /**
+     * Progress of an update by query task.
+     */
+    public static class Progress {
+
+        private final String taskId;
+
+        private final boolean completed;
+
+        private final long total;
+
+        private final long updated;
+
+        private final long noops;
+
+        private final long versionConflicts;
+
+        private final long batches;
+
+        Progress(String taskId, boolean completed, Map<String, Object> status) {
+            this.taskId = taskId;
+            this.completed = completed;
+            this.total = count(status, "total");
+            this.updated = count(status, "updated");
+            this.noops = count(status, "noops");
+            this.versionConflicts = count(status, "version_conflicts");
+            this.batches = count(status, "batches");
+        }
+
+        private static long count(Map<String, Object> status, String name) {
+            Object value = status.get(name);
+            return value instanceof Number ? ((Number) value).longValue() : 0L;
+        }
+
+        public String getTaskId() {
+            return taskId;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return the number of documents matching the query, known once the first batch is fetched.
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return the number of documents the script left unchanged.
+         */
+        public long getNoops() {
+            return noops;
+        }
+
+        /**
+         * @return the number of documents skipped because they were written while the update ran.
+         */
+        public long getVersionConflicts() {
+            return versionConflicts;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.okta.developer.blog.repository.search;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Manages the physical indices behind the index name of a search entity.
+ * <p>
+ * The index name declared on an entity (e.g. {@code post}) is used as a read/write alias pointing to a
+ * versioned index (e.g. {@code post_v1650000000000}). A new versioned index can be loaded in the background
+ * and then atomically swapped in with {@link #promote(Class, IndexCoordinates)}.
+ * <p>
+ * Indices are always created with the explicit settings and mapping registered in {@link ElasticsearchMappings}.
+ * <p>
+ * The index of an entity with an {@link IndexPartitioning} is instead split into one index per time interval,
+ * each behind both the alias of the entity, for reads, and its own partition alias, for writes. Partitions are
+ * created when the first document of their interval is written, and ahead of time for the next interval;
+ * old partitions are force merged. A partitioned entity is rebuilt into a new generation of partitions,
+ * swapped in all at once with {@link #promotePartitions(IndexPartitioning, Collection)}.
+ * <p>
+ * The documents of an entity with an {@link IndexRouting} are routed to a shard by their routing value instead
+ * of their id.
+ */
+@Component
+public class ElasticsearchIndexManager {
+
+    private static final int MAX_SEARCHED_PARTITIONS = 120;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchIndexManager.class);
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final ElasticsearchMappings elasticsearchMappings;
+
+    private final Map<Class<?>, IndexPartitioning<?>> partitionings = new HashMap<>();
+
+    private final Map<Class<?>, IndexRouting<?>> routings = new HashMap<>();
+
+    /**
+     * The partition aliases known to exist, for all partitioned entities.
+     */
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Mono<Void>> partitionCreations = new ConcurrentHashMap<>();
+
+    private final Set<String> mergedIndices = ConcurrentHashMap.newKeySet();
+
+    public ElasticsearchIndexManager(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchMappings elasticsearchMappings,
+        List<IndexPartitioning<?>> partitionings,
+        List<IndexRouting<?>> routings
+    ) {
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.elasticsearchMappings = elasticsearchMappings;
+        partitionings.forEach(partitioning -> this.partitionings.put(partitioning.getEntityClass(), partitioning));
+        routings.forEach(routing -> this.routings.put(routing.getEntityClass(), routing));
+    }
+
+    /**
+     * Create the index of every search entity that has none yet, once the application has started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createMissingIndices() {
+        Flux
+            .fromIterable(elasticsearchMappings.getEntityClasses())
+            .concatMap(this::createIndexIfMissing)
+            .subscribe(null, e -> log.warn("Could not create the missing search indices: {}", e.getMessage()));
+    }
+
+    /**
+     * Create a versioned index behind the alias of a search entity, unless the alias or an index with that
+     * name already exists.
+     *
+     * @param entityClass the search entity.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> createIndexIfMissing(Class<?> entityClass) {
+        IndexPartitioning<?> partitioning = partitionings.get(entityClass);
+        if (partitioning != null) {
+            return maintain(partitioning);
+        }
+        return currentIndices(aliasFor(entityClass).getIndexName())
+            .filter(List::isEmpty)
+            .flatMap(none -> createVersionedIndex(entityClass))
+            .flatMap(index -> completeBulkLoad(index).then(promote(entityClass, index)));
+    }
+
+    /**
+     * Return the alias (the index name declared on the entity) of a search entity.
+     *
+     * @param entityClass the search entity.
+     * @return the alias coordinates.
+     */
+    public IndexCoordinates aliasFor(Class<?> entityClass) {
+        return reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass);
+    }
+
+    /**
+     * Create a new, empty versioned index for a search entity, with the entity's explicit settings and mapping.
+     * Refresh is disabled on the new index until {@link #completeBulkLoad(IndexCoordinates)} is called.
+     *
+     * @param entityClass the search entity.
+     * @return the coordinates of the new index.
+     */
+    public Mono<IndexCoordinates> createVersionedIndex(Class<?> entityClass) {
+        IndexCoordinates index = IndexCoordinates.of(aliasFor(entityClass).getIndexName() + "_v" + System.currentTimeMillis());
+        Map<String, Object> settings = elasticsearchMappings.getSettings(entityClass);
+        settings.put("index.refresh_interval", "-1");
+        return reactiveElasticsearchTemplate
+            .indexOps(index)
+            .create(settings, elasticsearchMappings.getMapping(entityClass))
+            .doOnNext(created -> log.info("Created index {} for {}", index.getIndexName(), entityClass.getSimpleName()))
+            .thenReturn(index);
+    }
+
+    /**
+     * Re-enable refresh on an index loaded in bulk and make its documents visible to searches.
+     *
+     * @param index the index.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> completeBulkLoad(IndexCoordinates index) {
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .put()
+                            .uri("/{index}/_settings", index.getIndexName())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue("{\"index\":{\"refresh_interval\":null}}")
+                            .retrieve()
+                            .bodyToMono(String.class)
+                    )
+                )
+            )
+            .then(refresh(index));
+    }
+
+    /**
+     * Refresh an index, making recent writes visible to searches.
+     *
+     * @param index the index to refresh.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> refresh(IndexCoordinates index) {
+        return Mono.from(
+            reactiveElasticsearchTemplate.execute(client -> client.indices().refreshIndex(new RefreshRequest(index.getIndexName())))
+        );
+    }
+
+    /**
+     * Atomically point the alias of a search entity to a new index, then delete the indices it pointed to before.
+     * <p>
+     * If the alias name is still used by a concrete index (created before aliases were introduced), that index
+     * is removed in the same atomic request.
+     *
+     * @param entityClass the search entity.
+     * @param index the index to promote.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> promote(Class<?> entityClass, IndexCoordinates index) {
+        String alias = aliasFor(entityClass).getIndexName();
+        return currentIndices(alias)
+            .flatMap(previousIndices -> {
+                IndicesAliasesRequest request = new IndicesAliasesRequest();
+                request.addAliasAction(AliasActions.add().index(index.getIndexName()).alias(alias));
+                if (previousIndices.contains(alias)) {
+                    request.addAliasAction(AliasActions.removeIndex().index(alias));
+                }
+                List<String> aliasedIndices = previousIndices.stream().filter(name -> !name.equals(alias)).collect(Collectors.toList());
+                aliasedIndices.forEach(name -> request.addAliasAction(AliasActions.remove().index(name).alias(alias)));
+                return Mono
+                    .from(reactiveElasticsearchTemplate.execute(client -> client.indices().updateAliases(request)))
+                    .doOnNext(acknowledged -> log.info("Alias {} now points to {}", alias, index.getIndexName()))
+                    .thenMany(Flux.fromIterable(aliasedIndices))
+                    .filter(name -> !name.equals(index.getIndexName()))
+                    .flatMap(name -> delete(IndexCoordinates.of(name)))
+                    .then();
+            });
+    }
+
+    /**
+     * Returns the time partitioning of a search entity.
+     *
+     * @param entityClass the search entity.
+     * @return the partitioning, empty if the index of the entity is not partitioned.
+     */
+    public Optional<IndexPartitioning<?>> partitioningOf(Class<?> entityClass) {
+        return Optional.ofNullable(partitionings.get(entityClass));
+    }
+
+    /**
+     * Returns the index a document is written to: the partition of its date for a partitioned entity, created if
+     * missing, or the alias of its entity.
+     *
+     * @param document the document.
+     * @return the index to write to.
+     */
+    public Mono<IndexCoordinates> writeIndexFor(Object document) {
+        IndexPartitioning<?> partitioning = partitionings.get(document.getClass());
+        if (partitioning == null) {
+            return Mono.just(aliasFor(document.getClass()));
+        }
+        return Mono
+            .fromCallable(() -> partitioning.partitionOf(document))
+            .flatMap(partition -> createPartitionIfMissing(partitioning, partition).thenReturn(IndexCoordinates.of(partition)));
+    }
+
+    /**
+     * Returns the index a document was written to, without creating it: the partition of its date for a
+     * partitioned entity, or the alias of its entity.
+     *
+     * @param document the document.
+     * @return the index of the document.
+     */
+    public IndexCoordinates indexOf(Object document) {
+        IndexPartitioning<?> partitioning = partitionings.get(document.getClass());
+        return partitioning != null ? IndexCoordinates.of(partitioning.partitionOf(document)) : aliasFor(document.getClass());
+    }
+
+    /**
+     * Tell whether the documents of a search entity are routed by a custom routing value.
+     *
+     * @param entityClass the search entity.
+     * @return {@code true} if the entity has an {@link IndexRouting}.
+     */
+    public boolean isRouted(Class<?> entityClass) {
+        return routings.containsKey(entityClass);
+    }
+
+    /**
+     * Returns the routing value a document is written with.
+     *
+     * @param document the document.
+     * @return the routing value, {@code null} if the document is routed by its id.
+     */
+    @Nullable
+    public String routingOf(Object document) {
+        IndexRouting<?> routing = routings.get(document.getClass());
+        return routing != null ? routing.routingOf(document) : null;
+    }
+
+    /**
+     * Returns the indices to search for the documents of an entity dated in a range: the aliases of the partitions
+     * overlapping the range for a partitioned entity, or else the alias of the entity.
+     * <p>
+     * The partitions are named after the range rather than looked up, so that the partitions created by other
+     * instances are searched as soon as they exist; the search ignores the names without an index. A range
+     * unbounded on one side, or spanning too many partitions, searches the alias of the entity and relies on the
+     * date filter of the query.
+     *
+     * @param entityClass the search entity.
+     * @param from the inclusive lower bound of the range, {@code null} if unbounded.
+     * @param to the exclusive upper bound of the range, {@code null} if unbounded.
+     * @return the indices to search.
+     */
+    public IndexCoordinates searchIndicesFor(Class<?> entityClass, @Nullable Instant from, @Nullable Instant to) {
+        IndexPartitioning<?> partitioning = partitionings.get(entityClass);
+        if (partitioning == null || from == null || to == null) {
+            return aliasFor(entityClass);
+        }
+        // without any overlapping partition, the alias is searched and the date filter of the query matches nothing
+        return partitioning
+            .partitionsOverlapping(from, to, MAX_SEARCHED_PARTITIONS)
+            .filter(overlapping -> !overlapping.isEmpty())
+            .map(overlapping -> IndexCoordinates.of(overlapping.toArray(new String[0])))
+            .orElseGet(() -> aliasFor(entityClass));
+    }
+
+    /**
+     * Create the current and next partitions of a partitioned entity if they are missing, and force merge the
+     * partitions old enough, every {@code application.elasticsearch.partitioning.maintenance-interval}.
+     */
+    @Scheduled(
+        initialDelayString = "${application.elasticsearch.partitioning.maintenance-interval:PT1H}",
+        fixedDelayString = "${application.elasticsearch.partitioning.maintenance-interval:PT1H}"
+    )
+    public void maintainPartitions() {
+        Flux
+            .fromIterable(partitionings.values())
+            .concatMap(this::maintain)
+            .subscribe(null, e -> log.warn("Could not maintain the search index partitions: {}", e.getMessage()));
+    }
+
+    private Mono<Void> maintain(IndexPartitioning<?> partitioning) {
+        Instant now = Instant.now();
+        return partitionIndices(partitioning)
+            .flatMap(indices -> {
+                indices.values().stream().filter(Objects::nonNull).forEach(partitions::add);
+                if (indices.containsValue(null)) {
+                    log.warn(
+                        "Alias {} points to an index that is not partitioned, reindex it to partition its documents",
+                        partitioning.getAlias()
+                    );
+                }
+                return createPartitionIfMissing(partitioning, partitioning.partitionOf(now))
+                    .then(createPartitionIfMissing(partitioning, partitioning.nextPartitionOf(now)))
+                    .thenMany(Flux.fromIterable(indices.entrySet()))
+                    .filter(index -> index.getValue() != null && partitioning.isMergeable(index.getValue(), now))
+                    .concatMap(index -> mergeIfNeeded(index.getKey()))
+                    .then();
+            });
+    }
+
+    /**
+     * Create a partition of a partitioned entity, behind the alias of the entity and its own partition alias,
+     * unless it already exists.
+     *
+     * @param partitioning the partitioning of the entity.
+     * @param partition the alias of the partition.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> createPartitionIfMissing(IndexPartitioning<?> partitioning, String partition) {
+        if (partitions.contains(partition)) {
+            return Mono.empty();
+        }
+        return partitionCreations.computeIfAbsent(
+            partition,
+            name ->
+                reactiveElasticsearchTemplate
+                    .indexOps(IndexCoordinates.of(partition))
+                    .exists()
+                    .flatMap(exists -> exists ? Mono.<Void>empty() : createPartition(partitioning, partition))
+                    .doOnSuccess(created -> partitions.add(partition))
+                    .doFinally(signal -> partitionCreations.remove(partition))
+                    .cache()
+        );
+    }
+
+    /**
+     * Create the first generation of a partition. Its index has a fixed name, so that instances creating the same
+     * partition at the same time create a single index.
+     */
+    private Mono<Void> createPartition(IndexPartitioning<?> partitioning, String partition) {
+        String index = partition + "_v0";
+        Map<String, Object> body = Map.of(
+            "settings",
+            elasticsearchMappings.getSettings(partitioning.getEntityClass()),
+            "mappings",
+            elasticsearchMappings.getMapping(partitioning.getEntityClass()),
+            "aliases",
+            Map.of(partitioning.getAlias(), Map.of(), partition, Map.of())
+        );
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .put()
+                            .uri("/{index}", index)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Document.from(body).toJson())
+                            .retrieve()
+                            .bodyToMono(String.class)
+                    )
+                )
+            )
+            .doOnNext(response -> log.info("Created partition {} of {}", index, partitioning.getAlias()))
+            .onErrorResume(
+                WebClientResponseException.BadRequest.class,
+                e -> e.getResponseBodyAsString().contains("resource_already_exists_exception") ? Mono.empty() : Mono.error(e)
+            )
+            .then();
+    }
+
+    /**
+     * Create an empty partition index of a new generation, to rebuild a partitioned entity. Like a versioned index,
+     * it has no alias and refresh is disabled until {@link #completeBulkLoad(IndexCoordinates)} is called.
+     *
+     * @param partitioning the partitioning of the entity.
+     * @param partition the alias of the partition.
+     * @param generation the generation, shared by all the partitions of a rebuild.
+     * @return the coordinates of the new index.
+     */
+    public Mono<IndexCoordinates> createPartitionIndex(IndexPartitioning<?> partitioning, String partition, long generation) {
+        IndexCoordinates index = IndexCoordinates.of(partition + "_v" + generation);
+        Map<String, Object> settings = elasticsearchMappings.getSettings(partitioning.getEntityClass());
+        settings.put("index.refresh_interval", "-1");
+        return reactiveElasticsearchTemplate
+            .indexOps(index)
+            .create(settings, elasticsearchMappings.getMapping(partitioning.getEntityClass()))
+            .doOnNext(created -> log.info("Created index {} for {}", index.getIndexName(), partitioning.getAlias()))
+            .thenReturn(index);
+    }
+
+    /**
+     * Atomically replace all the partitions of a partitioned entity with a new generation, deleting the indices of
+     * the previous one in the same request. Each new index is put behind the alias of the entity and the alias of
+     * its partition.
+     *
+     * @param partitioning the partitioning of the entity.
+     * @param indices the indices of the new generation, created with
+     *        {@link #createPartitionIndex(IndexPartitioning, String, long)}.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> promotePartitions(IndexPartitioning<?> partitioning, Collection<IndexCoordinates> indices) {
+        String alias = partitioning.getAlias();
+        return currentIndices(alias)
+            .flatMap(previousIndices -> {
+                IndicesAliasesRequest request = new IndicesAliasesRequest();
+                List<String> partitionAliases = new ArrayList<>();
+                for (IndexCoordinates index : indices) {
+                    String name = index.getIndexName();
+                    String partition = name.substring(0, name.lastIndexOf("_v"));
+                    partitionAliases.add(partition);
+                    request.addAliasAction(AliasActions.add().index(name).aliases(alias, partition));
+                }
+                previousIndices.forEach(name -> request.addAliasAction(AliasActions.removeIndex().index(name)));
+                if (request.getAliasActions().isEmpty()) {
+                    return Mono.empty();
+                }
+                return Mono
+                    .from(reactiveElasticsearchTemplate.execute(client -> client.indices().updateAliases(request)))
+                    .doOnNext(acknowledged -> {
+                        log.info("Alias {} now points to {} partitions, deleted {}", alias, indices.size(), previousIndices);
+                        partitions.removeIf(partitioning::isPartition);
+                        partitions.addAll(partitionAliases);
+                        mergedIndices.removeAll(previousIndices);
+                    })
+                    .then();
+            });
+    }
+
+    /**
+     * Force merge an index to a single segment per shard, unless it already has one.
+     */
+    @SuppressWarnings("unchecked")
+    private Mono<Void> mergeIfNeeded(String index) {
+        if (mergedIndices.contains(index)) {
+            return Mono.empty();
+        }
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient.get().uri("/{index}/_segments", index).retrieve().bodyToMono(Map.class)
+                    )
+                )
+            )
+            .map(response -> {
+                Map<String, Map<String, Object>> indices = (Map<String, Map<String, Object>>) response.get("indices");
+                Map<String, List<Map<String, Object>>> shards = (Map<String, List<Map<String, Object>>>) indices.get(index).get("shards");
+                return shards
+                    .values()
+                    .stream()
+                    .flatMap(List::stream)
+                    .anyMatch(copy -> ((Number) copy.get("num_search_segments")).intValue() > 1);
+            })
+            .flatMap(needed -> {
+                if (!needed) {
+                    mergedIndices.add(index);
+                    return Mono.empty();
+                }
+                log.info("Force merging partition {}", index);
+                return Mono
+                    .from(
+                        reactiveElasticsearchTemplate.execute(client ->
+                            client.execute(webClient ->
+                                webClient
+                                    .post()
+                                    .uri("/{index}/_forcemerge?max_num_segments=1", index)
+                                    .retrieve()
+                                    .bodyToMono(String.class)
+                            )
+                        )
+                    )
+                    .doOnNext(response -> mergedIndices.add(index))
+                    .then();
+            });
+    }
+
+    /**
+     * Returns the indices behind the alias of a partitioned entity, each with the alias of its partition, or
+     * {@code null} for an index that is not a partition.
+     */
+    @SuppressWarnings("unchecked")
+    private Mono<Map<String, String>> partitionIndices(IndexPartitioning<?> partitioning) {
+        return currentIndices(partitioning.getAlias())
+            .filter(indices -> !indices.isEmpty())
+            .flatMap(indices ->
+                Mono.from(
+                    reactiveElasticsearchTemplate.execute(client ->
+                        client.execute(webClient ->
+                            webClient.get().uri("/{alias}/_alias", partitioning.getAlias()).retrieve().bodyToMono(Map.class)
+                        )
+                    )
+                )
+            )
+            .map(response -> {
+                Map<String, String> indices = new HashMap<>();
+                ((Map<String, Map<String, Map<String, Object>>>) response).forEach((index, definition) -> {
+                        Set<String> aliases = definition.getOrDefault("aliases", Map.of()).keySet();
+                        indices.put(index, aliases.stream().filter(partitioning::isPartition).findFirst().orElse(null));
+                    });
+                return indices;
+            })
+            .defaultIfEmpty(Map.of());
+    }
+
+    /**
+     * Delete an index.
+     *
+     * @param index the index to delete.
+     * @return a {@link Mono} to signal completion.
+     */
+    public Mono<Void> delete(IndexCoordinates index) {
+        return reactiveElasticsearchTemplate
+            .indexOps(index)
+            .delete()
+            .doOnNext(deleted -> log.info("Deleted index {}", index.getIndexName()))
+            .then();
+    }
+
+    /**
+     * Resolve a name to the concrete indices behind it: the indices an alias points to, or the name
+     * itself for a concrete index. Empty if nothing exists under that name.
+     */
+    private Mono<List<String>> currentIndices(String name) {
+        return reactiveElasticsearchTemplate
+            .indexOps(IndexCoordinates.of(name))
+            .exists()
+            .flatMap(exists -> {
+                if (!exists) {
+                    return Mono.just(List.<String>of());
+                }
+                return Mono
+                    .from(reactiveElasticsearchTemplate.execute(client -> client.indices().getIndex(new GetIndexRequest(name))))
+                    .map(response -> Arrays.asList(response.getIndices()));
+            });
+    }
+}
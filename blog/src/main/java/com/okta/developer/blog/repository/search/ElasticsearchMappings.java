@@ -0,0 +1,57 @@
+package com.okta.developer.blog.repository.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.data.elasticsearch.core.document.Document;
+
+/**
+ * Explicit index settings and mappings of the search entities, used instead of dynamic mapping whenever
+ * an index is created.
+ */
+public class ElasticsearchMappings {
+
+    private final Map<Class<?>, Map<String, Object>> settings = new LinkedHashMap<>();
+
+    private final Map<Class<?>, Map<String, Object>> mappings = new LinkedHashMap<>();
+
+    /**
+     * Register the settings and mapping of a search entity.
+     *
+     * @param entityClass the search entity.
+     * @param settings the index settings, with flat keys (e.g. {@code index.number_of_shards}).
+     * @param mapping the index mapping, with the {@code properties} of the entity at its root.
+     * @return this instance.
+     */
+    public ElasticsearchMappings register(Class<?> entityClass, Map<String, Object> settings, Map<String, Object> mapping) {
+        this.settings.put(entityClass, settings);
+        this.mappings.put(entityClass, mapping);
+        return this;
+    }
+
+    public Set<Class<?>> getEntityClasses() {
+        return mappings.keySet();
+    }
+
+    /**
+     * Returns a modifiable copy of the settings of a search entity.
+     *
+     * @param entityClass the search entity.
+     * @return the index settings.
+     */
+    public Map<String, Object> getSettings(Class<?> entityClass) {
+        return new LinkedHashMap<>(get(settings, entityClass));
+    }
+
+    public Document getMapping(Class<?> entityClass) {
+        return Document.from(get(mappings, entityClass));
+    }
+
+    private static Map<String, Object> get(Map<Class<?>, Map<String, Object>> definitions, Class<?> entityClass) {
+        Map<String, Object> definition = definitions.get(entityClass);
+        if (definition == null) {
+            throw new IllegalArgumentException("No search mapping registered for " + entityClass.getName());
+        }
+        return definition;
+    }
+}
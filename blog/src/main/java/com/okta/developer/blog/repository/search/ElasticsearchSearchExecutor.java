@@ -0,0 +1,762 @@
+package com.okta.developer.blog.repository.search;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.clients.elasticsearch7.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.data.elasticsearch.core.document.SearchDocument;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Executes search queries and maps the whole response, so that the hits of a page, the number of matching
+ * documents and the query time are all read from a single {@code _search} round trip. Unless a query sets its
+ * own limit, the matching documents are counted exactly, or up to a configured number past which the total is only
+ * a lower bound.
+ * <p>
+ * Deep pagination is supported with {@link #searchAfter(NativeSearchQuery, Class, String)}, which pages through
+ * a point in time with {@code search_after} instead of {@code from}/{@code size}. Searches of several entities
+ * can be sent together in one {@code _msearch} round trip with {@link #multiSearch(Map)}.
+ * <p>
+ * Searches go through a bulkhead limiting the number of concurrent searches, then through a circuit breaker
+ * with a timeout: when Elasticsearch is slow or failing, searches fail fast with a
+ * {@link SearchUnavailableException} instead of piling up. Errors caused by the request itself, such as an
+ * invalid query, do not count as failures of Elasticsearch.
+ * <p>
+ * Every search request is measured, tagged by entity, operation and type of the root query: the round trip
+ * ({@code search.round.trip}), the time Elasticsearch reports it spent on the query ({@code search.took}), the
+ * mapping of the hits to entities ({@code search.mapping}) and the number of matching documents
+ * ({@code search.hits}). A round trip much longer than the time taken points at the client or the network, not
+ * at the query. Searches slower than the threshold of the {@link SlowSearchLog} are recorded there with their
+ * request body.
+ */
+public class ElasticsearchSearchExecutor {
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSearchExecutor.class);
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final ElasticsearchConverter converter;
+
+    private final Duration cursorKeepAlive;
+
+    private final int totalHitsUpTo;
+
+    private final Duration suggestTimeout;
+
+    private final ReactiveCircuitBreaker circuitBreaker;
+
+    private final Semaphore bulkhead;
+
+    private final MeterRegistry meterRegistry;
+
+    private final SlowSearchLog slowSearchLog;
+
+    private final SearchQueryGuard searchQueryGuard;
+
+    /**
+     * @param totalHitsUpTo the number of matching documents counted exactly by the searches that do not set their
+     * own limit, 0 to leave the default of Elasticsearch (10000).
+     * @param circuitBreaker the circuit breaker, with its timeout, of the searches.
+     * @param maxConcurrentSearches the maximum number of searches running at the same time.
+     */
+    public ElasticsearchSearchExecutor(
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        Duration cursorKeepAlive,
+        int totalHitsUpTo,
+        Duration suggestTimeout,
+        ReactiveCircuitBreaker circuitBreaker,
+        int maxConcurrentSearches,
+        MeterRegistry meterRegistry,
+        SlowSearchLog slowSearchLog,
+        SearchQueryGuard searchQueryGuard
+    ) {
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.converter = reactiveElasticsearchTemplate.getElasticsearchConverter();
+        this.cursorKeepAlive = cursorKeepAlive;
+        this.totalHitsUpTo = totalHitsUpTo;
+        this.suggestTimeout = suggestTimeout;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = new Semaphore(maxConcurrentSearches);
+        this.meterRegistry = meterRegistry;
+        this.slowSearchLog = slowSearchLog;
+        this.searchQueryGuard = searchQueryGuard;
+    }
+
+    /**
+     * Search the index of an entity.
+     *
+     * @param query the query.
+     * @param entityClass the search entity.
+     * @param <T> the type of the search entity.
+     * @return the result of the search.
+     */
+    public <T> Mono<SearchResult<T>> search(NativeSearchQuery query, Class<T> entityClass) {
+        return search(query, entityClass, reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass));
+    }
+
+    /**
+     * Search the given index.
+     *
+     * @param query the query.
+     * @param entityClass the search entity.
+     * @param index the index to search.
+     * @param <T> the type of the search entity.
+     * @return the result of the search.
+     */
+    public <T> Mono<SearchResult<T>> search(NativeSearchQuery query, Class<T> entityClass, IndexCoordinates index) {
+        SearchSourceBuilder source = toSearchSource(query);
+        if (query.getQuery() instanceof QueryStringQueryBuilder) {
+            // a query typed by a user: bound the work Elasticsearch spends on it
+            searchQueryGuard.limit(source);
+        }
+        SearchRequest request = new SearchRequest(index.getIndexNames()).source(source);
+        request.preference(query.getPreference()).routing(query.getRoute()).requestCache(query.getRequestCache());
+        if (!index.equals(reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass))) {
+            // a partition not created yet, or deleted by a concurrent reindex, must not fail the search
+            request.indicesOptions(IndicesOptions.lenientExpandOpen());
+        }
+        String operation = !query.getAggregations().isEmpty()
+            ? "aggregate"
+            : query.getHighlightBuilder() != null ? "highlight" : "search";
+        Tags tags = tags(entityClass, operation, query);
+        return protect(timed(Mono.from(reactiveElasticsearchTemplate.execute(client -> client.searchForResponse(request))), tags, request))
+            .map(response -> toSearchResult(response, entityClass, tags));
+    }
+
+    /**
+     * Search the index of an entity page by page, at a constant cost per page whatever its depth.
+     * <p>
+     * The first page opens a point in time on the index, so that all pages see the same data; each following
+     * page resumes after the sort values of the last hit of the previous one. The query must therefore sort on
+     * a unique tiebreaker, and its pageable only gives the page size. The point in time is closed after the
+     * last page, or expires if the client stops paging.
+     * <p>
+     * A query typed by a user is given the timeout of the {@link SearchQueryGuard}. A page that timed out is
+     * {@link SearchResult#isPartial() partial}: it may miss hits, and it is never taken for the last page.
+     *
+     * @param query the query.
+     * @param entityClass the search entity.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param <T> the type of the search entity.
+     * @return the result of the search, with the cursor of the next page unless this is the last one.
+     * @throws IllegalArgumentException (as an error signal) if the cursor is invalid or has expired.
+     */
+    public <T> Mono<SearchResult<T>> searchAfter(NativeSearchQuery query, Class<T> entityClass, @Nullable String cursor) {
+        int size = query.getPageable().getPageSize();
+        Tags tags = tags(entityClass, "search_after", query);
+        Mono<SearchResult<T>> search = Mono
+            .fromCallable(() -> Optional.ofNullable(cursor).map(SearchCursor::decode))
+            .flatMap(position -> {
+                SearchSourceBuilder source = toSearchSource(query).from(0);
+                if (query.getQuery() instanceof QueryStringQueryBuilder) {
+                    searchQueryGuard.limitTime(source);
+                }
+                if (position.isEmpty()) {
+                    return openPointInTime(reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass))
+                        .flatMap(pointInTimeId -> searchPointInTime(source.pointInTimeBuilder(pointInTime(pointInTimeId)), tags));
+                }
+                source
+                    .pointInTimeBuilder(pointInTime(position.get().getPointInTimeId()))
+                    .searchAfter(position.get().getSearchAfter().toArray());
+                return searchPointInTime(source, tags)
+                    .onErrorMap(
+                        WebClientResponseException.NotFound.class,
+                        e -> new IllegalArgumentException("The search cursor has expired", e)
+                    );
+            })
+            .flatMap(response -> {
+                SearchResult<T> result = toSearchResult(response, entityClass, tags);
+                List<SearchHit<T>> hits = result.getSearchHits().getSearchHits();
+                if (hits.isEmpty() || (hits.size() < size && !result.isPartial())) {
+                    return closePointInTime(response.pointInTimeId()).thenReturn(result);
+                }
+                SearchCursor next = new SearchCursor(response.pointInTimeId(), Arrays.asList(hits.get(hits.size() - 1).getSortValues()));
+                return Mono.just(result.withNextCursor(next.encode()));
+            });
+        return protect(search);
+    }
+
+    /**
+     * Stream all the hits of a query on the index of an entity, reading them in batches from a point in time.
+     * <p>
+     * A batch is only requested once the hits of the previous one have been consumed, so a slow consumer slows
+     * the reads down and at most two batches are held in memory, whatever the number of hits. As with
+     * {@link #searchAfter(NativeSearchQuery, Class, String)}, the query must sort on a unique tiebreaker, and its
+     * pageable gives the batch size. The point in time is closed once the stream completes, fails or is
+     * cancelled.
+     * <p>
+     * Opening the point in time and reading each batch go through the bulkhead and the circuit breaker one at a time,
+     * so that a stream fails fast when Elasticsearch does, without holding a slot while its consumer is slow.
+     * <p>
+     * A query typed by a user is given the timeout of the {@link SearchQueryGuard}. A stream cannot tell that it
+     * is partial, so a batch that timed out fails it with a {@link SearchUnavailableException} rather than end it
+     * early.
+     *
+     * @param query the query.
+     * @param entityClass the search entity.
+     * @param <T> the type of the search entity.
+     * @return the hits, in the order of the query.
+     */
+    public <T> Flux<SearchHit<T>> stream(NativeSearchQuery query, Class<T> entityClass) {
+        int size = query.getPageable().getPageSize();
+        Tags tags = tags(entityClass, "stream", query);
+        return Flux.usingWhen(
+            protect(openPointInTime(reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass))).map(AtomicReference::new),
+            pointInTimeId ->
+                protect(searchPointInTime(streamSource(query, pointInTimeId.get()), tags))
+                    .flatMap(this::checkNotTimedOut)
+                    .expand(response -> {
+                        // the id of a point in time may change between responses, the latest one must be used
+                        pointInTimeId.set(response.pointInTimeId());
+                        int count = response.getHits().getHits().length;
+                        if (count < size) {
+                            return Mono.empty();
+                        }
+                        Object[] searchAfter = response.getHits().getAt(count - 1).getSortValues();
+                        return protect(searchPointInTime(streamSource(query, pointInTimeId.get()).searchAfter(searchAfter), tags))
+                            .flatMap(this::checkNotTimedOut);
+                    })
+                    .concatMapIterable(response -> toSearchResult(response, entityClass, tags).getSearchHits().getSearchHits(), 1),
+            pointInTimeId -> closePointInTime(pointInTimeId.get())
+        );
+    }
+
+    private SearchSourceBuilder streamSource(NativeSearchQuery query, String pointInTimeId) {
+        SearchSourceBuilder source = toSearchSource(query).from(0).trackTotalHits(false).pointInTimeBuilder(pointInTime(pointInTimeId));
+        if (query.getQuery() instanceof QueryStringQueryBuilder) {
+            searchQueryGuard.limitTime(source);
+        }
+        return source;
+    }
+
+    private Mono<SearchResponse> checkNotTimedOut(SearchResponse response) {
+        if (response.isTimedOut()) {
+            return Mono.error(new SearchUnavailableException("Streamed search timed out"));
+        }
+        return Mono.just(response);
+    }
+
+    /**
+     * Search the indices of several entities in a single {@code _msearch} round trip.
+     * <p>
+     * The searches run independently: the failure of one of them does not fail the others, its result is
+     * empty and flagged as {@link SearchResult#isDegraded() degraded} instead.
+     *
+     * @param queries the query of each search entity.
+     * @return the result of the search of each entity, in the order of the queries.
+     */
+    public Mono<Map<Class<?>, SearchResult<?>>> multiSearch(Map<Class<?>, NativeSearchQuery> queries) {
+        List<Class<?>> entityClasses = new ArrayList<>(queries.keySet());
+        List<SearchSourceBuilder> sources = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        queries.forEach((entityClass, query) -> {
+            SearchSourceBuilder source = toSearchSource(query);
+            if (query.getQuery() instanceof QueryStringQueryBuilder) {
+                searchQueryGuard.limit(source);
+            }
+            sources.add(source);
+            body.append("{\"index\":\"").append(entityName(entityClass)).append("\"}\n");
+            body.append(source).append('\n');
+        });
+        String indices = entityClasses.stream().map(this::entityName).collect(Collectors.joining(","));
+        Tags tags = Tags.of("entity", indices, "operation", "msearch", "query", "multi");
+        Mono<MultiSearchResponse> search = Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .post()
+                            .uri("/_msearch")
+                            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                            .bodyValue(body.toString())
+                            .retrieve()
+                            .bodyToMono(String.class)
+                    )
+                )
+            )
+            .map(this::parseMultiSearchResponse);
+        return protect(timedMultiSearch(search, tags, indices, body.toString(), sources))
+            .map(response -> {
+                Map<Class<?>, SearchResult<?>> results = new LinkedHashMap<>();
+                MultiSearchResponse.Item[] items = response.getResponses();
+                for (int i = 0; i < entityClasses.size(); i++) {
+                    Class<?> entityClass = entityClasses.get(i);
+                    if (items[i].isFailure()) {
+                        log.warn("Search of {} failed in a multi search: {}", entityName(entityClass), items[i].getFailureMessage());
+                        results.put(entityClass, SearchResult.degraded(List.of(), 0));
+                    } else {
+                        Tags entityTags = tags(entityClass, "msearch", queries.get(entityClass));
+                        results.put(entityClass, toSearchResult(items[i].getResponse(), entityClass, entityTags));
+                    }
+                }
+                return results;
+            });
+    }
+
+    /**
+     * Complete a prefix with the completion suggester of a {@code completion} field of the index of an entity.
+     * <p>
+     * Suggestions are meant to be requested on every keystroke: past the suggest timeout, the request is
+     * cancelled and no suggestion is returned.
+     *
+     * @param entityClass the search entity.
+     * @param field the {@code completion} field.
+     * @param prefix the prefix to complete.
+     * @param size the maximum number of suggestions.
+     * @return the distinct suggestions, best first.
+     */
+    public Mono<List<String>> complete(Class<?> entityClass, String field, String prefix, int size) {
+        SuggestBuilder suggestBuilder = new SuggestBuilder()
+            .addSuggestion(field, SuggestBuilders.completionSuggestion(field).prefix(prefix).size(size).skipDuplicates(true));
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0).fetchSource(false).suggest(suggestBuilder);
+        SearchRequest request = new SearchRequest(reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass).getIndexNames())
+            .source(source);
+        Tags tags = Tags.of("entity", entityName(entityClass), "operation", "suggest", "query", "completion");
+        return protect(timed(Mono.from(reactiveElasticsearchTemplate.execute(client -> client.searchForResponse(request))), tags, request))
+            .map(response -> suggestions(response.getSuggest(), field))
+            .onErrorResume(SearchUnavailableException.class, e -> Mono.just(List.of()))
+            .timeout(
+                suggestTimeout,
+                Mono.fromSupplier(() -> {
+                    log.debug("Suggestions of {} for {} timed out", field, prefix);
+                    return List.of();
+                })
+            );
+    }
+
+    /**
+     * Run a search through the bulkhead and the circuit breaker.
+     *
+     * @param search the search.
+     * @param <T> the type of the response.
+     * @return the response, or a {@link SearchUnavailableException} error if the search was rejected or timed out.
+     */
+    private <T> Mono<T> protect(Mono<T> search) {
+        return Mono
+            .defer(() -> {
+                if (!bulkhead.tryAcquire()) {
+                    return Mono.error(new SearchUnavailableException("Too many concurrent searches"));
+                }
+                return circuitBreaker.run(search).doFinally(signal -> bulkhead.release());
+            })
+            .onErrorMap(CallNotPermittedException.class, e -> new SearchUnavailableException("Elasticsearch is failing", e))
+            .onErrorMap(TimeoutException.class, e -> new SearchUnavailableException("Search timed out", e));
+    }
+
+    /**
+     * Measure the round trip of a search request, record the time Elasticsearch reports it took and log it if
+     * it is slow.
+     */
+    private Mono<SearchResponse> timed(Mono<SearchResponse> search, Tags tags, SearchRequest request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return search
+                .flatMap(response -> {
+                    Duration latency = Duration.ofNanos(System.nanoTime() - start);
+                    roundTrip(tags, "success").record(latency);
+                    Timer
+                        .builder("search.took")
+                        .description("Time Elasticsearch reports it spent executing a search")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .record(response.getTook().millis(), TimeUnit.MILLISECONDS);
+                    if (!slowSearchLog.isSlow(latency)) {
+                        return Mono.just(response);
+                    }
+                    return currentUser()
+                        .doOnNext(user -> slowSearchLog.record(toSlowSearch(tags, request, response, latency, user)))
+                        .thenReturn(response);
+                })
+                .doOnError(e -> roundTrip(tags, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Measure the round trip of a multi search request like {@link #timed(Mono, Tags, SearchRequest)} does for a
+     * single search.
+     */
+    private Mono<MultiSearchResponse> timedMultiSearch(
+        Mono<MultiSearchResponse> search,
+        Tags tags,
+        String indices,
+        String body,
+        List<SearchSourceBuilder> sources
+    ) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return search
+                .flatMap(response -> {
+                    Duration latency = Duration.ofNanos(System.nanoTime() - start);
+                    roundTrip(tags, "success").record(latency);
+                    Timer
+                        .builder("search.took")
+                        .description("Time Elasticsearch reports it spent executing a search")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .record(response.getTook().millis(), TimeUnit.MILLISECONDS);
+                    if (!slowSearchLog.isSlow(latency)) {
+                        return Mono.just(response);
+                    }
+                    return currentUser()
+                        .doOnNext(user -> slowSearchLog.record(toSlowMultiSearch(indices, body, sources, response, latency, user)))
+                        .thenReturn(response);
+                })
+                .doOnError(e -> roundTrip(tags, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private static SlowSearchLog.Entry toSlowSearch(
+        Tags tags,
+        SearchRequest request,
+        SearchResponse response,
+        Duration latency,
+        String user
+    ) {
+        SearchSourceBuilder source = request.source();
+        TotalHits totalHits = response.getHits().getTotalHits();
+        return new SlowSearchLog.Entry(
+            tags.stream().filter(tag -> tag.getKey().equals("operation")).findFirst().map(Tag::getValue).orElse(null),
+            request.indices().length > 0 ? String.join(",", request.indices()) : "_pit",
+            source.toString(),
+            source.from() >= 0 ? source.from() : 0,
+            source.size() >= 0 ? source.size() : SearchService.DEFAULT_SIZE,
+            source.sorts() != null ? source.sorts().toString() : "[]",
+            latency,
+            response.getTook().millis(),
+            totalHits != null ? totalHits.value : response.getHits().getHits().length,
+            user
+        );
+    }
+
+    private static SlowSearchLog.Entry toSlowMultiSearch(
+        String indices,
+        String body,
+        List<SearchSourceBuilder> sources,
+        MultiSearchResponse response,
+        Duration latency,
+        String user
+    ) {
+        long hits = Arrays
+            .stream(response.getResponses())
+            .filter(item -> !item.isFailure() && item.getResponse().getHits().getTotalHits() != null)
+            .mapToLong(item -> item.getResponse().getHits().getTotalHits().value)
+            .sum();
+        int size = sources.stream().mapToInt(source -> source.size() >= 0 ? source.size() : SearchService.DEFAULT_SIZE).sum();
+        return new SlowSearchLog.Entry("msearch", indices, body, 0, size, "[]", latency, response.getTook().millis(), hits, user);
+    }
+
+    private static Mono<String> currentUser() {
+        return ReactiveSecurityContextHolder
+            .getContext()
+            .flatMap(context -> Mono.justOrEmpty(context.getAuthentication()))
+            .map(Authentication::getName)
+            .defaultIfEmpty("anonymous");
+    }
+
+    private Timer roundTrip(Tags tags, String outcome) {
+        return Timer
+            .builder("search.round.trip")
+            .description("Time from sending a search request to receiving its parsed response")
+            .tags(tags)
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private Tags tags(Class<?> entityClass, String operation, NativeSearchQuery query) {
+        return Tags.of(
+            "entity",
+            entityName(entityClass),
+            "operation",
+            operation,
+            "query",
+            query.getQuery() != null ? query.getQuery().getName() : "match_all"
+        );
+    }
+
+    private String entityName(Class<?> entityClass) {
+        return reactiveElasticsearchTemplate.getIndexCoordinatesFor(entityClass).getIndexName();
+    }
+
+    /**
+     * Tell whether an error of a search is a failure of Elasticsearch, to be recorded by the circuit breaker,
+     * rather than a rejection of the request itself.
+     *
+     * @param error the error.
+     * @return {@code false} for an invalid cursor or a {@code 4xx} response, {@code true} otherwise.
+     */
+    public static boolean isFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IllegalArgumentException) {
+                return false;
+            }
+            if (cause instanceof ElasticsearchStatusException && ((ElasticsearchStatusException) cause).status().getStatus() < 500) {
+                return false;
+            }
+            if (cause instanceof WebClientResponseException && ((WebClientResponseException) cause).getStatusCode().is4xxClientError()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> suggestions(@Nullable Suggest suggest, String name) {
+        CompletionSuggestion suggestion = suggest != null ? suggest.getSuggestion(name) : null;
+        if (suggestion == null) {
+            return List.of();
+        }
+        return suggestion
+            .getOptions()
+            .stream()
+            .map(option -> option.getText().string())
+            .distinct()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Translate a query to a search source. Sorting is read from {@link NativeSearchQuery#getElasticsearchSorts()}
+     * only, the sort of the query's {@link Pageable} is ignored.
+     */
+    private SearchSourceBuilder toSearchSource(NativeSearchQuery query) {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(query.getQuery() != null ? query.getQuery() : QueryBuilders.matchAllQuery())
+            .postFilter(query.getFilter())
+            .highlighter(query.getHighlightBuilder())
+            .collapse(query.getCollapseBuilder())
+            .trackScores(query.getTrackScores());
+        Pageable pageable = query.getPageable();
+        if (pageable.isPaged()) {
+            source.from((int) pageable.getOffset()).size(pageable.getPageSize());
+        }
+        if (query.getMaxResults() != null) {
+            source.size(query.getMaxResults());
+        }
+        query.getElasticsearchSorts().forEach(source::sort);
+        query.getAggregations().forEach(source::aggregation);
+        query.getPipelineAggregations().forEach(source::aggregation);
+        if (query.getSuggestBuilder() != null) {
+            source.suggest(query.getSuggestBuilder());
+        }
+        SourceFilter sourceFilter = query.getSourceFilter();
+        if (sourceFilter != null) {
+            source.fetchSource(sourceFilter.getIncludes(), sourceFilter.getExcludes());
+        }
+        if (query.getMinScore() > 0) {
+            source.minScore(query.getMinScore());
+        }
+        if (query.getTrackTotalHitsUpTo() != null) {
+            source.trackTotalHitsUpTo(query.getTrackTotalHitsUpTo());
+        } else if (query.getTrackTotalHits() != null) {
+            source.trackTotalHits(query.getTrackTotalHits());
+        } else if (totalHitsUpTo > 0) {
+            source.trackTotalHitsUpTo(totalHitsUpTo);
+        }
+        if (query.getTimeout() != null) {
+            source.timeout(TimeValue.timeValueMillis(query.getTimeout().toMillis()));
+        }
+        if (query.getSearchAfter() != null) {
+            source.searchAfter(query.getSearchAfter().toArray());
+        }
+        return source;
+    }
+
+    private PointInTimeBuilder pointInTime(String pointInTimeId) {
+        return new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive());
+    }
+
+    private TimeValue keepAlive() {
+        return TimeValue.timeValueMillis(cursorKeepAlive.toMillis());
+    }
+
+    /**
+     * Open a point in time on an index. The reactive client has no point in time support, so the REST API is used directly.
+     */
+    @SuppressWarnings("unchecked")
+    private Mono<String> openPointInTime(IndexCoordinates index) {
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .post()
+                            .uri("/{index}/_pit?keep_alive={keepAlive}", index.getIndexName(), keepAlive().getStringRep())
+                            .retrieve()
+                            .bodyToMono(Map.class)
+                    )
+                )
+            )
+            .map(body -> (String) body.get("id"));
+    }
+
+    private Mono<Void> closePointInTime(String pointInTimeId) {
+        return Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .method(HttpMethod.DELETE)
+                            .uri("/_pit")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Map.of("id", pointInTimeId))
+                            .retrieve()
+                            .bodyToMono(String.class)
+                    )
+                )
+            )
+            .doOnError(e -> log.warn("Could not close point in time: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    /**
+     * Run a search against a point in time. Such a search targets no index, which the reactive client does not
+     * support, so the REST API is used directly and the response is parsed here.
+     */
+    private Mono<SearchResponse> searchPointInTime(SearchSourceBuilder source, Tags tags) {
+        Mono<SearchResponse> search = Mono
+            .from(
+                reactiveElasticsearchTemplate.execute(client ->
+                    client.execute(webClient ->
+                        webClient
+                            .post()
+                            .uri("/_search")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(source.toString())
+                            .retrieve()
+                            .bodyToMono(String.class)
+                    )
+                )
+            )
+            .map(this::parseSearchResponse);
+        return timed(search, tags, new SearchRequest().source(source));
+    }
+
+    private SearchResponse parseSearchResponse(String body) {
+        try (
+            XContentParser parser = XContentType.JSON
+                .xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, body)
+        ) {
+            return SearchResponse.fromXContent(parser);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not parse search response", e);
+        }
+    }
+
+    private MultiSearchResponse parseMultiSearchResponse(String body) {
+        try (
+            XContentParser parser = XContentType.JSON
+                .xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, body)
+        ) {
+            return MultiSearchResponse.fromXContext(parser);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not parse multi search response", e);
+        }
+    }
+
+    private <T> SearchResult<T> toSearchResult(SearchResponse response, Class<T> entityClass, Tags tags) {
+        long start = System.nanoTime();
+        List<SearchHit<T>> hits = Arrays
+            .stream(response.getHits().getHits())
+            .map(hit -> toSearchHit(DocumentAdapters.from(hit), entityClass))
+            .collect(Collectors.toList());
+        Timer
+            .builder("search.mapping")
+            .description("Time spent mapping the hits of a search response to entities")
+            .tags(tags)
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        TotalHits totalHits = response.getHits().getTotalHits();
+        if (totalHits != null) {
+            DistributionSummary
+                .builder("search.hits")
+                .description("Number of documents matching a search, or its lower bound when not counted exactly")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(totalHits.value);
+        }
+        long total = totalHits != null ? totalHits.value : hits.size();
+        // a search stopped early only counted the documents it went through
+        boolean partial = response.isTimedOut() || Boolean.TRUE.equals(response.isTerminatedEarly());
+        TotalHitsRelation relation = totalHits == null
+            ? TotalHitsRelation.OFF
+            : totalHits.relation == TotalHits.Relation.EQUAL_TO && !partial
+                ? TotalHitsRelation.EQUAL_TO
+                : TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO;
+        ElasticsearchAggregations aggregations = response.getAggregations() != null
+            ? new ElasticsearchAggregations(response.getAggregations())
+            : null;
+        SearchHits<T> searchHits = new SearchHitsImpl<>(total, relation, response.getHits().getMaxScore(), null, hits, aggregations, null);
+        long tookInMillis = response.getTook().millis();
+        return partial ? SearchResult.partial(searchHits, tookInMillis) : new SearchResult<>(searchHits, tookInMillis);
+    }
+
+    private <T> SearchHit<T> toSearchHit(SearchDocument document, Class<T> entityClass) {
+        return new SearchHit<>(
+            document.getIndex(),
+            document.getId(),
+            document.getRouting(),
+            document.getScore(),
+            document.getSortValues(),
+            document.getHighlightFields(),
+            converter.read(entityClass, document)
+        );
+    }
+}
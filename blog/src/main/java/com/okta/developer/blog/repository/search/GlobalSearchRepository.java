@@ -0,0 +1,78 @@
+package com.okta.developer.blog.repository.search;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Search of the posts, tags, blogs and users matching a query at once, in a single {@code _msearch} round trip.
+ * <p>
+ * Only the fields needed to list the hits of each entity are fetched: the content of the posts, the tag names of
+ * the posts and the owners of the blogs are left out.
+ */
+@Component
+public class GlobalSearchRepository {
+
+    public static final int MAX_SIZE = 20;
+
+    private static final String[] POST_FIELDS = { "id", "title", "excerpt", "date", "blogId", "blogName", "blogHandle" };
+
+    private static final String[] TAG_FIELDS = { "id", "name" };
+
+    private static final String[] BLOG_FIELDS = { "id", "name", "handle" };
+
+    private static final String[] USER_FIELDS = { "id", "login" };
+
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
+
+    private final SearchQueryGuard searchQueryGuard;
+
+    public GlobalSearchRepository(ElasticsearchSearchExecutor elasticsearchSearchExecutor, SearchQueryGuard searchQueryGuard) {
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.searchQueryGuard = searchQueryGuard;
+    }
+
+    /**
+     * Search the best hits of each entity.
+     *
+     * @param query the query string.
+     * @param size the maximum number of hits of each entity, from 1 to {@link #MAX_SIZE}.
+     * @return the result of the search of each entity, keyed by {@link PostSearchDocument}, {@link TagSearchDocument},
+     * {@link Blog} and {@link User}.
+     * @throws IllegalArgumentException if the size is out of range or the query is too expensive.
+     */
+    public Mono<Map<Class<?>, SearchResult<?>>> search(String query, int size) {
+        return Mono
+            .fromCallable(() -> {
+                if (size < 1 || size > MAX_SIZE) {
+                    throw new IllegalArgumentException("The size must be between 1 and " + MAX_SIZE);
+                }
+                QueryStringQueryBuilder queryStringQuery = searchQueryGuard.queryStringQuery(query);
+                Map<Class<?>, NativeSearchQuery> queries = new LinkedHashMap<>();
+                queries.put(PostSearchDocument.class, query(queryStringQuery, size, POST_FIELDS));
+                queries.put(TagSearchDocument.class, query(queryStringQuery, size, TAG_FIELDS));
+                queries.put(Blog.class, query(queryStringQuery, size, BLOG_FIELDS));
+                queries.put(User.class, query(queryStringQuery, size, USER_FIELDS));
+                return queries;
+            })
+            .flatMap(elasticsearchSearchExecutor::multiSearch);
+    }
+
+    private static NativeSearchQuery query(QueryStringQueryBuilder queryStringQuery, int size, String[] fields) {
+        return new NativeSearchQueryBuilder()
+            .withQuery(queryStringQuery)
+            .withPageable(PageRequest.of(0, size))
+            .withSourceFilter(new FetchSourceFilter(fields, null))
+            .build();
+    }
+}
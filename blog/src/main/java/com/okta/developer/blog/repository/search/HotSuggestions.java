@@ -0,0 +1,55 @@
+package com.okta.developer.blog.repository.search;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory suggestions for the most used values of a field, completing the prefixes they cover without
+ * a search request.
+ */
+public class HotSuggestions {
+
+    private final int capacity;
+
+    private volatile List<String> values = List.of();
+
+    /**
+     * @param capacity the number of values to keep in memory.
+     */
+    public HotSuggestions(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replace the values kept in memory.
+     *
+     * @param values the most used values, most used first.
+     */
+    public void update(List<String> values) {
+        this.values = values.stream().limit(capacity).collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Complete a prefix from memory, case-insensitively.
+     *
+     * @param prefix the prefix to complete.
+     * @param size the number of suggestions.
+     * @return the most used values starting with the prefix, or empty if fewer than {@code size} of them are
+     * in memory and a search is needed.
+     */
+    public Optional<List<String>> complete(String prefix, int size) {
+        String lowerCasePrefix = prefix.trim().toLowerCase(Locale.ROOT);
+        List<String> suggestions = values
+            .stream()
+            .filter(value -> value.toLowerCase(Locale.ROOT).startsWith(lowerCasePrefix))
+            .limit(size)
+            .collect(Collectors.toList());
+        return suggestions.size() == size ? Optional.of(suggestions) : Optional.empty();
+    }
+}
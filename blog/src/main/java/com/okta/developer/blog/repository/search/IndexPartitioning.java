@@ -0,0 +1,205 @@
+package com.okta.developer.blog.repository.search;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import org.springframework.lang.Nullable;
+
+/**
+ * Time partitioning of the index of a search entity: its documents are split by date into one index per
+ * interval, all behind the read alias of the entity.
+ * <p>
+ * Each partition has its own alias, the alias of the entity followed by the month its interval starts with
+ * (e.g. {@code post-2022.04}), through which its documents are written. Dates are partitioned in UTC.
+ * <p>
+ * Partitions whose interval ended {@code mergeAfter} intervals ago rarely change anymore: they are force
+ * merged to a single segment per shard, which makes them smaller and faster to search.
+ *
+ * @param <T> the type of the search entity.
+ */
+public class IndexPartitioning<T> {
+
+    /**
+     * Length of the interval of a partition.
+     */
+    public enum Interval {
+        YEAR(12),
+        QUARTER(3),
+        MONTH(1);
+
+        private final int months;
+
+        Interval(int months) {
+            this.months = months;
+        }
+
+        YearMonth startOf(YearMonth month) {
+            return month.withMonth(month.getMonthValue() - (month.getMonthValue() - 1) % months);
+        }
+
+        YearMonth next(YearMonth start) {
+            return start.plusMonths(months);
+        }
+    }
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("uuuu.MM");
+
+    private final Class<T> entityClass;
+
+    private final String alias;
+
+    private final Interval interval;
+
+    private final int mergeAfter;
+
+    private final Function<T, Instant> date;
+
+    /**
+     * @param entityClass the search entity.
+     * @param alias the read alias of the entity.
+     * @param interval the length of the interval of a partition.
+     * @param mergeAfter the number of intervals after the end of a partition it is force merged, {@code 0} to never merge.
+     * @param date the date a document is partitioned by.
+     */
+    public IndexPartitioning(Class<T> entityClass, String alias, Interval interval, int mergeAfter, Function<T, Instant> date) {
+        this.entityClass = entityClass;
+        this.alias = alias;
+        this.interval = interval;
+        this.mergeAfter = mergeAfter;
+        this.date = date;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public Interval getInterval() {
+        return interval;
+    }
+
+    /**
+     * Tell whether a partition is old enough to be force merged.
+     *
+     * @param partition the alias of the partition.
+     * @param now the current date.
+     * @return {@code true} if the partition ended at least {@code mergeAfter} intervals before the current one started.
+     */
+    public boolean isMergeable(String partition, Instant now) {
+        if (mergeAfter <= 0) {
+            return false;
+        }
+        YearMonth current = interval.startOf(YearMonth.from(now.atZone(ZoneOffset.UTC)));
+        return startOf(partition)
+            .map(start -> !interval.next(start).plusMonths((long) interval.months * (mergeAfter - 1)).isAfter(current))
+            .orElse(false);
+    }
+
+    /**
+     * Returns the partition alias of a document.
+     *
+     * @param document the document.
+     * @return the alias of the partition of its date.
+     * @throws IllegalArgumentException if the document has no date.
+     */
+    public String partitionOf(Object document) {
+        Instant documentDate = date.apply(entityClass.cast(document));
+        if (documentDate == null) {
+            throw new IllegalArgumentException("A " + entityClass.getSimpleName() + " without date cannot be partitioned");
+        }
+        return partitionOf(documentDate);
+    }
+
+    /**
+     * Returns the partition alias of a date.
+     *
+     * @param instant the date.
+     * @return the alias of the partition of the date.
+     */
+    public String partitionOf(Instant instant) {
+        return partitionAlias(interval.startOf(YearMonth.from(instant.atZone(ZoneOffset.UTC))));
+    }
+
+    /**
+     * Returns the partition alias following the one of a date.
+     *
+     * @param instant the date.
+     * @return the alias of the next partition.
+     */
+    public String nextPartitionOf(Instant instant) {
+        return partitionAlias(interval.next(interval.startOf(YearMonth.from(instant.atZone(ZoneOffset.UTC)))));
+    }
+
+    /**
+     * Tell whether a name is the alias of a partition of this entity.
+     *
+     * @param name the name.
+     * @return {@code true} for the alias of a partition.
+     */
+    public boolean isPartition(String name) {
+        return startOf(name).isPresent();
+    }
+
+    /**
+     * Tell whether a partition may hold documents dated in a range.
+     *
+     * @param partition the alias of the partition.
+     * @param from the inclusive lower bound of the range, {@code null} if unbounded.
+     * @param to the exclusive upper bound of the range, {@code null} if unbounded.
+     * @return {@code true} if the interval of the partition overlaps the range.
+     */
+    public boolean overlaps(String partition, @Nullable Instant from, @Nullable Instant to) {
+        return startOf(partition)
+            .map(start -> {
+                Instant begin = start.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+                Instant end = interval.next(start).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+                return (from == null || from.isBefore(end)) && (to == null || to.isAfter(begin));
+            })
+            .orElse(false);
+    }
+
+    /**
+     * Returns the aliases of all the partitions that may hold documents dated in a range, whether they exist or not.
+     *
+     * @param from the inclusive lower bound of the range.
+     * @param to the exclusive upper bound of the range.
+     * @param max the maximum number of partitions.
+     * @return the aliases of the partitions, oldest first, or empty if the range spans more than {@code max} partitions.
+     */
+    public Optional<List<String>> partitionsOverlapping(Instant from, Instant to, int max) {
+        List<String> partitions = new ArrayList<>();
+        YearMonth start = interval.startOf(YearMonth.from(from.atZone(ZoneOffset.UTC)));
+        while (from.isBefore(to) && start.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().isBefore(to)) {
+            if (partitions.size() == max) {
+                return Optional.empty();
+            }
+            partitions.add(partitionAlias(start));
+            start = interval.next(start);
+        }
+        return Optional.of(partitions);
+    }
+
+    private String partitionAlias(YearMonth start) {
+        return alias + "-" + start.format(PARTITION_FORMAT);
+    }
+
+    private Optional<YearMonth> startOf(String partition) {
+        if (!partition.startsWith(alias + "-")) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(YearMonth.parse(partition.substring(alias.length() + 1), PARTITION_FORMAT));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.okta.developer.blog.repository.search;
+
+import java.util.function.Function;
+import org.springframework.lang.Nullable;
+
+/**
+ * Custom routing of the documents of a search entity: documents sharing a routing value are stored on the same
+ * shard, so that a search passing that value only queries one shard instead of all of them.
+ * <p>
+ * The documents already indexed were routed by their id: the index of the entity must be rebuilt after the
+ * routing is enabled or disabled.
+ *
+ * @param <T> the type of the search entity.
+ */
+public class IndexRouting<T> {
+
+    private final Class<T> entityClass;
+
+    private final Function<T, String> routing;
+
+    /**
+     * @param entityClass the search entity.
+     * @param routing the routing value of a document, {@code null} to route it by its id.
+     */
+    public IndexRouting(Class<T> entityClass, Function<T, String> routing) {
+        this.entityClass = entityClass;
+        this.routing = routing;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Returns the routing value of a document.
+     *
+     * @param document the document.
+     * @return the routing value, {@code null} if the document is routed by its id.
+     */
+    @Nullable
+    public String routingOf(Object document) {
+        String value = routing.apply(entityClass.cast(document));
+        return value != null && !value.isBlank() ? value : null;
+    }
+}
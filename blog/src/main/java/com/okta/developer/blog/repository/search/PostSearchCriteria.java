@@ -0,0 +1,159 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.multiMatchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+/**
+ * Criteria of a structured post search: an optional free text matched against the title and content of
+ * the posts, and exact filters on their blog, tags and date.
+ * <p>
+ * The filters run in filter context: they do not contribute to the score and Elasticsearch caches them.
+ */
+public class PostSearchCriteria {
+
+    private String text;
+
+    private String blogId;
+
+    private List<String> tags = new ArrayList<>();
+
+    private Instant from;
+
+    private Instant to;
+
+    public String getText() {
+        return text;
+    }
+
+    public PostSearchCriteria text(String text) {
+        this.text = text;
+        return this;
+    }
+
+    public String getBlogId() {
+        return blogId;
+    }
+
+    public PostSearchCriteria blogId(String blogId) {
+        this.blogId = blogId;
+        return this;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @param tags the names of the tags the posts must all have.
+     * @return this instance.
+     */
+    public PostSearchCriteria tags(List<String> tags) {
+        this.tags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+        return this;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * @param from the inclusive lower bound of the date of the posts.
+     * @return this instance.
+     */
+    public PostSearchCriteria from(Instant from) {
+        this.from = from;
+        return this;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    /**
+     * @param to the exclusive upper bound of the date of the posts.
+     * @return this instance.
+     */
+    public PostSearchCriteria to(Instant to) {
+        this.to = to;
+        return this;
+    }
+
+    public boolean hasText() {
+        return text != null && !text.isBlank();
+    }
+
+    /**
+     * Build the query of the criteria.
+     *
+     * @return a {@code bool} query with the text in {@code must} and every other criterion in {@code filter}.
+     * @throws IllegalArgumentException if the date range is empty.
+     */
+    BoolQueryBuilder toQuery() {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("The start of the date range must be before its end");
+        }
+        BoolQueryBuilder query = boolQuery();
+        if (hasText()) {
+            query.must(multiMatchQuery(text.trim(), "title", "content"));
+        }
+        if (blogId != null && !blogId.isBlank()) {
+            query.filter(termQuery("blogId", blogId));
+        }
+        tags.stream().filter(tag -> !tag.isBlank()).forEach(tag -> query.filter(termQuery("tagNames", tag)));
+        if (from != null || to != null) {
+            RangeQueryBuilder dateRange = rangeQuery("date");
+            if (from != null) {
+                dateRange.gte(from.toString());
+            }
+            if (to != null) {
+                dateRange.lt(to.toString());
+            }
+            query.filter(dateRange);
+        }
+        return query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PostSearchCriteria)) {
+            return false;
+        }
+        PostSearchCriteria that = (PostSearchCriteria) o;
+        return (
+            Objects.equals(text, that.text) &&
+            Objects.equals(blogId, that.blogId) &&
+            Objects.equals(tags, that.tags) &&
+            Objects.equals(from, that.from) &&
+            Objects.equals(to, that.to)
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, blogId, tags, from, to);
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PostSearchCriteria{" +
+            "text='" + text + '\'' +
+            ", blogId='" + blogId + '\'' +
+            ", tags=" + tags +
+            ", from=" + from +
+            ", to=" + to +
+            "}";
+    }
+}
@@ -1,51 +1,384 @@
 package com.okta.developer.blog.repository.search;
 
-import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
-import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.clients.elasticsearch7.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
+import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
- * Spring Data Elasticsearch repository for the {@link Post} entity.
+ * Spring Data Elasticsearch repository for the {@link PostSearchDocument} search document.
  */
-public interface PostSearchRepository extends ReactiveElasticsearchRepository<Post, String>, PostSearchRepositoryInternal {}
+public interface PostSearchRepository extends ReactiveElasticsearchRepository<PostSearchDocument, String>, PostSearchRepositoryInternal {
+    /**
+     * Name of the {@code terms} aggregation over the tag names of the posts.
+     */
+    String TAGS_AGGREGATION = "tags";
+
+    /**
+     * Name of the {@code terms} aggregation over the blog ids of the posts.
+     */
+    String BLOGS_AGGREGATION = "blogs";
+
+    /**
+     * Name of the {@code date_histogram} aggregation over the date of the posts.
+     */
+    String DATES_AGGREGATION = "dates";
+}
 
 interface PostSearchRepositoryInternal {
-    Flux<Post> search(String query, Pageable pageable);
+    Mono<SearchResult<PostSearchDocument>> search(String query, Pageable pageable, List<String> fields);
+
+    Mono<SearchResult<PostSearchDocument>> searchAfter(String query, Sort sort, int size, @Nullable String cursor, List<String> fields);
+
+    Flux<PostSearchDocument> stream(String query, Sort sort, List<String> fields);
+
+    Mono<SearchResult<PostSearchDocument>> searchHighlighted(String query, Pageable pageable);
+
+    Mono<SearchResult<PostSearchDocument>> search(PostSearchCriteria criteria, Pageable pageable, List<String> fields);
+
+    Mono<SearchResult<PostSearchDocument>> aggregate(PostSearchCriteria criteria, String interval, int size);
+
+    Mono<List<String>> mostUsedTags(int size);
+
+    Mono<List<String>> suggestTitles(String prefix, int size);
+
+    Flux<ElasticsearchByQueryUpdater.Progress> updateBlog(String blogId, String name, String handle);
+
+    Flux<ElasticsearchByQueryUpdater.Progress> renameTag(String from, String to);
 }
 
 class PostSearchRepositoryInternalImpl implements PostSearchRepositoryInternal {
 
-    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+    /**
+     * Fields of the posts returned with their highlights: everything but the content.
+     */
+    private static final String[] HIGHLIGHTED_HIT_FIELDS = { "id", "title", "excerpt", "date", "blogId", "blogName", "blogHandle" };
+
+    private static final int HIGHLIGHT_FRAGMENT_SIZE = 150;
+
+    private static final int HIGHLIGHT_FRAGMENTS = 3;
+
+    private static final int MAX_BUCKETS = 100;
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private static final Sort LATEST_FIRST = Sort.by(Sort.Order.desc("date"));
 
-    PostSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
-        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+    private static final int LATEST_FIRST_TRACK_TOTAL_HITS = 1000;
+
+    private static final Set<String> DATE_HISTOGRAM_INTERVALS = Set.of("year", "quarter", "month", "week", "day");
+
+    private static final String UPDATE_BLOG_SCRIPT =
+        "if (ctx._source.blogName == params.name && ctx._source.blogHandle == params.handle) { ctx.op = 'noop'; } " +
+        "else { ctx._source.blogName = params.name; ctx._source.blogHandle = params.handle; }";
+
+    private static final String RENAME_TAG_SCRIPT =
+        "List names = ctx._source.tagNames; names.removeIf(name -> name == params.from); " +
+        "if (!names.contains(params.to)) { names.add(params.to); } Collections.sort(names);";
+
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
+
+    private final SortToFieldSortBuilderConverter sortConverter;
+
+    private final SearchResultCache<PostSearchDocument> postSearchResultCache;
+
+    private final ElasticsearchByQueryUpdater elasticsearchByQueryUpdater;
+
+    private final ElasticsearchIndexManager elasticsearchIndexManager;
+
+    private final SearchQueryGuard searchQueryGuard;
+
+    PostSearchRepositoryInternalImpl(
+        ElasticsearchSearchExecutor elasticsearchSearchExecutor,
+        ElasticsearchMappings elasticsearchMappings,
+        SearchResultCache<PostSearchDocument> postSearchResultCache,
+        ElasticsearchByQueryUpdater elasticsearchByQueryUpdater,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        SearchQueryGuard searchQueryGuard
+    ) {
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.elasticsearchIndexManager = elasticsearchIndexManager;
+        this.searchQueryGuard = searchQueryGuard;
+        this.sortConverter = new SortToFieldSortBuilderConverter(elasticsearchMappings.getMapping(PostSearchDocument.class));
+        this.postSearchResultCache = postSearchResultCache;
+        this.elasticsearchByQueryUpdater = elasticsearchByQueryUpdater;
     }
 
     @Override
-    public Flux<Post> search(String query, Pageable pageable) {
-        List<FieldSortBuilder> builders = new SortToFieldSortBuilderConverter().convert(pageable.getSort());
+    public Mono<SearchResult<PostSearchDocument>> search(String query, Pageable pageable, List<String> fields) {
+        List<Object> key = List.of(
+            "search",
+            normalize(query),
+            pageable.getPageNumber(),
+            pageable.getPageSize(),
+            pageable.getSort(),
+            fields
+        );
+        return postSearchResultCache.get(key, () -> doSearch(query, pageable, fields));
+    }
+
+    private Mono<SearchResult<PostSearchDocument>> doSearch(String query, Pageable pageable, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+                sortConverter.convert(pageable.getSort()).forEach(queryBuilder::withSort);
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, PostSearchDocument.class));
+    }
 
-        NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-            .withQuery(queryStringQuery(query))
-            .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    @Override
+    public Mono<SearchResult<PostSearchDocument>> searchAfter(
+        String query,
+        Sort sort,
+        int size,
+        @Nullable String cursor,
+        List<String> fields
+    ) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, size));
+                if (sort.isSorted()) {
+                    sortConverter.convert(sort).forEach(queryBuilder::withSort);
+                } else {
+                    queryBuilder.withSort(SortBuilders.scoreSort());
+                    // the id makes the sort values of every hit unique, so that no hit is skipped or repeated between pages
+                    queryBuilder.withSort(new FieldSortBuilder("id").order(SortOrder.ASC));
+                }
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.searchAfter(nativeSearchQuery, PostSearchDocument.class, cursor));
+    }
 
-        builders
-            .stream()
-            .forEach(builder -> {
-                queryBuilder.withSort(builder);
+    @Override
+    public Flux<PostSearchDocument> stream(String query, Sort sort, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, STREAM_BATCH_SIZE));
+                if (sort.isSorted()) {
+                    sortConverter.convert(sort).forEach(queryBuilder::withSort);
+                } else {
+                    // the cheapest order to read a point in time in, unique across the shards
+                    queryBuilder.withSort(new FieldSortBuilder("_shard_doc").order(SortOrder.ASC));
+                }
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMapMany(nativeSearchQuery -> elasticsearchSearchExecutor.stream(nativeSearchQuery, PostSearchDocument.class))
+            .map(SearchHit::getContent);
+    }
+
+    @Override
+    public Mono<SearchResult<PostSearchDocument>> search(PostSearchCriteria criteria, Pageable pageable, List<String> fields) {
+        List<Object> key = List.of(
+            "criteria",
+            criteria,
+            pageable.getPageNumber(),
+            pageable.getPageSize(),
+            pageable.getSort(),
+            fields
+        );
+        return postSearchResultCache.get(key, () -> doSearch(criteria, pageable, fields));
+    }
+
+    private Mono<SearchResult<PostSearchDocument>> doSearch(PostSearchCriteria criteria, Pageable pageable, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(criteria.toQuery())
+                    .withRoute(routingFor(criteria))
+                    .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+                boolean latestFirst = pageable.getSort().isUnsorted() && !criteria.hasText();
+                // without text every post has the same score: show the latest first
+                sortConverter.convert(latestFirst ? LATEST_FIRST : pageable.getSort()).forEach(queryBuilder::withSort);
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                NativeSearchQuery nativeSearchQuery = queryBuilder.build();
+                if (latestFirst) {
+                    // a bounded count lets the shards stop collecting once they have the page, right away when the post
+                    // indices are sorted by date
+                    nativeSearchQuery.setTrackTotalHitsUpTo(LATEST_FIRST_TRACK_TOTAL_HITS);
+                }
+                return nativeSearchQuery;
+            })
+            .flatMap(nativeSearchQuery ->
+                elasticsearchSearchExecutor.search(nativeSearchQuery, PostSearchDocument.class, indicesFor(criteria))
+            );
+    }
+
+    @Override
+    public Mono<SearchResult<PostSearchDocument>> aggregate(PostSearchCriteria criteria, String interval, int size) {
+        return postSearchResultCache.get(List.of("aggregate", criteria, interval, size), () -> doAggregate(criteria, interval, size));
+    }
+
+    private Mono<SearchResult<PostSearchDocument>> doAggregate(PostSearchCriteria criteria, String interval, int size) {
+        return Mono
+            .fromCallable(() -> {
+                if (!DATE_HISTOGRAM_INTERVALS.contains(interval)) {
+                    throw new IllegalArgumentException("The interval must be one of " + DATE_HISTOGRAM_INTERVALS);
+                }
+                if (size < 1 || size > MAX_BUCKETS) {
+                    throw new IllegalArgumentException("The number of buckets must be between 1 and " + MAX_BUCKETS);
+                }
+                NativeSearchQuery nativeSearchQuery = new NativeSearchQueryBuilder()
+                    .withQuery(criteria.toQuery())
+                    .withRoute(routingFor(criteria))
+                    .withMaxResults(0)
+                    .addAggregation(AggregationBuilders.terms(PostSearchRepository.TAGS_AGGREGATION).field("tagNames").size(size))
+                    .addAggregation(AggregationBuilders.terms(PostSearchRepository.BLOGS_AGGREGATION).field("blogId").size(size))
+                    .addAggregation(
+                        AggregationBuilders
+                            .dateHistogram(PostSearchRepository.DATES_AGGREGATION)
+                            .field("date")
+                            .calendarInterval(new DateHistogramInterval(interval))
+                            .minDocCount(1)
+                    )
+                    .build();
+                // no hits are returned, so Elasticsearch can serve the response from its shard request cache
+                nativeSearchQuery.setRequestCache(true);
+                return nativeSearchQuery;
+            })
+            .flatMap(nativeSearchQuery ->
+                elasticsearchSearchExecutor.search(nativeSearchQuery, PostSearchDocument.class, indicesFor(criteria))
+            );
+    }
+
+    @Override
+    public Mono<SearchResult<PostSearchDocument>> searchHighlighted(String query, Pageable pageable) {
+        List<Object> key = List.of("highlight", normalize(query), pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort());
+        return postSearchResultCache.get(key, () -> doSearchHighlighted(query, pageable));
+    }
+
+    private Mono<SearchResult<PostSearchDocument>> doSearchHighlighted(String query, Pageable pageable) {
+        return Mono
+            .fromCallable(() -> {
+                HighlightBuilder highlightBuilder = new HighlightBuilder()
+                    .highlighterType("unified")
+                    .encoder("html")
+                    .field(new HighlightBuilder.Field("title").numOfFragments(0))
+                    .field(new HighlightBuilder.Field("content").fragmentSize(HIGHLIGHT_FRAGMENT_SIZE).numOfFragments(HIGHLIGHT_FRAGMENTS));
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()))
+                    .withSourceFilter(new FetchSourceFilter(HIGHLIGHTED_HIT_FIELDS, null))
+                    .withHighlightBuilder(highlightBuilder);
+                sortConverter.convert(pageable.getSort()).forEach(queryBuilder::withSort);
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, PostSearchDocument.class));
+    }
+
+    /**
+     * Only the {@code terms} aggregation of the tags, over all the posts: unlike {@link #aggregate}, this is neither
+     * cached with the results of the users nor capped to their number of buckets.
+     */
+    @Override
+    public Mono<List<String>> mostUsedTags(int size) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQuery nativeSearchQuery = new NativeSearchQueryBuilder()
+                    .withQuery(matchAllQuery())
+                    .withMaxResults(0)
+                    .withTrackTotalHits(false)
+                    .addAggregation(AggregationBuilders.terms(PostSearchRepository.TAGS_AGGREGATION).field("tagNames").size(size))
+                    .build();
+                nativeSearchQuery.setRequestCache(true);
+                return nativeSearchQuery;
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, PostSearchDocument.class))
+            .map(result -> {
+                Aggregations aggregations = ((ElasticsearchAggregations) result.getSearchHits().getAggregations()).aggregations();
+                Terms tags = aggregations.get(PostSearchRepository.TAGS_AGGREGATION);
+                return tags.getBuckets().stream().map(Terms.Bucket::getKeyAsString).collect(Collectors.toList());
             });
+    }
+
+    @Override
+    public Mono<List<String>> suggestTitles(String prefix, int size) {
+        return elasticsearchSearchExecutor.complete(PostSearchDocument.class, "title.suggest", prefix, size);
+    }
+
+    @Override
+    public Flux<ElasticsearchByQueryUpdater.Progress> updateBlog(String blogId, String name, String handle) {
+        return elasticsearchByQueryUpdater.updateByQuery(
+            PostSearchDocument.class,
+            termQuery("blogId", blogId),
+            new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, UPDATE_BLOG_SCRIPT, Map.of("name", name, "handle", handle))
+        );
+    }
+
+    @Override
+    public Flux<ElasticsearchByQueryUpdater.Progress> renameTag(String from, String to) {
+        return elasticsearchByQueryUpdater.updateByQuery(
+            PostSearchDocument.class,
+            termQuery("tagNames", from),
+            new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, RENAME_TAG_SCRIPT, Map.of("from", from, "to", to))
+        );
+    }
+
+    /**
+     * Only search the post indices overlapping the date range of the criteria.
+     */
+    private IndexCoordinates indicesFor(PostSearchCriteria criteria) {
+        return elasticsearchIndexManager.searchIndicesFor(PostSearchDocument.class, criteria.getFrom(), criteria.getTo());
+    }
+
+    /**
+     * Only search the shard holding the posts of the blog the criteria are scoped to, when posts are routed by blog.
+     */
+    @Nullable
+    private String routingFor(PostSearchCriteria criteria) {
+        String blogId = criteria.getBlogId();
+        boolean scoped = blogId != null && !blogId.isBlank();
+        return scoped && elasticsearchIndexManager.isRouted(PostSearchDocument.class) ? blogId : null;
+    }
 
-        NativeSearchQuery nativeSearchQuery = queryBuilder.build();
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, Post.class).map(SearchHit::getContent);
+    /**
+     * Normalize the whitespace of a query, so that queries differing only in spacing share a cache entry.
+     */
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ");
     }
 }
@@ -0,0 +1,77 @@
+package com.okta.developer.blog.repository.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Position of a cursor-paginated search: the point in time the search runs against and the sort values of
+ * the last hit returned, encoded as an opaque URL-safe string.
+ */
+class SearchCursor {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String pointInTimeId;
+
+    private final List<Object> searchAfter;
+
+    SearchCursor(String pointInTimeId, List<Object> searchAfter) {
+        this.pointInTimeId = pointInTimeId;
+        this.searchAfter = searchAfter;
+    }
+
+    String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    /**
+     * Encode the cursor.
+     *
+     * @return the opaque cursor value.
+     */
+    String encode() {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(Map.of("pit", pointInTimeId, "after", searchAfter));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode search cursor", e);
+        }
+    }
+
+    /**
+     * Decode a cursor returned by {@link #encode()}.
+     *
+     * @param value the opaque cursor value.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the value is not a valid cursor.
+     */
+    @SuppressWarnings("unchecked")
+    static SearchCursor decode(String value) {
+        try {
+            Map<String, Object> json = objectMapper.readValue(Base64.getUrlDecoder().decode(value), Map.class);
+            if (!(json.get("pit") instanceof String) || !(json.get("after") instanceof List)) {
+                throw new IllegalArgumentException("Invalid search cursor");
+            }
+            return new SearchCursor((String) json.get("pit"), (List<Object>) json.get("after"));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SearchCursor{" +
+            "pointInTimeId='" + pointInTimeId + '\'' +
+            ", searchAfter=" + searchAfter +
+            "}";
+    }
+}
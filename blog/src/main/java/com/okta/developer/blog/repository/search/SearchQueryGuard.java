@@ -0,0 +1,240 @@
+package com.okta.developer.blog.repository.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Set;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.SearchContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Guards the cluster against the cost of the {@code query_string} searches typed by the users.
+ * <p>
+ * A query string is parsed before it is sent: queries too long, with too many clauses, nested too deep, with a
+ * leading wildcard or with a regular expression are rejected with an {@link IllegalArgumentException}, and
+ * counted in the {@code search.query.rejected} metric. Fuzzy terms are accepted, but their expansions are
+ * capped. The page size of the searches is capped as well, and the searches are given a timeout and a
+ * {@code terminate_after}, so that Elasticsearch stops collecting hits rather than overload its nodes.
+ */
+public class SearchQueryGuard {
+
+    private static final Set<String> OPERATORS = Set.of("AND", "OR", "NOT", "&&", "||");
+
+    private static final String PREFIX_OPERATORS = "+-!";
+
+    private static final String TERM_DELIMITERS = "()\"[]{}";
+
+    private final int maxLength;
+
+    private final int maxClauses;
+
+    private final int maxDepth;
+
+    private final int fuzzyMaxExpansions;
+
+    private final int maxPageSize;
+
+    private final Duration timeout;
+
+    private final int terminateAfter;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param maxLength the maximum number of characters of a query.
+     * @param maxClauses the maximum number of terms, phrases and ranges of a query.
+     * @param maxDepth the maximum nesting of the parentheses of a query.
+     * @param fuzzyMaxExpansions the maximum number of terms a fuzzy term is expanded to.
+     * @param maxPageSize the maximum number of hits of a page.
+     * @param timeout the time after which Elasticsearch returns the hits collected so far, zero for none.
+     * @param terminateAfter the number of hits per shard after which Elasticsearch stops collecting, 0 for no limit.
+     */
+    public SearchQueryGuard(
+        int maxLength,
+        int maxClauses,
+        int maxDepth,
+        int fuzzyMaxExpansions,
+        int maxPageSize,
+        Duration timeout,
+        int terminateAfter,
+        MeterRegistry meterRegistry
+    ) {
+        this.maxLength = maxLength;
+        this.maxClauses = maxClauses;
+        this.maxDepth = maxDepth;
+        this.fuzzyMaxExpansions = fuzzyMaxExpansions;
+        this.maxPageSize = maxPageSize;
+        this.timeout = timeout;
+        this.terminateAfter = terminateAfter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Build the {@code query_string} query of a query typed by a user.
+     *
+     * @param query the query string.
+     * @return the query, with capped fuzzy expansions and no leading wildcards.
+     * @throws IllegalArgumentException if the query is too expensive.
+     */
+    public QueryStringQueryBuilder queryStringQuery(String query) {
+        if (query.length() > maxLength) {
+            throw reject("length", "The query must not be longer than " + maxLength + " characters");
+        }
+        int clauses = 0;
+        int depth = 0;
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '(') {
+                if (++depth > maxDepth) {
+                    throw reject("depth", "The query must not nest more than " + maxDepth + " levels of parentheses");
+                }
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (Character.isWhitespace(c) || PREFIX_OPERATORS.indexOf(c) >= 0) {
+                i++;
+            } else if (c == '"') {
+                clauses++;
+                i = skip(query, i + 1, '"');
+            } else if (c == '[' || c == '{') {
+                clauses++;
+                i = skip(query, i + 1, c == '[' ? ']' : '}');
+            } else if (c == '/') {
+                throw reject("regexp", "Regular expressions are not allowed in a query");
+            } else {
+                int end = endOfTerm(query, i);
+                clauses += checkTerm(query.substring(i, end)) ? 1 : 0;
+                i = end;
+            }
+            if (clauses > maxClauses) {
+                throw reject("clauses", "The query must not have more than " + maxClauses + " terms");
+            }
+        }
+        return QueryBuilders.queryStringQuery(query).allowLeadingWildcard(false).fuzzyMaxExpansions(fuzzyMaxExpansions);
+    }
+
+    /**
+     * Returns the page size of a search, capped.
+     *
+     * @param size the requested page size.
+     * @return the page size to search with.
+     */
+    public int pageSize(int size) {
+        return Math.min(size, maxPageSize);
+    }
+
+    /**
+     * Returns the pagination of a search, with its page size capped.
+     * <p>
+     * The capped pagination is the one to search with, but also the one to key a cache and to build the
+     * pagination headers with, so that they describe the page that was actually searched.
+     *
+     * @param pageable the requested pagination.
+     * @return the pagination to search with.
+     */
+    public Pageable pageable(Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getPageSize() <= maxPageSize) {
+            return pageable;
+        }
+        return PageRequest.of(pageable.getPageNumber(), maxPageSize, pageable.getSort());
+    }
+
+    /**
+     * Set the timeout and the {@code terminate_after} of a search, unless it has its own.
+     *
+     * @param source the search.
+     */
+    public void limit(SearchSourceBuilder source) {
+        limitTime(source);
+        if (terminateAfter > 0 && source.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER) {
+            source.terminateAfter(terminateAfter);
+        }
+    }
+
+    /**
+     * Set the timeout of a search, unless it has its own, but no {@code terminate_after}.
+     * <p>
+     * This is the limit of the paginated and streamed searches: {@code terminate_after} stops collecting the hits
+     * in the order of the index, not in the order of the sort, so their pages would skip hits and end early.
+     *
+     * @param source the search.
+     */
+    public void limitTime(SearchSourceBuilder source) {
+        if (source.timeout() == null && !timeout.isZero()) {
+            source.timeout(TimeValue.timeValueMillis(timeout.toMillis()));
+        }
+    }
+
+    /**
+     * Check a term (with its field and modifiers) and tell whether it is a clause rather than an operator.
+     */
+    private boolean checkTerm(String term) {
+        if (OPERATORS.contains(term)) {
+            return false;
+        }
+        int colon = indexOfUnescaped(term, ':');
+        String value = colon >= 0 ? term.substring(colon + 1) : term;
+        if (value.isEmpty() || value.charAt(0) == '~' || value.charAt(0) == '^') {
+            // a field followed by a group or phrase, or the modifier of the previous clause
+            return false;
+        }
+        if (value.charAt(0) == '/') {
+            throw reject("regexp", "Regular expressions are not allowed in a query");
+        }
+        if (value.charAt(0) == '*' || value.charAt(0) == '?') {
+            throw reject("leading_wildcard", "Terms must not start with a wildcard");
+        }
+        return true;
+    }
+
+    private static int endOfTerm(String query, int start) {
+        int i = start;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (Character.isWhitespace(c) || TERM_DELIMITERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                i++;
+            }
+        }
+        return Math.min(i, query.length());
+    }
+
+    private static int skip(String query, int start, char closing) {
+        int i = start;
+        while (i < query.length() && query.charAt(i) != closing) {
+            i += query.charAt(i) == '\\' ? 2 : 1;
+        }
+        return Math.min(i + 1, query.length());
+    }
+
+    private static int indexOfUnescaped(String term, char c) {
+        for (int i = 0; i < term.length(); i++) {
+            if (term.charAt(i) == '\\') {
+                i++;
+            } else if (term.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private IllegalArgumentException reject(String reason, String message) {
+        Counter
+            .builder("search.query.rejected")
+            .description("Search queries rejected as too expensive")
+            .tag("reason", reason)
+            .register(meterRegistry)
+            .increment();
+        return new IllegalArgumentException(message);
+    }
+}
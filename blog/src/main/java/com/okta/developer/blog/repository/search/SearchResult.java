@@ -0,0 +1,176 @@
+package com.okta.developer.blog.repository.search;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+
+/**
+ * The result of a single search request: the {@link SearchHits} of the requested page together with the
+ * time Elasticsearch spent executing the query and, for cursor-paginated searches, the cursor of the next page.
+ * <p>
+ * A degraded result was not served by Elasticsearch but by a simpler fallback search while Elasticsearch was
+ * unavailable: its hits have no score, sort values or highlights.
+ * <p>
+ * A partial result was cut short by Elasticsearch, on its timeout or its {@code terminate_after}: better matches may
+ * be missing from its hits, and its total is only a lower bound. It must not be cached.
+ *
+ * @param <T> the type of the search entity.
+ */
+public class SearchResult<T> {
+
+    private final SearchHits<T> searchHits;
+
+    private final long tookInMillis;
+
+    private final String nextCursor;
+
+    private final boolean degraded;
+
+    private final boolean partial;
+
+    public SearchResult(SearchHits<T> searchHits, long tookInMillis) {
+        this(searchHits, tookInMillis, null);
+    }
+
+    public SearchResult(SearchHits<T> searchHits, long tookInMillis, String nextCursor) {
+        this(searchHits, tookInMillis, nextCursor, false, false);
+    }
+
+    private SearchResult(SearchHits<T> searchHits, long tookInMillis, String nextCursor, boolean degraded, boolean partial) {
+        this.searchHits = searchHits;
+        this.tookInMillis = tookInMillis;
+        this.nextCursor = nextCursor;
+        this.degraded = degraded;
+        this.partial = partial;
+    }
+
+    /**
+     * Build the result of a search cut short by Elasticsearch.
+     *
+     * @param searchHits the hits collected before the search stopped, with a lower bound of their total.
+     * @param tookInMillis the time Elasticsearch spent on the search.
+     * @param <T> the type of the entities.
+     * @return the partial result.
+     */
+    public static <T> SearchResult<T> partial(SearchHits<T> searchHits, long tookInMillis) {
+        return new SearchResult<>(searchHits, tookInMillis, null, false, true);
+    }
+
+    /**
+     * Build the degraded result of a fallback search.
+     *
+     * @param content the entities of the requested page.
+     * @param totalHits the number of entities matching the search.
+     * @param <T> the type of the entities.
+     * @return the degraded result.
+     */
+    public static <T> SearchResult<T> degraded(List<T> content, long totalHits) {
+        List<SearchHit<T>> hits = content
+            .stream()
+            .map(entity -> new SearchHit<>(null, null, null, Float.NaN, null, null, entity))
+            .collect(Collectors.toList());
+        return new SearchResult<>(
+            new SearchHitsImpl<>(totalHits, TotalHitsRelation.EQUAL_TO, Float.NaN, null, hits, null, null),
+            0,
+            null,
+            true,
+            false
+        );
+    }
+
+    public SearchHits<T> getSearchHits() {
+        return searchHits;
+    }
+
+    /**
+     * Returns the number of documents matching the query, exact or a lower bound depending on {@link #getTotalHitsRelation()}.
+     *
+     * @return the number of matching documents.
+     */
+    public long getTotalHits() {
+        return searchHits.getTotalHits();
+    }
+
+    public TotalHitsRelation getTotalHitsRelation() {
+        return searchHits.getTotalHitsRelation();
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    /**
+     * Returns the opaque cursor to pass to get the next page of a cursor-paginated search.
+     *
+     * @return the cursor, or {@code null} if this is the last page or the search was not cursor-paginated.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Returns this result with the cursor of its next page.
+     *
+     * @param nextCursor the cursor of the next page.
+     * @return the cursor-paginated result.
+     */
+    public SearchResult<T> withNextCursor(String nextCursor) {
+        return new SearchResult<>(searchHits, tookInMillis, nextCursor, degraded, partial);
+    }
+
+    /**
+     * Returns the entities of the requested page.
+     *
+     * @return the list of entities.
+     */
+    public List<T> getContent() {
+        return searchHits.getSearchHits().stream().map(SearchHit::getContent).collect(Collectors.toList());
+    }
+
+    /**
+     * Map the entities of this result, keeping the metadata of each hit and of the search.
+     *
+     * @param mapper the function to apply to each entity.
+     * @param <R> the type of the mapped entities.
+     * @return the mapped result.
+     */
+    public <R> SearchResult<R> map(Function<? super T, ? extends R> mapper) {
+        List<SearchHit<R>> hits = searchHits
+            .getSearchHits()
+            .stream()
+            .map(hit ->
+                new SearchHit<R>(
+                    hit.getIndex(),
+                    hit.getId(),
+                    hit.getRouting(),
+                    hit.getScore(),
+                    hit.getSortValues().toArray(),
+                    hit.getHighlightFields(),
+                    mapper.apply(hit.getContent())
+                )
+            )
+            .collect(Collectors.toList());
+        SearchHits<R> mappedSearchHits = new SearchHitsImpl<>(
+            searchHits.getTotalHits(),
+            searchHits.getTotalHitsRelation(),
+            searchHits.getMaxScore(),
+            null,
+            hits,
+            searchHits.getAggregations(),
+            searchHits.getSuggest()
+        );
+        return new SearchResult<>(mappedSearchHits, tookInMillis, nextCursor, degraded, partial);
+    }
+}
@@ -0,0 +1,201 @@
+package com.okta.developer.blog.repository.search;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bounded in-process cache of search results, evicting the least recently used entry once full and
+ * expiring entries after a time to live.
+ * <p>
+ * Concurrent misses on the same key share a single search request. Writes to the searched entities call
+ * {@link #invalidateAll()}, which bumps a generation counter: entries loaded in an earlier generation are
+ * never returned again. As index writes only become searchable after the next refresh, a search loaded
+ * right after a write may still miss it: the time to live bounds how long such a result is served.
+ *
+ * @param <T> the type of the search entity.
+ */
+public class SearchResultCache<T> {
+
+    private final int maximumSize;
+
+    private final long timeToLiveNanos;
+
+    private final LongSupplier ticker;
+
+    private final Map<Object, Entry<T>> entries;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maximumSize the maximum number of cached results, {@code 0} to disable caching.
+     * @param timeToLive how long a result is cached.
+     */
+    public SearchResultCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    SearchResultCache(int maximumSize, Duration timeToLive, LongSupplier ticker) {
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.ticker = ticker;
+        this.entries =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Entry<T>> eldest) {
+                    if (size() > SearchResultCache.this.maximumSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    }
+
+    /**
+     * Returns the cached result of a search, loading it on a miss.
+     *
+     * @param key the key of the search, identifying its normalized query, page and sort.
+     * @param loader the search to run on a miss.
+     * @return the search result.
+     */
+    public Mono<SearchResult<T>> get(Object key, Supplier<Mono<SearchResult<T>>> loader) {
+        if (maximumSize <= 0) {
+            return loader.get();
+        }
+        return Mono.defer(() -> {
+            long now = ticker.getAsLong();
+            long currentGeneration = generation.get();
+            synchronized (entries) {
+                Entry<T> entry = entries.get(key);
+                if (entry != null) {
+                    if (entry.generation == currentGeneration && now - entry.loadedAt < timeToLiveNanos) {
+                        hits.increment();
+                        return entry.result;
+                    }
+                    entries.remove(key);
+                    evictions.increment();
+                }
+                misses.increment();
+                Entry<T> loading = new Entry<>(currentGeneration, now);
+                // a failed search is not cached: the searches waiting on it fail too, the next one retries
+                // a partial one is not either: the searches waiting on it get it, the next one may get it all
+                loading.result =
+                    loader
+                        .get()
+                        .doOnNext(result -> {
+                            if (result.isPartial()) {
+                                remove(key, loading);
+                            }
+                        })
+                        .doOnError(e -> remove(key, loading))
+                        .cache();
+                entries.put(key, loading);
+                puts.increment();
+                return loading.result;
+            }
+        });
+    }
+
+    /**
+     * Invalidate all the cached results, after a write to the searched entities.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+    }
+
+    public long size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void remove(Object key, Entry<T> entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private static class Entry<T> {
+
+        private final long generation;
+
+        private final long loadedAt;
+
+        private Mono<SearchResult<T>> result;
+
+        private Entry(long generation, long loadedAt) {
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Binds the {@code cache.*} metrics of a {@link SearchResultCache} to a {@link MeterRegistry}.
+     */
+    public static class Metrics extends CacheMeterBinder<SearchResultCache<?>> {
+
+        public Metrics(SearchResultCache<?> cache, String cacheName, Iterable<Tag> tags) {
+            super(cache, cacheName, tags);
+        }
+
+        @Override
+        protected Long size() {
+            SearchResultCache<?> cache = getCache();
+            return cache != null ? cache.size() : null;
+        }
+
+        @Override
+        protected long hitCount() {
+            SearchResultCache<?> cache = getCache();
+            return cache != null ? cache.hits.sum() : 0L;
+        }
+
+        @Override
+        protected Long missCount() {
+            SearchResultCache<?> cache = getCache();
+            return cache != null ? cache.misses.sum() : null;
+        }
+
+        @Override
+        protected Long evictionCount() {
+            SearchResultCache<?> cache = getCache();
+            return cache != null ? cache.evictions.sum() : null;
+        }
+
+        @Override
+        protected long putCount() {
+            SearchResultCache<?> cache = getCache();
+            return cache != null ? cache.puts.sum() : 0L;
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            FunctionCounter
+                .builder("cache.invalidations", getCache(), cache -> cache != null ? cache.invalidations.sum() : 0L)
+                .tags(getTagsWithCacheName())
+                .description("The number of times the cache was invalidated by a write")
+                .register(registry);
+        }
+    }
+}
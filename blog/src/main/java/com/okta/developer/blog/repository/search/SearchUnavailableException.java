@@ -0,0 +1,18 @@
+package com.okta.developer.blog.repository.search;
+
+/**
+ * Thrown when a search is not sent to Elasticsearch, or is abandoned, because Elasticsearch is failing or
+ * overloaded: its circuit breaker is open, too many searches are already running or the search timed out.
+ */
+public class SearchUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SearchUnavailableException(String message) {
+        super(message);
+    }
+
+    public SearchUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
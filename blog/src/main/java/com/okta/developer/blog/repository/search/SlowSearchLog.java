@@ -0,0 +1,182 @@
+package com.okta.developer.blog.repository.search;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of the searches slower than a threshold, with the request body sent to Elasticsearch.
+ * <p>
+ * Slow searches are written to a dedicated logger, which {@code logback-spring.xml} sends through an
+ * asynchronous appender, and the latest ones are kept in memory to be listed by the {@code slowsearches}
+ * management endpoint.
+ */
+public class SlowSearchLog {
+
+    private final Logger log = LoggerFactory.getLogger(SlowSearchLog.class);
+
+    private final Duration threshold;
+
+    private final int capacity;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    /**
+     * @param threshold the latency from which a search is slow, zero to disable the log.
+     * @param capacity the number of slow searches kept in memory.
+     */
+    public SlowSearchLog(Duration threshold, int capacity) {
+        this.threshold = threshold;
+        this.capacity = capacity;
+    }
+
+    public boolean isSlow(Duration latency) {
+        return !threshold.isZero() && latency.compareTo(threshold) >= 0;
+    }
+
+    public void record(Entry entry) {
+        log.info(
+            "Slow {} search on {} by {}: {} ms, took {} ms, {} hits, from {}, size {}, sort {}: {}",
+            entry.operation,
+            entry.index,
+            entry.user,
+            entry.latencyMillis,
+            entry.tookMillis,
+            entry.hits,
+            entry.from,
+            entry.size,
+            entry.sort,
+            entry.request
+        );
+        synchronized (entries) {
+            entries.addFirst(entry);
+            while (entries.size() > capacity) {
+                entries.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Returns the latest slow searches.
+     *
+     * @return the slow searches, latest first.
+     */
+    public List<Entry> getEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    /**
+     * A slow search.
+     */
+    public static class Entry {
+
+        private final Instant timestamp = Instant.now();
+
+        private final String operation;
+
+        private final String index;
+
+        private final String request;
+
+        private final int from;
+
+        private final int size;
+
+        private final String sort;
+
+        private final long latencyMillis;
+
+        private final long tookMillis;
+
+        private final long hits;
+
+        private final String user;
+
+        /**
+         * @param operation the kind of search, as tagged in the search metrics.
+         * @param index the searched index.
+         * @param request the body of the search request.
+         * @param from the offset of the first hit.
+         * @param size the maximum number of hits.
+         * @param sort the sort of the hits.
+         * @param latency the round trip of the search.
+         * @param tookMillis the time Elasticsearch reported it spent on the search.
+         * @param hits the number of matching documents.
+         * @param user the login of the user who ran the search.
+         */
+        public Entry(
+            String operation,
+            String index,
+            String request,
+            int from,
+            int size,
+            String sort,
+            Duration latency,
+            long tookMillis,
+            long hits,
+            String user
+        ) {
+            this.operation = operation;
+            this.index = index;
+            this.request = request;
+            this.from = from;
+            this.size = size;
+            this.sort = sort;
+            this.latencyMillis = latency.toMillis();
+            this.tookMillis = tookMillis;
+            this.hits = hits;
+            this.user = user;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getRequest() {
+            return request;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public String getSort() {
+            return sort;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public long getTookMillis() {
+            return tookMillis;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public String getUser() {
+            return user;
+        }
+    }
+}
@@ -2,23 +2,95 @@ package com.okta.developer.blog.repository.search;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.domain.Sort;
 
+/**
+ * Converts a {@link Sort} to Elasticsearch sorts, resolving each property to a field of the index mapping
+ * that can be sorted on: the field itself when it has doc values, or its {@code keyword} sub-field for a
+ * {@code text} field.
+ * <p>
+ * Unless the sort already has it, the {@code id} is appended as a tiebreaker, so that the hits with the same
+ * sort values keep the same order from one page to the next.
+ */
 public class SortToFieldSortBuilderConverter implements Converter<Sort, List<FieldSortBuilder>> {
 
+    private static final Set<String> DOC_VALUES_TYPES = Set.of(
+        "keyword",
+        "date",
+        "date_nanos",
+        "boolean",
+        "long",
+        "integer",
+        "short",
+        "byte",
+        "double",
+        "float",
+        "half_float",
+        "scaled_float"
+    );
+
+    static final String TIEBREAKER = "id";
+
+    private final Map<String, Object> mapping;
+
+    public SortToFieldSortBuilderConverter(Map<String, Object> mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a property is not mapped or cannot be sorted on.
+     */
     @Override
     public List<FieldSortBuilder> convert(Sort sort) {
         List<FieldSortBuilder> builders = new ArrayList<>();
         sort
             .stream()
             .forEach(order -> {
-                String property = order.getProperty() + ".keyword";
+                String property = resolveSortField(order.getProperty());
                 SortOrder sortOrder = SortOrder.fromString(order.getDirection().name());
                 builders.add(new FieldSortBuilder(property).order(sortOrder));
             });
+        if (!builders.isEmpty() && sort.getOrderFor(TIEBREAKER) == null) {
+            builders.add(new FieldSortBuilder(resolveSortField(TIEBREAKER)).order(SortOrder.ASC));
+        }
         return builders;
     }
+
+    private String resolveSortField(String property) {
+        Map<String, Object> field = mapping;
+        for (String name : property.split("\\.")) {
+            Map<String, Object> properties = child(field, "properties");
+            field = properties != null ? child(properties, name) : null;
+            if (field == null) {
+                throw new IllegalArgumentException("Cannot sort on unknown field " + property);
+            }
+        }
+        if (hasDocValues(field)) {
+            return property;
+        }
+        Map<String, Object> subFields = child(field, "fields");
+        if (subFields != null) {
+            for (Map.Entry<String, Object> subField : subFields.entrySet()) {
+                if (subField.getValue() instanceof Map && hasDocValues(child(subFields, subField.getKey()))) {
+                    return property + "." + subField.getKey();
+                }
+            }
+        }
+        throw new IllegalArgumentException("Cannot sort on field " + property);
+    }
+
+    private static boolean hasDocValues(Map<String, Object> field) {
+        return DOC_VALUES_TYPES.contains(field.get("type")) && !Boolean.FALSE.equals(field.get("doc_values"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> child(Map<String, Object> parent, String key) {
+        Object child = parent.get(key);
+        return child instanceof Map ? (Map<String, Object>) child : null;
+    }
 }
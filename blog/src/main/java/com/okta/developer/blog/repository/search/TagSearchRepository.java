@@ -1,51 +1,96 @@
 package com.okta.developer.blog.repository.search;
 
-import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
-
-import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
 import java.util.List;
 import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
-import reactor.core.publisher.Flux;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
 
 /**
- * Spring Data Elasticsearch repository for the {@link Tag} entity.
+ * Spring Data Elasticsearch repository for the {@link TagSearchDocument} search document.
  */
-public interface TagSearchRepository extends ReactiveElasticsearchRepository<Tag, String>, TagSearchRepositoryInternal {}
+public interface TagSearchRepository extends ReactiveElasticsearchRepository<TagSearchDocument, String>, TagSearchRepositoryInternal {}
 
 interface TagSearchRepositoryInternal {
-    Flux<Tag> search(String query, Pageable pageable);
+    Mono<SearchResult<TagSearchDocument>> search(String query, Pageable pageable, List<String> fields);
+
+    Mono<SearchResult<TagSearchDocument>> searchAfter(String query, Sort sort, int size, @Nullable String cursor, List<String> fields);
+
+    Mono<List<String>> suggestNames(String prefix, int size);
 }
 
 class TagSearchRepositoryInternalImpl implements TagSearchRepositoryInternal {
 
-    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
+
+    private final SortToFieldSortBuilderConverter sortConverter;
+
+    private final SearchQueryGuard searchQueryGuard;
 
-    TagSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
-        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+    TagSearchRepositoryInternalImpl(
+        ElasticsearchSearchExecutor elasticsearchSearchExecutor,
+        ElasticsearchMappings elasticsearchMappings,
+        SearchQueryGuard searchQueryGuard
+    ) {
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.sortConverter = new SortToFieldSortBuilderConverter(elasticsearchMappings.getMapping(TagSearchDocument.class));
+        this.searchQueryGuard = searchQueryGuard;
     }
 
     @Override
-    public Flux<Tag> search(String query, Pageable pageable) {
-        List<FieldSortBuilder> builders = new SortToFieldSortBuilderConverter().convert(pageable.getSort());
-
-        NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-            .withQuery(queryStringQuery(query))
-            .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    public Mono<SearchResult<TagSearchDocument>> search(String query, Pageable pageable, List<String> fields) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+                sortConverter.convert(pageable.getSort()).forEach(queryBuilder::withSort);
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, TagSearchDocument.class));
+    }
 
-        builders
-            .stream()
-            .forEach(builder -> {
-                queryBuilder.withSort(builder);
-            });
+    @Override
+    public Mono<SearchResult<TagSearchDocument>> searchAfter(
+        String query,
+        Sort sort,
+        int size,
+        @Nullable String cursor,
+        List<String> fields
+    ) {
+        return Mono
+            .fromCallable(() -> {
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, size));
+                if (sort.isSorted()) {
+                    sortConverter.convert(sort).forEach(queryBuilder::withSort);
+                } else {
+                    queryBuilder.withSort(SortBuilders.scoreSort());
+                    // the id makes the sort values of every hit unique, so that no hit is skipped or repeated between pages
+                    queryBuilder.withSort(new FieldSortBuilder("id").order(SortOrder.ASC));
+                }
+                if (!fields.isEmpty()) {
+                    queryBuilder.withSourceFilter(new FetchSourceFilter(fields.toArray(new String[0]), null));
+                }
+                return queryBuilder.build();
+            })
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.searchAfter(nativeSearchQuery, TagSearchDocument.class, cursor));
+    }
 
-        NativeSearchQuery nativeSearchQuery = queryBuilder.build();
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, Tag.class).map(SearchHit::getContent);
+    @Override
+    public Mono<List<String>> suggestNames(String prefix, int size) {
+        return elasticsearchSearchExecutor.complete(TagSearchDocument.class, "name.suggest", prefix, size);
     }
 }
@@ -1,13 +1,11 @@
 package com.okta.developer.blog.repository.search;
 
-import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
-
 import com.okta.developer.blog.domain.User;
-import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data Elasticsearch repository for the User entity.
@@ -20,15 +18,31 @@ interface UserSearchRepositoryInternal {
 
 class UserSearchRepositoryInternalImpl implements UserSearchRepositoryInternal {
 
-    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+    private static final int MAX_HITS = 100;
+
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
+
+    private final SearchQueryGuard searchQueryGuard;
 
-    UserSearchRepositoryInternalImpl(ReactiveElasticsearchTemplate reactiveElasticsearchTemplate) {
-        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+    UserSearchRepositoryInternalImpl(ElasticsearchSearchExecutor elasticsearchSearchExecutor, SearchQueryGuard searchQueryGuard) {
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.searchQueryGuard = searchQueryGuard;
     }
 
+    /**
+     * Search the users best matching the query, in a single page of at most {@value #MAX_HITS} hits, or fewer
+     * if the guard caps page sizes lower.
+     */
     @Override
     public Flux<User> search(String query) {
-        NativeSearchQuery nativeSearchQuery = new NativeSearchQuery(queryStringQuery(query));
-        return reactiveElasticsearchTemplate.search(nativeSearchQuery, User.class).map(SearchHit::getContent);
+        return Mono
+            .fromCallable(() ->
+                new NativeSearchQueryBuilder()
+                    .withQuery(searchQueryGuard.queryStringQuery(query))
+                    .withPageable(PageRequest.of(0, searchQueryGuard.pageSize(MAX_HITS)))
+                    .build()
+            )
+            .flatMap(nativeSearchQuery -> elasticsearchSearchExecutor.search(nativeSearchQuery, User.class))
+            .flatMapIterable(SearchResult::getContent);
     }
 }
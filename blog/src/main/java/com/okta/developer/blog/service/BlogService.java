@@ -5,6 +5,7 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 import com.okta.developer.blog.domain.Blog;
 import com.okta.developer.blog.repository.BlogRepository;
 import com.okta.developer.blog.repository.search.BlogSearchRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -26,9 +27,24 @@ public class BlogService {
 
     private final BlogSearchRepository blogSearchRepository;
 
-    public BlogService(BlogRepository blogRepository, BlogSearchRepository blogSearchRepository) {
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final ElasticsearchPropagationService elasticsearchPropagationService;
+
+    private final ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer;
+
+    public BlogService(
+        BlogRepository blogRepository,
+        BlogSearchRepository blogSearchRepository,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchPropagationService elasticsearchPropagationService,
+        ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer
+    ) {
         this.blogRepository = blogRepository;
         this.blogSearchRepository = blogSearchRepository;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.elasticsearchPropagationService = elasticsearchPropagationService;
+        this.elasticsearchChangeStreamIndexer = elasticsearchChangeStreamIndexer;
     }
 
     /**
@@ -39,7 +55,17 @@ public class BlogService {
      */
     public Mono<Blog> save(Blog blog) {
         log.debug("Request to save Blog : {}", blog);
-        return blogRepository.save(blog).flatMap(blogSearchRepository::save);
+        if (blog.getId() == null) {
+            return blogRepository.save(blog).flatMap(savedBlog -> index(savedBlog).thenReturn(savedBlog));
+        }
+        return blogRepository
+            .findById(blog.getId())
+            .flatMap(existingBlog -> update(blog, existingBlog.getName(), existingBlog.getHandle()))
+            .switchIfEmpty(
+                Mono.defer(() ->
+                    blogRepository.save(blog).flatMap(savedBlog -> index(savedBlog).thenReturn(savedBlog))
+                )
+            );
     }
 
     /**
@@ -53,7 +79,9 @@ public class BlogService {
 
         return blogRepository
             .findById(blog.getId())
-            .map(existingBlog -> {
+            .flatMap(existingBlog -> {
+                String previousName = existingBlog.getName();
+                String previousHandle = existingBlog.getHandle();
                 if (blog.getName() != null) {
                     existingBlog.setName(blog.getName());
                 }
@@ -61,13 +89,21 @@ public class BlogService {
                     existingBlog.setHandle(blog.getHandle());
                 }
 
-                return existingBlog;
-            })
-            .flatMap(blogRepository::save)
-            .flatMap(savedBlog -> {
-                blogSearchRepository.save(savedBlog);
+                return update(existingBlog, previousName, previousHandle);
+            });
+    }
 
-                return Mono.just(savedBlog);
+    /**
+     * Save an existing blog and propagate its new name or handle, if any, to the posts in the background.
+     */
+    private Mono<Blog> update(Blog blog, String previousName, String previousHandle) {
+        return blogRepository
+            .save(blog)
+            .flatMap(savedBlog -> index(savedBlog).thenReturn(savedBlog))
+            .doOnNext(savedBlog -> {
+                if (!savedBlog.getName().equals(previousName) || !savedBlog.getHandle().equals(previousHandle)) {
+                    elasticsearchPropagationService.propagateBlogRename(savedBlog, previousName);
+                }
             });
     }
 
@@ -117,17 +153,47 @@ public class BlogService {
      */
     public Mono<Void> delete(String id) {
         log.debug("Request to delete Blog : {}", id);
-        return blogRepository.deleteById(id).then(blogSearchRepository.deleteById(id));
+        return blogRepository.deleteById(id).then(unindex(id));
     }
 
     /**
      * Search for the blog corresponding to the query.
      *
      * @param query the query of the search.
+     * @param fields the fields to return, or all the fields if empty.
      * @return the list of entities.
      */
-    public Flux<Blog> search(String query) {
+    public Flux<Blog> search(String query, List<String> fields) {
         log.debug("Request to search Blogs for query {}", query);
-        return blogSearchRepository.search(query);
+        return blogSearchRepository.search(query, fields);
+    }
+
+    /**
+     * Stream all the blogs corresponding to the query, read from the index as they are consumed.
+     *
+     * @param query the query of the search.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities.
+     */
+    public Flux<Blog> stream(String query, List<String> fields) {
+        log.debug("Request to stream the Blogs for query {}", query);
+        return blogSearchRepository.stream(query, fields);
+    }
+
+    /**
+     * Index a saved blog, unless the changes are indexed from the change stream.
+     */
+    private Mono<Void> index(Blog blog) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.index(blog);
+    }
+
+    private Mono<Void> unindex(String id) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.delete(id, Blog.class);
     }
 }
@@ -0,0 +1,520 @@
+package com.okta.developer.blog.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.search.BulkIndexingException;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.ElasticsearchIndexManager;
+import com.okta.developer.blog.repository.search.SearchResultCache;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Background indexer applying the changes of the {@code post}, {@code tag}, {@code blog} and {@code jhi_user}
+ * collections to Elasticsearch, read from a MongoDB change stream.
+ * <p>
+ * When it is enabled, the services only write to MongoDB and return once the write is committed. The changes
+ * are applied in batches, the last change of a document in a batch replacing the others, and the resume token of
+ * the last change applied is then saved in MongoDB: after a restart or a failure, the change stream resumes after
+ * it, so changes are applied at least once. If MongoDB no longer has the changes since that token, the indexer
+ * starts over from the current changes and the indices must be rebuilt. A change that Elasticsearch rejects, for
+ * instance a document not matching the mapping, is logged and counted in {@code search.indexer.errors} and then
+ * skipped, rather than retried forever: the document must be indexed again once fixed.
+ * <p>
+ * Only one instance of the application tails the change stream: the one holding a lease stored in MongoDB along
+ * with the resume token, and renewed a few times per lease duration. When that instance stops, or can no longer
+ * renew the lease, another one takes it over once it expires and resumes after the last saved token. A resume
+ * token is only saved by the holder of the lease, so an instance that lost it stops as soon as it tries to save
+ * one; until then, both instances may apply the same changes, which is harmless as they are applied by id. The
+ * clocks of the instances must be synchronized well within the lease duration.
+ * <p>
+ * Change streams require MongoDB to run as a replica set.
+ */
+public class ElasticsearchChangeStreamIndexer {
+
+    private static final String STATE_COLLECTION = "search_indexer";
+
+    private static final String STATE_ID = "change-stream";
+
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofMinutes(1);
+
+    private static final List<String> OPERATIONS = List.of("insert", "update", "replace", "delete");
+
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchChangeStreamIndexer.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final ElasticsearchIndexManager elasticsearchIndexManager;
+
+    private final SearchResultCache<PostSearchDocument> postSearchResultCache;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final Duration flushInterval;
+
+    private final Duration retryBackoff;
+
+    private final Duration leaseDuration;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final Map<String, SearchEntity<?>> entities = new LinkedHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile Disposable lease;
+
+    private volatile Disposable subscription;
+
+    /**
+     * @param enabled whether the changes are indexed from the change stream rather than by the services.
+     * @param batchSize the maximum number of changes applied at once.
+     * @param flushInterval the maximum time a change waits for its batch to fill up.
+     * @param retryBackoff the first delay before resuming the change stream after a failure.
+     * @param leaseDuration the time after which the lease of an instance that stopped renewing it expires.
+     */
+    public ElasticsearchChangeStreamIndexer(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        SearchResultCache<PostSearchDocument> postSearchResultCache,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper,
+        MeterRegistry meterRegistry,
+        boolean enabled,
+        int batchSize,
+        Duration flushInterval,
+        Duration retryBackoff,
+        Duration leaseDuration
+    ) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.elasticsearchIndexManager = elasticsearchIndexManager;
+        this.postSearchResultCache = postSearchResultCache;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.retryBackoff = retryBackoff;
+        this.leaseDuration = leaseDuration;
+        register(new SearchEntity<>(Post.class, PostSearchDocument.class, postSearchDocumentMapper::postToPostSearchDocument));
+        register(new SearchEntity<>(Tag.class, TagSearchDocument.class, tagSearchDocumentMapper::tagToTagSearchDocument));
+        register(new SearchEntity<>(Blog.class, Blog.class, Function.identity()));
+        register(new SearchEntity<>(User.class, User.class, Function.identity()));
+        meterRegistry.gauge("search.indexer.pending", pending);
+    }
+
+    private void register(SearchEntity<?> searchEntity) {
+        entities.put(reactiveMongoTemplate.getCollectionName(searchEntity.entityClass), searchEntity);
+    }
+
+    /**
+     * Tell whether the changes are indexed from the change stream, in which case the services must not index them.
+     *
+     * @return {@code true} if the indexer is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start competing for the lease of the change stream once the application is ready, tailing it while the
+     * lease is held.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || lease != null) {
+            return;
+        }
+        log.info(
+            "Indexing the changes of {} from the MongoDB change stream once instance {} holds the lease",
+            entities.keySet(),
+            instanceId
+        );
+        lease =
+            Flux
+                .interval(Duration.ZERO, leaseDuration.dividedBy(3))
+                .onBackpressureDrop()
+                .concatMap(tick ->
+                    renewLease()
+                        .onErrorResume(e -> {
+                            log.warn("Could not renew the lease of the change stream: {}", e.getMessage());
+                            return Mono.just(false);
+                        })
+                )
+                .subscribe(this::onLease);
+    }
+
+    /**
+     * Stop tailing the change stream and release its lease. The changes not applied yet are applied after the next
+     * start, by this instance or another one.
+     */
+    public void close() {
+        Disposable current = lease;
+        if (current != null) {
+            current.dispose();
+            lease = null;
+            stopTailing();
+            releaseLease().subscribe(null, e -> log.warn("Could not release the lease of the change stream: {}", e.getMessage()));
+        }
+    }
+
+    private void onLease(boolean held) {
+        boolean tailing = subscription != null && !subscription.isDisposed();
+        if (held && !tailing) {
+            log.info("Instance {} holds the lease of the change stream, tailing it", instanceId);
+            subscription = tail();
+        } else if (!held && tailing) {
+            log.warn("Instance {} lost the lease of the change stream, no longer tailing it", instanceId);
+            stopTailing();
+        }
+    }
+
+    private Disposable tail() {
+        return Flux
+            .defer(this::changes)
+            .doOnNext(event -> pending.incrementAndGet())
+            .bufferTimeout(batchSize, flushInterval)
+            .onBackpressureBuffer()
+            .concatMap(this::apply)
+            .doOnError(e -> {
+                log.warn("Indexing from the change stream failed, resuming: {}", e.getMessage());
+                errors("failed").increment();
+                pending.set(0);
+            })
+            .retryWhen(
+                Retry.backoff(Long.MAX_VALUE, retryBackoff).maxBackoff(MAX_RETRY_BACKOFF).filter(e -> !(e instanceof LeaseLostException))
+            )
+            .subscribe(null, e -> log.warn("Stopped tailing the change stream: {}", e.getMessage()));
+    }
+
+    private void stopTailing() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+            subscription = null;
+            pending.set(0);
+        }
+    }
+
+    private Flux<ChangeStreamEvent<Document>> changes() {
+        Document filter = new Document(
+            "$match",
+            new Document("ns.coll", new Document("$in", new ArrayList<>(entities.keySet())))
+                .append("operationType", new Document("$in", OPERATIONS))
+        );
+        return loadResumeToken()
+            .map(token -> ChangeStreamOptions.builder().startAfter(token))
+            .defaultIfEmpty(ChangeStreamOptions.builder())
+            .flatMapMany(options ->
+                reactiveMongoTemplate.changeStream(
+                    null,
+                    null,
+                    options.filter(filter).fullDocumentLookup(FullDocument.UPDATE_LOOKUP).build(),
+                    Document.class
+                )
+            )
+            .onErrorResume(
+                ElasticsearchChangeStreamIndexer::isHistoryLost,
+                e -> {
+                    log.error("The changes since the last indexed one are lost, the search indices must be rebuilt: {}", e.getMessage());
+                    return deleteResumeToken().thenMany(Flux.defer(this::changes));
+                }
+            );
+    }
+
+    /**
+     * Apply a batch of changes, then save the resume token of its last change.
+     */
+    private Mono<Void> apply(List<ChangeStreamEvent<Document>> batch) {
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, ChangeStreamEvent<Document>> latest = new LinkedHashMap<>();
+        for (ChangeStreamEvent<Document> event : batch) {
+            String key = event.getCollectionName() + "/" + idOf(event);
+            latest.remove(key);
+            latest.put(key, event);
+        }
+        Map<String, List<ChangeStreamEvent<Document>>> byCollection = latest
+            .values()
+            .stream()
+            .collect(Collectors.groupingBy(ChangeStreamEvent::getCollectionName, LinkedHashMap::new, Collectors.toList()));
+        ChangeStreamEvent<Document> last = batch.get(batch.size() - 1);
+        return Flux
+            .fromIterable(byCollection.entrySet())
+            .flatMap(changes -> apply(entities.get(changes.getKey()), changes.getValue()))
+            .then(saveResumeToken(last.getResumeToken()))
+            .doOnSuccess(ignored -> {
+                if (byCollection.containsKey(reactiveMongoTemplate.getCollectionName(Post.class))) {
+                    postSearchResultCache.invalidateAll();
+                }
+                Instant now = Instant.now();
+                batch.forEach(event -> record(event, now));
+                pending.addAndGet(-batch.size());
+            });
+    }
+
+    private <E> Mono<Void> apply(SearchEntity<E> searchEntity, List<ChangeStreamEvent<Document>> changes) {
+        if (!isLocated(searchEntity.documentClass)) {
+            return Flux.fromIterable(changes).flatMap(event -> apply(searchEntity, event, null)).then();
+        }
+        return previousDocuments(searchEntity.documentClass, changes)
+            .flatMapMany(previous -> Flux.fromIterable(changes).flatMap(event -> apply(searchEntity, event, previous)))
+            .then();
+    }
+
+    /**
+     * Apply a change to the document of an entity, skipping it if Elasticsearch rejects it.
+     *
+     * @param previous the indexed documents by id, {@code null} for an entity stored in a single index and routed by id.
+     */
+    private <E> Mono<Void> apply(SearchEntity<E> searchEntity, ChangeStreamEvent<Document> event, @Nullable Map<String, Object> previous) {
+        return write(searchEntity, event, previous)
+            .onErrorResume(
+                e -> e instanceof BulkIndexingException && ((BulkIndexingException) e).isRejected(),
+                e -> {
+                    log.error(
+                        "Skipping the {} of {}/{} rejected by Elasticsearch, it must be indexed again once fixed: {}",
+                        event.getOperationType().getValue(),
+                        event.getCollectionName(),
+                        idOf(event),
+                        e.getMessage()
+                    );
+                    errors("rejected").increment();
+                    return Mono.empty();
+                }
+            );
+    }
+
+    private <E> Mono<Void> write(SearchEntity<E> searchEntity, ChangeStreamEvent<Document> event, @Nullable Map<String, Object> previous) {
+        String id = idOf(event);
+        Document fullDocument = event.getRaw().getFullDocument();
+        if (event.getOperationType() == OperationType.DELETE || fullDocument == null) {
+            if (previous == null) {
+                return elasticsearchBulkIndexer.delete(id, searchEntity.documentClass);
+            }
+            return previous.containsKey(id) ? elasticsearchBulkIndexer.delete(previous.get(id)) : Mono.empty();
+        }
+        Object document = searchEntity.toDocument.apply(reactiveMongoTemplate.getConverter().read(searchEntity.entityClass, fullDocument));
+        return previous != null ? elasticsearchBulkIndexer.update(document, previous.get(id)) : elasticsearchBulkIndexer.index(document);
+    }
+
+    /**
+     * Tell whether the index and shard of the documents of an entity depend on their content, in which case the
+     * previous version of a changed document must be known to delete or move it.
+     */
+    private boolean isLocated(Class<?> documentClass) {
+        return elasticsearchIndexManager.partitioningOf(documentClass).isPresent() || elasticsearchIndexManager.isRouted(documentClass);
+    }
+
+    /**
+     * Read the indexed documents of changed entities, to find out where they are stored: the change stream only
+     * has the new version of a document.
+     *
+     * @return the indexed documents by id.
+     */
+    private Mono<Map<String, Object>> previousDocuments(Class<?> documentClass, List<ChangeStreamEvent<Document>> changes) {
+        List<String> ids = changes.stream().map(ElasticsearchChangeStreamIndexer::idOf).collect(Collectors.toList());
+        return Flux
+            .from(
+                reactiveElasticsearchTemplate.search(
+                    new NativeSearchQueryBuilder()
+                        .withQuery(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+                        .withPageable(PageRequest.of(0, ids.size()))
+                        .build(),
+                    documentClass,
+                    elasticsearchIndexManager.aliasFor(documentClass)
+                )
+            )
+            .collectMap(SearchHit::getId, hit -> (Object) hit.getContent());
+    }
+
+    private void record(ChangeStreamEvent<Document> event, Instant now) {
+        Counter
+            .builder("search.indexer.changes")
+            .description("Changes applied to Elasticsearch from the change stream")
+            .tag("collection", event.getCollectionName())
+            .tag("operation", event.getOperationType().getValue())
+            .register(meterRegistry)
+            .increment();
+        if (event.getTimestamp() != null) {
+            Timer
+                .builder("search.indexer.lag")
+                .description("Time from the commit of a change in MongoDB to its application to Elasticsearch")
+                .tag("collection", event.getCollectionName())
+                .register(meterRegistry)
+                .record(Duration.between(event.getTimestamp(), now));
+        }
+    }
+
+    private Counter errors(String reason) {
+        return Counter
+            .builder("search.indexer.errors")
+            .description("Failures of the change stream indexer")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Take or extend the lease of the change stream, unless another instance holds it.
+     *
+     * @return whether this instance holds the lease.
+     */
+    private Mono<Boolean> renewLease() {
+        Instant now = Instant.now();
+        Query available = query(
+            where("_id")
+                .is(STATE_ID)
+                .orOperator(where("owner").is(instanceId), where("owner").exists(false), where("leaseExpiresAt").lt(now))
+        );
+        Update update = new Update().set("owner", instanceId).set("leaseExpiresAt", now.plus(leaseDuration));
+        // held by another instance, the state does not match and inserting it again fails
+        return reactiveMongoTemplate
+            .upsert(available, update, STATE_COLLECTION)
+            .thenReturn(true)
+            .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false));
+    }
+
+    private Mono<Void> releaseLease() {
+        return reactiveMongoTemplate.updateFirst(heldState(), new Update().unset("owner").unset("leaseExpiresAt"), STATE_COLLECTION).then();
+    }
+
+    private Query heldState() {
+        return query(where("_id").is(STATE_ID).and("owner").is(instanceId));
+    }
+
+    private Mono<BsonValue> loadResumeToken() {
+        return reactiveMongoTemplate
+            .findById(STATE_ID, Document.class, STATE_COLLECTION)
+            .flatMap(state -> Mono.justOrEmpty(state.getString("resumeToken")))
+            .map(data -> new BsonDocument("_data", new BsonString(data)));
+    }
+
+    private Mono<Void> saveResumeToken(BsonValue resumeToken) {
+        Update update = new Update()
+            .set("resumeToken", resumeToken.asDocument().getString("_data").getValue())
+            .set("updatedAt", Instant.now());
+        return updateHeldState(update);
+    }
+
+    private Mono<Void> deleteResumeToken() {
+        return updateHeldState(new Update().unset("resumeToken"));
+    }
+
+    private Mono<Void> updateHeldState(Update update) {
+        return reactiveMongoTemplate
+            .updateFirst(heldState(), update, STATE_COLLECTION)
+            .flatMap(result ->
+                result.getMatchedCount() == 0
+                    ? Mono.error(new LeaseLostException("Instance " + instanceId + " no longer holds the lease of the change stream"))
+                    : Mono.<Void>empty()
+            );
+    }
+
+    private static String idOf(ChangeStreamEvent<Document> event) {
+        BsonValue id = event.getRaw().getDocumentKey().get("_id");
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private static boolean isHistoryLost(Throwable error) {
+        return (
+            error instanceof MongoCommandException &&
+            (
+                ((MongoCommandException) error).getErrorCode() == CHANGE_STREAM_HISTORY_LOST ||
+                ((MongoCommandException) error).getErrorCode() == CHANGE_STREAM_FATAL_ERROR
+            )
+        );
+    }
+
+    /**
+     * Thrown when the lease of the change stream was taken over by another instance.
+     */
+    private static class LeaseLostException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        LeaseLostException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A MongoDB entity, with the search document it is indexed as.
+     */
+    private static class SearchEntity<E> {
+
+        private final Class<E> entityClass;
+
+        private final Class<?> documentClass;
+
+        private final Function<E, ?> toDocument;
+
+        SearchEntity(Class<E> entityClass, Class<?> documentClass, Function<E, ?> toDocument) {
+            this.entityClass = entityClass;
+            this.documentClass = documentClass;
+            this.toDocument = toDocument;
+        }
+    }
+}
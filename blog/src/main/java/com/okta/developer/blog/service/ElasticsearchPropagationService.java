@@ -0,0 +1,306 @@
+package com.okta.developer.blog.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.repository.search.ElasticsearchByQueryUpdater;
+import com.okta.developer.blog.repository.search.PostSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResultCache;
+import com.okta.developer.blog.service.dto.PropagationStatusDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service propagating the renames of blogs and tags to the posts embedding a copy of them.
+ * <p>
+ * A rename only saves the blog or tag itself: the posts are then updated in the background, first in MongoDB
+ * with a single {@code updateMany} on the indexed embedded id, then in Elasticsearch with a sliced and throttled
+ * {@code _update_by_query}. The renames of a same blog or tag are propagated one after the other, in order, so
+ * that the last one wins.
+ * <p>
+ * The post documents only hold the names of their tags, so a tag rename rewrites the old name in every post
+ * document having it.
+ */
+@Service
+public class ElasticsearchPropagationService {
+
+    private static final int MAX_JOBS = 100;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchPropagationService.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final PostSearchRepository postSearchRepository;
+
+    private final SearchResultCache<PostSearchDocument> postSearchResultCache;
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Map<String, Mono<Void>> tails = new HashMap<>();
+
+    private final Map<String, PropagationJob> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PropagationJob> eldest) {
+            return size() > MAX_JOBS && eldest.getValue().isFinished();
+        }
+    };
+
+    public ElasticsearchPropagationService(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        PostSearchRepository postSearchRepository,
+        SearchResultCache<PostSearchDocument> postSearchResultCache,
+        MeterRegistry meterRegistry
+    ) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.postSearchRepository = postSearchRepository;
+        this.postSearchResultCache = postSearchResultCache;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("search.propagation.pending", pending);
+    }
+
+    /**
+     * Start propagating the new name and handle of a blog to its posts.
+     *
+     * @param blog the renamed blog.
+     * @param previousName the name of the blog before the rename.
+     * @return the status of the queued job.
+     */
+    public PropagationStatusDTO propagateBlogRename(Blog blog, String previousName) {
+        PropagationJob job = new PropagationJob("blog", blog.getId(), previousName, blog.getName());
+        Mono<Long> database = reactiveMongoTemplate
+            .updateMulti(
+                query(where("blog.id").is(blog.getId())),
+                new Update().set("blog.name", blog.getName()).set("blog.handle", blog.getHandle()),
+                Post.class
+            )
+            .map(result -> result.getModifiedCount());
+        return submit(job, database, Flux.defer(() -> postSearchRepository.updateBlog(blog.getId(), blog.getName(), blog.getHandle())));
+    }
+
+    /**
+     * Start propagating the new name of a tag to its posts.
+     *
+     * @param tag the renamed tag.
+     * @param previousName the name of the tag before the rename.
+     * @return the status of the queued job.
+     */
+    public PropagationStatusDTO propagateTagRename(Tag tag, String previousName) {
+        PropagationJob job = new PropagationJob("tag", tag.getId(), previousName, tag.getName());
+        Mono<Long> database = reactiveMongoTemplate
+            .updateMulti(query(where("tags.id").is(tag.getId())), new Update().set("tags.$.name", tag.getName()), Post.class)
+            .map(result -> result.getModifiedCount());
+        return submit(job, database, Flux.defer(() -> postSearchRepository.renameTag(previousName, tag.getName())));
+    }
+
+    /**
+     * Returns the status of the latest propagation jobs.
+     *
+     * @return the list of job statuses, oldest first.
+     */
+    public List<PropagationStatusDTO> getStatuses() {
+        synchronized (jobs) {
+            return jobs.values().stream().map(PropagationJob::toStatus).collect(Collectors.toList());
+        }
+    }
+
+    private PropagationStatusDTO submit(PropagationJob job, Mono<Long> database, Flux<ElasticsearchByQueryUpdater.Progress> search) {
+        Mono<Void> work = Mono
+            .defer(() -> {
+                job.start();
+                return database;
+            })
+            .doOnNext(job::databaseUpdated)
+            .thenMany(search)
+            .doOnNext(job::progress)
+            .then();
+        String key = job.entity + ":" + job.entityId;
+        Mono<Void> queued;
+        synchronized (tails) {
+            Mono<Void> previous = tails.getOrDefault(key, Mono.empty());
+            queued = previous.onErrorResume(e -> Mono.empty()).then(work).cache();
+            tails.put(key, queued);
+        }
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+        }
+        pending.incrementAndGet();
+        log.info("Queued propagation of the rename of {} {} from '{}' to '{}'", job.entity, job.entityId, job.from, job.to);
+        queued
+            .doFinally(signal -> {
+                pending.decrementAndGet();
+                postSearchResultCache.invalidateAll();
+                synchronized (tails) {
+                    tails.remove(key, queued);
+                }
+            })
+            .subscribe(
+                null,
+                e -> {
+                    log.error("Propagation of the rename of {} {} failed", job.entity, job.entityId, e);
+                    job.fail(e);
+                    record(job, "failure");
+                },
+                () -> {
+                    log.info(
+                        "Propagated the rename of {} {}: {} posts in MongoDB, {} in Elasticsearch",
+                        job.entity,
+                        job.entityId,
+                        job.databaseUpdated,
+                        job.updated
+                    );
+                    job.complete();
+                    record(job, "success");
+                }
+            );
+        return job.toStatus();
+    }
+
+    private void record(PropagationJob job, String outcome) {
+        Duration duration = Duration.between(job.startedAt != null ? job.startedAt : job.queuedAt, job.finishedAt);
+        Timer
+            .builder("search.propagation")
+            .description("Time taken to propagate a rename to the posts")
+            .tag("entity", job.entity)
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(duration);
+        documents(job.entity, "mongodb").increment(job.databaseUpdated);
+        documents(job.entity, "elasticsearch").increment(job.updated);
+        Counter
+            .builder("search.propagation.conflicts")
+            .description("Post documents skipped because they were written during a propagation")
+            .tag("entity", job.entity)
+            .register(meterRegistry)
+            .increment(job.versionConflicts);
+    }
+
+    private Counter documents(String entity, String store) {
+        return Counter
+            .builder("search.propagation.documents")
+            .description("Posts updated by the propagation of a rename")
+            .tag("entity", entity)
+            .tag("store", store)
+            .register(meterRegistry);
+    }
+
+    private static class PropagationJob {
+
+        private final String id = UUID.randomUUID().toString();
+
+        private final String entity;
+
+        private final String entityId;
+
+        private final String from;
+
+        private final String to;
+
+        private final Instant queuedAt = Instant.now();
+
+        private volatile PropagationStatusDTO.State state = PropagationStatusDTO.State.QUEUED;
+
+        private volatile long databaseUpdated;
+
+        private volatile String taskId;
+
+        private volatile long total;
+
+        private volatile long updated;
+
+        private volatile long noops;
+
+        private volatile long versionConflicts;
+
+        private volatile long batches;
+
+        private volatile Instant startedAt;
+
+        private volatile Instant finishedAt;
+
+        private volatile String error;
+
+        PropagationJob(String entity, String entityId, String from, String to) {
+            this.entity = entity;
+            this.entityId = entityId;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        void start() {
+            startedAt = Instant.now();
+            state = PropagationStatusDTO.State.RUNNING;
+        }
+
+        void databaseUpdated(long count) {
+            databaseUpdated = count;
+        }
+
+        void progress(ElasticsearchByQueryUpdater.Progress progress) {
+            taskId = progress.getTaskId();
+            total = progress.getTotal();
+            updated = progress.getUpdated();
+            noops = progress.getNoops();
+            versionConflicts = progress.getVersionConflicts();
+            batches = progress.getBatches();
+        }
+
+        void complete() {
+            finishedAt = Instant.now();
+            state = PropagationStatusDTO.State.COMPLETED;
+        }
+
+        void fail(Throwable e) {
+            finishedAt = Instant.now();
+            error = e.getMessage();
+            state = PropagationStatusDTO.State.FAILED;
+        }
+
+        PropagationStatusDTO toStatus() {
+            PropagationStatusDTO status = new PropagationStatusDTO();
+            status.setId(id);
+            status.setEntity(entity);
+            status.setEntityId(entityId);
+            status.setFrom(from);
+            status.setTo(to);
+            status.setState(state);
+            status.setDatabaseUpdated(databaseUpdated);
+            status.setTaskId(taskId);
+            status.setTotal(total);
+            status.setUpdated(updated);
+            status.setNoops(noops);
+            status.setVersionConflicts(versionConflicts);
+            status.setBatches(batches);
+            status.setStartedAt(startedAt);
+            status.setFinishedAt(finishedAt);
+            status.setError(error);
+            return status;
+        }
+    }
+}
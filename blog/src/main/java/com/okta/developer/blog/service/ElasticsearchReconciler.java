@@ -0,0 +1,478 @@
+package com.okta.developer.blog.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.ElasticsearchIndexManager;
+import com.okta.developer.blog.repository.search.ElasticsearchSearchExecutor;
+import com.okta.developer.blog.service.dto.ReconcileStatusDTO;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Checker finding and repairing the documents missing, stale or left over in the search indices.
+ * <p>
+ * Each collection is read in chunks of consecutive ids, so that at most one chunk is held in memory. The hash of
+ * the document of each entity of a chunk is compared with the hash the {@link ElasticsearchBulkIndexer} wrote
+ * along with the indexed document: only the ids and hashes are read from Elasticsearch. Only the documents whose
+ * hashes differ are drilled into: they are read again from both sides, as they may have changed in between, and
+ * rewritten or deleted with bulk writes. The documents of each index are then streamed to delete those no longer
+ * in MongoDB. The chunks are read one after the other, with a pause in between, to keep the load on both
+ * datastores low.
+ * <p>
+ * A content hash is compared rather than a version: only the users have a modification date, and the document of
+ * a post also changes with its blog. A document indexed without a hash, or updated by query after a rename, does
+ * not match its entity: it is rewritten, with its hash, by the next check.
+ */
+public class ElasticsearchReconciler {
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchReconciler.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ReactiveElasticsearchTemplate reactiveElasticsearchTemplate;
+
+    private final ElasticsearchSearchExecutor elasticsearchSearchExecutor;
+
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final ElasticsearchIndexManager elasticsearchIndexManager;
+
+    private final MeterRegistry meterRegistry;
+
+    private final int chunkSize;
+
+    private final Duration chunkDelay;
+
+    private final Map<String, SearchEntity<?>> entities = new LinkedHashMap<>();
+
+    private final Map<String, ReconcileJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param chunkSize the number of documents compared at once.
+     * @param chunkDelay the pause between two chunks.
+     */
+    public ElasticsearchReconciler(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate,
+        ElasticsearchSearchExecutor elasticsearchSearchExecutor,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper,
+        MeterRegistry meterRegistry,
+        int chunkSize,
+        Duration chunkDelay
+    ) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reactiveElasticsearchTemplate = reactiveElasticsearchTemplate;
+        this.elasticsearchSearchExecutor = elasticsearchSearchExecutor;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.elasticsearchIndexManager = elasticsearchIndexManager;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = chunkSize;
+        this.chunkDelay = chunkDelay;
+        register(new SearchEntity<>(Post.class, PostSearchDocument.class, postSearchDocumentMapper::postToPostSearchDocument));
+        register(new SearchEntity<>(Tag.class, TagSearchDocument.class, tagSearchDocumentMapper::tagToTagSearchDocument));
+        register(new SearchEntity<>(Blog.class, Blog.class, Function.identity()));
+        register(new SearchEntity<>(User.class, User.class, Function.identity()));
+    }
+
+    private void register(SearchEntity<?> searchEntity) {
+        entities.put(elasticsearchIndexManager.aliasFor(searchEntity.documentClass).getIndexName(), searchEntity);
+    }
+
+    /**
+     * Returns the aliases that can be checked.
+     *
+     * @return the aliases of the search entities.
+     */
+    public Set<String> getAliases() {
+        return entities.keySet();
+    }
+
+    /**
+     * Check every index, one after the other, in the background.
+     * <p>
+     * This is scheduled to run every {@code application.elasticsearch.reconcile.interval}. The indices already
+     * being checked are skipped.
+     */
+    public void reconcileAll() {
+        List<ReconcileJob> started = new ArrayList<>();
+        for (String alias : entities.keySet()) {
+            ReconcileJob job = new ReconcileJob(alias);
+            if (jobs.compute(alias, (key, current) -> current != null && current.isRunning() ? current : job) == job) {
+                started.add(job);
+            }
+        }
+        Flux.fromIterable(started).concatMap(job -> run(job).onErrorResume(e -> Mono.empty())).subscribe();
+    }
+
+    /**
+     * Check the index behind an alias in the background.
+     *
+     * @param alias the alias of the search entity.
+     * @return the status of the started job.
+     * @throws IllegalArgumentException if the alias is unknown.
+     * @throws IllegalStateException if a check of that alias is already running.
+     */
+    public ReconcileStatusDTO reconcile(String alias) {
+        if (!entities.containsKey(alias)) {
+            throw new IllegalArgumentException("Unknown search index: " + alias);
+        }
+        ReconcileJob job = new ReconcileJob(alias);
+        ReconcileJob previous = jobs.compute(alias, (key, current) -> current != null && current.isRunning() ? current : job);
+        if (previous != job) {
+            throw new IllegalStateException("A check of " + alias + " is already running");
+        }
+        run(job).onErrorResume(e -> Mono.empty()).subscribe();
+        return job.toStatus();
+    }
+
+    /**
+     * Returns the status of the last check of each alias.
+     *
+     * @return the list of job statuses.
+     */
+    public List<ReconcileStatusDTO> getStatuses() {
+        return jobs.values().stream().map(ReconcileJob::toStatus).collect(Collectors.toList());
+    }
+
+    private Mono<Void> run(ReconcileJob job) {
+        return run(entities.get(job.alias), job);
+    }
+
+    private <E> Mono<Void> run(SearchEntity<E> searchEntity, ReconcileJob job) {
+        log.info("Checking the consistency of {} with MongoDB", job.alias);
+        return chunks(searchEntity)
+            .delayElements(chunkDelay)
+            .concatMap(chunk -> reconcile(searchEntity, chunk, job))
+            .thenMany(orphans(searchEntity).delayElements(chunkDelay).concatMap(hits -> deleteOrphans(searchEntity, hits, job)))
+            .then()
+            .doOnSuccess(ignored -> {
+                log.info(
+                    "Checked {}: {} of {} chunks differed, {} documents indexed, {} deleted",
+                    job.alias,
+                    job.mismatchedChunks.get(),
+                    job.chunks.get(),
+                    job.indexed.get(),
+                    job.deleted.get()
+                );
+                job.complete();
+            })
+            .doOnError(e -> {
+                log.error("Check of {} failed", job.alias, e);
+                job.fail(e);
+            });
+    }
+
+    /**
+     * Read a collection in chunks of consecutive ids.
+     */
+    private <E> Flux<List<E>> chunks(SearchEntity<E> searchEntity) {
+        return chunkAfter(searchEntity, null)
+            .expand(chunk -> chunk.size() < chunkSize ? Mono.empty() : chunkAfter(searchEntity, idOf(chunk.get(chunk.size() - 1))));
+    }
+
+    private <E> Mono<List<E>> chunkAfter(SearchEntity<E> searchEntity, @Nullable Object id) {
+        Query query = new Query().with(Sort.by("_id")).limit(chunkSize);
+        if (id != null) {
+            query.addCriteria(where("_id").gt(id));
+        }
+        return reactiveMongoTemplate.find(query, searchEntity.entityClass).collectList().filter(chunk -> !chunk.isEmpty());
+    }
+
+    /**
+     * Compare the hashes of the documents of a chunk on both sides, and repair those that differ.
+     */
+    private <E> Mono<Void> reconcile(SearchEntity<E> searchEntity, List<E> chunk, ReconcileJob job) {
+        Map<String, Object> documents = toDocuments(searchEntity, chunk);
+        return indexed(searchEntity.documentClass, documents.keySet(), false)
+            .flatMap(indexed -> {
+                job.chunks.incrementAndGet();
+                job.documents.addAndGet(documents.size());
+                List<String> mismatched = documents
+                    .entrySet()
+                    .stream()
+                    .filter(entry -> !isIndexed(entry.getValue(), indexed.getOrDefault(entry.getKey(), List.of())))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+                String outcome = mismatched.isEmpty() ? "match" : "mismatch";
+                count("search.reconcile.chunks", "Chunks compared with Elasticsearch", job.alias, outcome);
+                if (mismatched.isEmpty()) {
+                    return Mono.empty();
+                }
+                job.mismatchedChunks.incrementAndGet();
+                return repair(searchEntity, mismatched, job);
+            });
+    }
+
+    /**
+     * Read the documents of a chunk again from both sides, as they may have changed in between, and rewrite or
+     * delete those that differ.
+     */
+    private <E> Mono<Void> repair(SearchEntity<E> searchEntity, Collection<String> ids, ReconcileJob job) {
+        Mono<Map<String, Object>> current = reactiveMongoTemplate
+            .find(new Query(where("_id").in(ids)), searchEntity.entityClass)
+            .collectList()
+            .map(chunk -> toDocuments(searchEntity, chunk));
+        return Mono
+            .zip(current, indexed(searchEntity.documentClass, ids, true))
+            .flatMapMany(tuple ->
+                Flux
+                    .fromIterable(ids)
+                    .flatMap(id -> repair(tuple.getT1().get(id), tuple.getT2().getOrDefault(id, List.of()), job))
+            )
+            .then();
+    }
+
+    private Mono<Void> repair(@Nullable Object document, List<IndexedDocument> copies, ReconcileJob job) {
+        if (document == null) {
+            return Flux.fromIterable(copies).concatMap(copy -> delete(copy.document, job)).then();
+        }
+        if (isIndexed(document, copies)) {
+            return Mono.empty();
+        }
+        Mono<Void> write = copies.isEmpty()
+            ? elasticsearchBulkIndexer.index(document)
+            : Flux.fromIterable(copies).concatMap(copy -> elasticsearchBulkIndexer.update(document, copy.document)).then();
+        return write.doOnSuccess(ignored -> {
+            job.indexed.incrementAndGet();
+            count("search.reconcile.repairs", "Documents repaired in Elasticsearch", job.alias, "index");
+        });
+    }
+
+    private Mono<Void> delete(Object document, ReconcileJob job) {
+        return elasticsearchBulkIndexer
+            .delete(document)
+            .doOnSuccess(ignored -> {
+                job.deleted.incrementAndGet();
+                count("search.reconcile.repairs", "Documents repaired in Elasticsearch", job.alias, "delete");
+            });
+    }
+
+    /**
+     * Stream the documents of an index, in batches of the chunk size.
+     */
+    private Flux<List<SearchHit<Object>>> orphans(SearchEntity<?> searchEntity) {
+        @SuppressWarnings("unchecked")
+        Class<Object> documentClass = (Class<Object>) searchEntity.documentClass;
+        return elasticsearchSearchExecutor
+            .stream(
+                new NativeSearchQueryBuilder()
+                    .withQuery(QueryBuilders.matchAllQuery())
+                    .withPageable(PageRequest.of(0, chunkSize))
+                    .withSort(new FieldSortBuilder("_shard_doc").order(SortOrder.ASC))
+                    .build(),
+                documentClass
+            )
+            .buffer(chunkSize);
+    }
+
+    private Mono<Void> deleteOrphans(SearchEntity<?> searchEntity, List<SearchHit<Object>> hits, ReconcileJob job) {
+        List<String> ids = hits.stream().map(SearchHit::getId).collect(Collectors.toList());
+        Query query = new Query(where("_id").in(ids));
+        query.fields().include("_id");
+        return reactiveMongoTemplate
+            .find(query, searchEntity.entityClass)
+            .map(this::idOf)
+            .map(String::valueOf)
+            .collect(Collectors.toSet())
+            .flatMapMany(existing ->
+                Flux.fromIterable(hits).filter(hit -> !existing.contains(hit.getId())).concatMap(hit -> delete(hit.getContent(), job))
+            )
+            .then();
+    }
+
+    /**
+     * Read the hashes of the documents with the given ids from Elasticsearch, with their copies in other
+     * partitions, if any.
+     *
+     * @param withContent whether to read the whole documents as well, or only their hashes.
+     */
+    private Mono<Map<String, List<IndexedDocument>>> indexed(Class<?> documentClass, Collection<String> ids, boolean withContent) {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+            .size(ids.size() * 2);
+        if (!withContent) {
+            source.fetchSource(new String[] { ElasticsearchBulkIndexer.HASH_FIELD }, null);
+        }
+        SearchRequest request = new SearchRequest(elasticsearchIndexManager.aliasFor(documentClass).getIndexNames()).source(source);
+        ElasticsearchConverter converter = reactiveElasticsearchTemplate.getElasticsearchConverter();
+        return Flux
+            .from(reactiveElasticsearchTemplate.execute(client -> client.search(request)))
+            .collectMultimap(
+                org.elasticsearch.search.SearchHit::getId,
+                hit -> {
+                    Document document = DocumentAdapters.from(hit);
+                    return new IndexedDocument(
+                        document.getString(ElasticsearchBulkIndexer.HASH_FIELD),
+                        withContent ? converter.read(documentClass, document) : null
+                    );
+                }
+            )
+            .map(indexed ->
+                indexed.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> new ArrayList<>(entry.getValue())))
+            );
+    }
+
+    /**
+     * Tell whether a document is indexed once, as it is.
+     */
+    private boolean isIndexed(Object document, List<IndexedDocument> copies) {
+        return copies.size() == 1 && elasticsearchBulkIndexer.hashOf(document).equals(copies.get(0).hash);
+    }
+
+    private <E> Map<String, Object> toDocuments(SearchEntity<E> searchEntity, List<E> chunk) {
+        Map<String, Object> documents = new LinkedHashMap<>();
+        for (E entity : chunk) {
+            documents.put(String.valueOf(idOf(entity)), searchEntity.toDocument.apply(entity));
+        }
+        return documents;
+    }
+
+    private Object idOf(Object entity) {
+        return reactiveMongoTemplate
+            .getConverter()
+            .getMappingContext()
+            .getRequiredPersistentEntity(entity.getClass())
+            .getIdentifierAccessor(entity)
+            .getRequiredIdentifier();
+    }
+
+    private void count(String name, String description, String alias, String outcome) {
+        Counter.builder(name).description(description).tag("alias", alias).tag("outcome", outcome).register(meterRegistry).increment();
+    }
+
+    /**
+     * A MongoDB entity, with the search document it is indexed as.
+     */
+    private static class SearchEntity<E> {
+
+        private final Class<E> entityClass;
+
+        private final Class<?> documentClass;
+
+        private final Function<E, ?> toDocument;
+
+        SearchEntity(Class<E> entityClass, Class<?> documentClass, Function<E, ?> toDocument) {
+            this.entityClass = entityClass;
+            this.documentClass = documentClass;
+            this.toDocument = toDocument;
+        }
+    }
+
+    /**
+     * A document read from Elasticsearch, with the hash it was written with.
+     */
+    private static class IndexedDocument {
+
+        @Nullable
+        private final String hash;
+
+        @Nullable
+        private final Object document;
+
+        IndexedDocument(@Nullable String hash, @Nullable Object document) {
+            this.hash = hash;
+            this.document = document;
+        }
+    }
+
+    private static class ReconcileJob {
+
+        private final String alias;
+
+        private final Instant startedAt = Instant.now();
+
+        private final AtomicLong chunks = new AtomicLong();
+
+        private final AtomicLong mismatchedChunks = new AtomicLong();
+
+        private final AtomicLong documents = new AtomicLong();
+
+        private final AtomicLong indexed = new AtomicLong();
+
+        private final AtomicLong deleted = new AtomicLong();
+
+        private volatile ReconcileStatusDTO.State state = ReconcileStatusDTO.State.RUNNING;
+
+        private volatile Instant finishedAt;
+
+        private volatile String error;
+
+        ReconcileJob(String alias) {
+            this.alias = alias;
+        }
+
+        boolean isRunning() {
+            return state == ReconcileStatusDTO.State.RUNNING;
+        }
+
+        void complete() {
+            finishedAt = Instant.now();
+            state = ReconcileStatusDTO.State.COMPLETED;
+        }
+
+        void fail(Throwable e) {
+            finishedAt = Instant.now();
+            error = e.getMessage();
+            state = ReconcileStatusDTO.State.FAILED;
+        }
+
+        ReconcileStatusDTO toStatus() {
+            ReconcileStatusDTO status = new ReconcileStatusDTO();
+            status.setAlias(alias);
+            status.setState(state);
+            status.setChunks(chunks.get());
+            status.setMismatchedChunks(mismatchedChunks.get());
+            status.setDocuments(documents.get());
+            status.setIndexed(indexed.get());
+            status.setDeleted(deleted.get());
+            status.setStartedAt(startedAt);
+            status.setFinishedAt(finishedAt);
+            status.setError(error);
+            return status;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.okta.developer.blog.service;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.ElasticsearchIndexManager;
+import com.okta.developer.blog.repository.search.IndexPartitioning;
+import com.okta.developer.blog.service.dto.ReindexStatusDTO;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service rebuilding the search indices from MongoDB without search downtime.
+ * <p>
+ * A reindex copies a collection into a new versioned index, reading it in parallel {@code _id} range slices,
+ * while live writes are mirrored to the new index. Once the copy is complete, the entity's alias is
+ * atomically swapped to the new index and the previous one is deleted.
+ * <p>
+ * A document deleted while its slice is being copied must not be brought back by the copy: the copy skips the
+ * documents whose delete was mirrored, and once it is complete the mirrored deletes are applied again, in case a
+ * copy read before the delete reached the new index after it. The remaining window is a mirrored write that fails:
+ * it is only logged, and the new index misses it until the next reconciliation. The documents the copy skips, or
+ * finds already written by a mirrored write, are counted as skipped rather than indexed.
+ * <p>
+ * A time partitioned entity is copied into a new generation of partition indices instead, each created when
+ * the first document of its interval is copied or mirrored, and all swapped in at once. The generation is sealed
+ * before it is promoted: a live write to an interval without a partition in between fails the reindex, since its
+ * partition could not be promoted with the others.
+ */
+@Service
+public class ElasticsearchReindexService {
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchReindexService.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final ElasticsearchIndexManager elasticsearchIndexManager;
+
+    private final Map<String, SearchEntity<?>> entities = new LinkedHashMap<>();
+
+    private final Map<String, ReindexJob> jobs = new ConcurrentHashMap<>();
+
+    public ElasticsearchReindexService(
+        ReactiveMongoTemplate reactiveMongoTemplate,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        ElasticsearchIndexManager elasticsearchIndexManager,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper
+    ) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.elasticsearchIndexManager = elasticsearchIndexManager;
+        register(new SearchEntity<>(Post.class, PostSearchDocument.class, postSearchDocumentMapper::postToPostSearchDocument));
+        register(new SearchEntity<>(Tag.class, TagSearchDocument.class, tagSearchDocumentMapper::tagToTagSearchDocument));
+        register(new SearchEntity<>(Blog.class, Blog.class, Function.identity()));
+        register(new SearchEntity<>(User.class, User.class, Function.identity()));
+    }
+
+    private void register(SearchEntity<?> searchEntity) {
+        entities.put(elasticsearchIndexManager.aliasFor(searchEntity.documentClass).getIndexName(), searchEntity);
+    }
+
+    /**
+     * Returns the aliases that can be reindexed.
+     *
+     * @return the aliases of the search entities.
+     */
+    public Set<String> getAliases() {
+        return entities.keySet();
+    }
+
+    /**
+     * Start rebuilding the index behind an alias in the background.
+     *
+     * @param alias the alias of the search entity.
+     * @param slices the number of {@code _id} ranges read in parallel.
+     * @param concurrency the number of documents in flight per slice.
+     * @return the status of the started job.
+     * @throws IllegalArgumentException if the alias is unknown.
+     * @throws IllegalStateException if a reindex of that alias is already running.
+     */
+    public ReindexStatusDTO reindex(String alias, int slices, int concurrency) {
+        SearchEntity<?> searchEntity = entities.get(alias);
+        if (searchEntity == null) {
+            throw new IllegalArgumentException("Unknown search index: " + alias);
+        }
+        ReindexJob job = new ReindexJob(alias);
+        ReindexJob previous = jobs.compute(alias, (key, current) -> current != null && current.isRunning() ? current : job);
+        if (previous != job) {
+            throw new IllegalStateException("A reindex of " + alias + " is already running");
+        }
+        log.info("Starting reindex of {} with {} slices", alias, slices);
+        run(searchEntity, job, slices, concurrency)
+            .subscribe(
+                null,
+                e -> {
+                    log.error("Reindex of {} failed", alias, e);
+                    job.fail(e);
+                },
+                () -> {
+                    log.info("Reindex of {} completed: {} documents, {} skipped", alias, job.indexed.get(), job.skipped.get());
+                    job.complete();
+                }
+            );
+        return job.toStatus();
+    }
+
+    /**
+     * Returns the status of the last reindex job of each alias.
+     *
+     * @return the list of job statuses.
+     */
+    public List<ReindexStatusDTO> getStatuses() {
+        return jobs.values().stream().map(ReindexJob::toStatus).collect(Collectors.toList());
+    }
+
+    private Mono<Void> run(SearchEntity<?> searchEntity, ReindexJob job, int slices, int concurrency) {
+        Class<?> documentClass = searchEntity.documentClass;
+        IndexPartitioning<?> partitioning = elasticsearchIndexManager.partitioningOf(documentClass).orElse(null);
+        if (partitioning != null) {
+            return runPartitioned(searchEntity, partitioning, job, slices, concurrency);
+        }
+        return elasticsearchIndexManager
+            .createVersionedIndex(documentClass)
+            .flatMap(index -> {
+                job.index = index.getIndexName();
+                elasticsearchBulkIndexer.startMirroring(documentClass, index);
+                return reactiveMongoTemplate
+                    .count(new Query(), searchEntity.entityClass)
+                    .doOnNext(job.total::set)
+                    .thenMany(slices(searchEntity.entityClass, slices))
+                    .flatMap(slice -> copy(searchEntity, slice, index, concurrency, job), slices)
+                    .then(Mono.defer(() -> checkNoFailure(job)))
+                    .then(elasticsearchBulkIndexer.replayMirroredDeletes(documentClass))
+                    .then(elasticsearchIndexManager.completeBulkLoad(index))
+                    .then(elasticsearchIndexManager.promote(documentClass, index))
+                    .onErrorResume(e -> elasticsearchIndexManager.delete(index).onErrorResume(ignored -> Mono.empty()).then(Mono.error(e)))
+                    .doFinally(signal -> elasticsearchBulkIndexer.stopMirroring(documentClass));
+            });
+    }
+
+    private Mono<Void> runPartitioned(
+        SearchEntity<?> searchEntity,
+        IndexPartitioning<?> partitioning,
+        ReindexJob job,
+        int slices,
+        int concurrency
+    ) {
+        Class<?> documentClass = searchEntity.documentClass;
+        long generation = System.currentTimeMillis();
+        PartitionGeneration partitions = new PartitionGeneration(
+            partition -> elasticsearchIndexManager.createPartitionIndex(partitioning, partition, generation)
+        );
+        Function<Object, Mono<IndexCoordinates>> indexFor = document ->
+            Mono.fromCallable(() -> partitioning.partitionOf(document)).flatMap(partitions::indexOf);
+        job.index = partitioning.getAlias() + "-*_v" + generation;
+        elasticsearchBulkIndexer.startMirroring(documentClass, indexFor);
+        return reactiveMongoTemplate
+            .count(new Query(), searchEntity.entityClass)
+            .doOnNext(job.total::set)
+            .thenMany(slices(searchEntity.entityClass, slices))
+            .flatMap(slice -> copy(searchEntity, slice, indexFor, concurrency, job), slices)
+            .then(Mono.defer(() -> checkNoFailure(job)))
+            .then(elasticsearchBulkIndexer.replayMirroredDeletes(documentClass))
+            .then(Mono.defer(partitions::seal))
+            .flatMap(created ->
+                Flux
+                    .fromIterable(created)
+                    .concatMap(elasticsearchIndexManager::completeBulkLoad)
+                    .then(Mono.defer(() -> partitions.checkNoMiss(partitioning.getAlias())))
+                    .then(elasticsearchIndexManager.promotePartitions(partitioning, created))
+            )
+            .doOnSuccess(ignored -> {
+                if (partitions.isMissed()) {
+                    log.warn("A write to a new partition of {} raced with its promotion, the reconciliation repairs it", job.alias);
+                }
+            })
+            .onErrorResume(e ->
+                Mono
+                    .defer(partitions::seal)
+                    .flatMapMany(Flux::fromIterable)
+                    .flatMap(index -> elasticsearchIndexManager.delete(index).onErrorResume(ignored -> Mono.empty()))
+                    .then(Mono.error(e))
+            )
+            .doFinally(signal -> elasticsearchBulkIndexer.stopMirroring(documentClass));
+    }
+
+    /**
+     * Split a collection into {@code _id} ranges of roughly equal size.
+     */
+    private Flux<Criteria> slices(Class<?> entityClass, int count) {
+        if (count <= 1) {
+            return Flux.just(new Criteria());
+        }
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.bucketAuto("_id", count));
+        return reactiveMongoTemplate
+            .aggregate(aggregation, reactiveMongoTemplate.getCollectionName(entityClass), Document.class)
+            .map(bucket -> bucket.get("_id", Document.class))
+            .collectList()
+            .flatMapIterable(bounds -> {
+                List<Criteria> criteria = new ArrayList<>();
+                for (int i = 0; i < bounds.size(); i++) {
+                    Criteria range = Criteria.where("_id").gte(bounds.get(i).get("min"));
+                    boolean last = i == bounds.size() - 1;
+                    criteria.add(last ? range.lte(bounds.get(i).get("max")) : range.lt(bounds.get(i).get("max")));
+                }
+                return criteria;
+            });
+    }
+
+    private <E> Mono<Void> copy(SearchEntity<E> searchEntity, Criteria slice, IndexCoordinates index, int concurrency, ReindexJob job) {
+        Mono<IndexCoordinates> target = Mono.just(index);
+        return copy(searchEntity, slice, document -> target, concurrency, job);
+    }
+
+    private <E> Mono<Void> copy(
+        SearchEntity<E> searchEntity,
+        Criteria slice,
+        Function<Object, Mono<IndexCoordinates>> indexFor,
+        int concurrency,
+        ReindexJob job
+    ) {
+        return reactiveMongoTemplate
+            .find(new Query(slice), searchEntity.entityClass)
+            .map(searchEntity.toDocument)
+            .flatMap(
+                entity ->
+                    indexFor
+                        .apply(entity)
+                        .flatMap(index -> elasticsearchBulkIndexer.indexIfAbsent(entity, index))
+                        .doOnNext(indexed -> (indexed ? job.indexed : job.skipped).incrementAndGet())
+                        .onErrorResume(e -> {
+                            log.warn("Could not reindex {}: {}", entity, e.getMessage());
+                            job.failed.incrementAndGet();
+                            return Mono.empty();
+                        }),
+                concurrency
+            )
+            .then();
+    }
+
+    private Mono<Void> checkNoFailure(ReindexJob job) {
+        if (job.failed.get() > 0) {
+            return Mono.error(new IllegalStateException(job.failed.get() + " documents could not be indexed"));
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * A MongoDB entity, with the search document it is indexed as.
+     */
+    private static class SearchEntity<E> {
+
+        private final Class<E> entityClass;
+
+        private final Class<?> documentClass;
+
+        private final Function<E, ?> toDocument;
+
+        SearchEntity(Class<E> entityClass, Class<?> documentClass, Function<E, ?> toDocument) {
+            this.entityClass = entityClass;
+            this.documentClass = documentClass;
+            this.toDocument = toDocument;
+        }
+    }
+
+    /**
+     * The partition indices of a new generation, created when the first document of their interval is copied or
+     * mirrored. Once sealed, before it is promoted, the generation gets no new partition: a mirrored write to a
+     * new interval is dropped and remembered, and fails the reindex if it happens before the promotion.
+     */
+    private static class PartitionGeneration {
+
+        private final Function<String, Mono<IndexCoordinates>> createIndex;
+
+        private final Map<String, Mono<IndexCoordinates>> indices = new LinkedHashMap<>();
+
+        private boolean sealed;
+
+        private volatile boolean missed;
+
+        PartitionGeneration(Function<String, Mono<IndexCoordinates>> createIndex) {
+            this.createIndex = createIndex;
+        }
+
+        synchronized Mono<IndexCoordinates> indexOf(String partition) {
+            Mono<IndexCoordinates> index = indices.get(partition);
+            if (index == null) {
+                if (sealed) {
+                    missed = true;
+                    return Mono.empty();
+                }
+                index = createIndex.apply(partition).cache();
+                indices.put(partition, index);
+            }
+            return index;
+        }
+
+        /**
+         * Stop creating partitions, and return the indices of the partitions created so far.
+         */
+        Mono<List<IndexCoordinates>> seal() {
+            List<Mono<IndexCoordinates>> created;
+            synchronized (this) {
+                sealed = true;
+                created = new ArrayList<>(indices.values());
+            }
+            return Flux.fromIterable(created).flatMap(index -> index.onErrorResume(e -> Mono.empty())).collectList();
+        }
+
+        Mono<Void> checkNoMiss(String alias) {
+            if (missed) {
+                return Mono.error(
+                    new IllegalStateException("A write to a new partition of " + alias + " raced with the reindex, retry it")
+                );
+            }
+            return Mono.empty();
+        }
+
+        boolean isMissed() {
+            return missed;
+        }
+    }
+
+    private static class ReindexJob {
+
+        private final String alias;
+
+        private final Instant startedAt = Instant.now();
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLong indexed = new AtomicLong();
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private volatile String index;
+
+        private volatile ReindexStatusDTO.State state = ReindexStatusDTO.State.RUNNING;
+
+        private volatile Instant finishedAt;
+
+        private volatile String error;
+
+        ReindexJob(String alias) {
+            this.alias = alias;
+        }
+
+        boolean isRunning() {
+            return state == ReindexStatusDTO.State.RUNNING;
+        }
+
+        void complete() {
+            finishedAt = Instant.now();
+            state = ReindexStatusDTO.State.COMPLETED;
+        }
+
+        void fail(Throwable e) {
+            finishedAt = Instant.now();
+            error = e.getMessage();
+            state = ReindexStatusDTO.State.FAILED;
+        }
+
+        ReindexStatusDTO toStatus() {
+            ReindexStatusDTO status = new ReindexStatusDTO();
+            status.setAlias(alias);
+            status.setIndex(index);
+            status.setState(state);
+            status.setTotal(total.get());
+            status.setIndexed(indexed.get());
+            status.setSkipped(skipped.get());
+            status.setFailed(failed.get());
+            status.setStartedAt(startedAt);
+            status.setFinishedAt(finishedAt);
+            status.setError(error);
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+            long copied = indexed.get() + skipped.get();
+            double rate = copied / seconds;
+            status.setDocumentsPerSecond(rate);
+            if (isRunning() && rate > 0) {
+                status.setEtaSeconds((long) Math.ceil(Math.max(total.get() - copied - failed.get(), 0) / rate));
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.okta.developer.blog.service;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.User;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.search.GlobalSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResult;
+import com.okta.developer.blog.service.dto.GlobalSearchResultDTO;
+import com.okta.developer.blog.service.dto.UserDTO;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import java.util.Map;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service searching the posts, tags, blogs and users at once, for the search box of the header.
+ */
+@Service
+public class GlobalSearchService {
+
+    private final Logger log = LoggerFactory.getLogger(GlobalSearchService.class);
+
+    private final GlobalSearchRepository globalSearchRepository;
+
+    private final PostSearchDocumentMapper postSearchDocumentMapper;
+
+    private final TagSearchDocumentMapper tagSearchDocumentMapper;
+
+    public GlobalSearchService(
+        GlobalSearchRepository globalSearchRepository,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        TagSearchDocumentMapper tagSearchDocumentMapper
+    ) {
+        this.globalSearchRepository = globalSearchRepository;
+        this.postSearchDocumentMapper = postSearchDocumentMapper;
+        this.tagSearchDocumentMapper = tagSearchDocumentMapper;
+    }
+
+    /**
+     * Search the posts, tags, blogs and users matching a query.
+     *
+     * @param query the query of the search.
+     * @param size the maximum number of items of each section.
+     * @return the best matches of each entity, with the number of matches of each.
+     */
+    public Mono<GlobalSearchResultDTO> search(String query, int size) {
+        log.debug("Request to search posts, tags, blogs and users for query {}", query);
+        return globalSearchRepository
+            .search(query, size)
+            .map(results -> {
+                GlobalSearchResultDTO result = new GlobalSearchResultDTO();
+                result.setPosts(section(results, PostSearchDocument.class, postSearchDocumentMapper::postSearchDocumentToPost));
+                result.setTags(section(results, TagSearchDocument.class, tagSearchDocumentMapper::tagSearchDocumentToTag));
+                result.setBlogs(section(results, Blog.class, Function.identity()));
+                result.setUsers(section(results, User.class, UserDTO::new));
+                return result;
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, R> GlobalSearchResultDTO.Section<R> section(
+        Map<Class<?>, SearchResult<?>> results,
+        Class<T> entityClass,
+        Function<? super T, ? extends R> mapper
+    ) {
+        SearchResult<R> result = ((SearchResult<T>) results.get(entityClass)).map(mapper);
+        return new GlobalSearchResultDTO.Section<>(result.getTotalHits(), result.isDegraded(), result.getContent());
+    }
+}
@@ -3,11 +3,28 @@ package com.okta.developer.blog.service;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
 import com.okta.developer.blog.repository.PostRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.PostSearchCriteria;
 import com.okta.developer.blog.repository.search.PostSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResult;
+import com.okta.developer.blog.repository.search.SearchResultCache;
+import com.okta.developer.blog.repository.search.SearchUnavailableException;
+import com.okta.developer.blog.service.dto.PostFacetsDTO;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.clients.elasticsearch7.ElasticsearchAggregations;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -18,26 +35,73 @@ import reactor.core.publisher.Mono;
 @Service
 public class PostService {
 
+    /**
+     * Maximum length of the excerpt of a post.
+     */
+    public static final int EXCERPT_LENGTH = 200;
+
     private final Logger log = LoggerFactory.getLogger(PostService.class);
 
     private final PostRepository postRepository;
 
     private final PostSearchRepository postSearchRepository;
 
-    public PostService(PostRepository postRepository, PostSearchRepository postSearchRepository) {
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final SearchResultCache<PostSearchDocument> postSearchResultCache;
+
+    private final PostSearchDocumentMapper postSearchDocumentMapper;
+
+    private final ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer;
+
+    public PostService(
+        PostRepository postRepository,
+        PostSearchRepository postSearchRepository,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        SearchResultCache<PostSearchDocument> postSearchResultCache,
+        PostSearchDocumentMapper postSearchDocumentMapper,
+        ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer
+    ) {
         this.postRepository = postRepository;
         this.postSearchRepository = postSearchRepository;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.postSearchResultCache = postSearchResultCache;
+        this.postSearchDocumentMapper = postSearchDocumentMapper;
+        this.elasticsearchChangeStreamIndexer = elasticsearchChangeStreamIndexer;
     }
 
     /**
      * Save a post.
+     * <p>
+     * When the changes are indexed from the change stream, as for the partial updates and the deletes, the post is
+     * only saved to MongoDB: the {@link ElasticsearchChangeStreamIndexer} indexes it and invalidates the cached
+     * search results after each batch, so invalidating them now would only let them be cached again stale.
      *
      * @param post the entity to save.
      * @return the persisted entity.
      */
     public Mono<Post> save(Post post) {
         log.debug("Request to save Post : {}", post);
-        return postRepository.save(post).flatMap(postSearchRepository::save);
+        post.setExcerpt(excerptOf(post.getContent()));
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return postRepository.save(post);
+        }
+        if (post.getId() == null) {
+            return postRepository
+                .save(post)
+                .flatMap(savedPost -> index(savedPost, null).thenReturn(savedPost))
+                .doFinally(signal -> invalidateSearchResults());
+        }
+        // the previous date is needed to remove the document from its previous index when the date changes
+        return postRepository
+            .findById(post.getId())
+            .map(postSearchDocumentMapper::postToPostSearchDocument)
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(previous ->
+                postRepository.save(post).flatMap(savedPost -> index(savedPost, previous.orElse(null)).thenReturn(savedPost))
+            )
+            .doFinally(signal -> invalidateSearchResults());
     }
 
     /**
@@ -51,36 +115,37 @@ public class PostService {
 
         return postRepository
             .findById(post.getId())
-            .map(existingPost -> {
+            .flatMap(existingPost -> {
+                PostSearchDocument previous = postSearchDocumentMapper.postToPostSearchDocument(existingPost);
                 if (post.getTitle() != null) {
                     existingPost.setTitle(post.getTitle());
                 }
                 if (post.getContent() != null) {
                     existingPost.setContent(post.getContent());
+                    existingPost.setExcerpt(excerptOf(post.getContent()));
                 }
                 if (post.getDate() != null) {
                     existingPost.setDate(post.getDate());
                 }
 
-                return existingPost;
+                return postRepository.save(existingPost).flatMap(savedPost -> index(savedPost, previous).thenReturn(savedPost));
             })
-            .flatMap(postRepository::save)
-            .flatMap(savedPost -> {
-                postSearchRepository.save(savedPost);
-
-                return Mono.just(savedPost);
-            });
+            .doFinally(signal -> invalidateSearchResults());
     }
 
     /**
      * Get all the posts.
      *
      * @param pageable the pagination information.
+     * @param fields the fields to read, or all the fields if empty.
      * @return the list of entities.
      */
-    public Flux<Post> findAll(Pageable pageable) {
+    public Flux<Post> findAll(Pageable pageable, List<String> fields) {
         log.debug("Request to get all Posts");
-        return postRepository.findAllBy(pageable);
+        if (fields.isEmpty()) {
+            return postRepository.findAllBy(pageable);
+        }
+        return postRepository.findAllBy(pageable, fields);
     }
 
     /**
@@ -101,14 +166,6 @@ public class PostService {
         return postRepository.count();
     }
 
-    /**
-     * Returns the number of posts available in search repository.
-     *
-     */
-    public Mono<Long> searchCount() {
-        return postSearchRepository.count();
-    }
-
     /**
      * Get one post by id.
      *
@@ -128,7 +185,10 @@ public class PostService {
      */
     public Mono<Void> delete(String id) {
         log.debug("Request to delete Post : {}", id);
-        return postRepository.deleteById(id).then(postSearchRepository.deleteById(id));
+        return postRepository
+            .findById(id)
+            .flatMap(post -> postRepository.delete(post).then(unindex(post)))
+            .doFinally(signal -> invalidateSearchResults());
     }
 
     /**
@@ -136,10 +196,212 @@ public class PostService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities of the page with the number of matching entities.
      */
-    public Flux<Post> search(String query, Pageable pageable) {
+    public Mono<SearchResult<Post>> search(String query, Pageable pageable, List<String> fields) {
         log.debug("Request to search for a page of Posts for query {}", query);
-        return postSearchRepository.search(query, pageable);
+        return Mono
+            .fromCallable(() -> postSearchDocumentMapper.toDocumentFields(fields))
+            .flatMap(documentFields -> postSearchRepository.search(query, toDocumentPageable(pageable), documentFields))
+            .map(result -> result.map(postSearchDocumentMapper::postSearchDocumentToPost))
+            .onErrorResume(
+                SearchUnavailableException.class,
+                e -> searchDatabase(new PostSearchCriteria().text(toText(query)), pageable, fields, e)
+            );
+    }
+
+    /**
+     * Search for the posts corresponding to the query, one page after the other.
+     *
+     * @param query the query of the search.
+     * @param sort the sort of the results, the same for every page.
+     * @param size the size of the page.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities of the page with the cursor of the next page.
+     */
+    public Mono<SearchResult<Post>> searchAfter(String query, Sort sort, int size, String cursor, List<String> fields) {
+        log.debug("Request to search for a page of Posts after cursor {} for query {}", cursor, query);
+        return Mono
+            .fromCallable(() -> postSearchDocumentMapper.toDocumentFields(fields))
+            .flatMap(documentFields ->
+                postSearchRepository.searchAfter(query, postSearchDocumentMapper.toDocumentSort(sort), size, cursor, documentFields)
+            )
+            .map(result -> result.map(postSearchDocumentMapper::postSearchDocumentToPost));
+    }
+
+    /**
+     * Stream all the posts corresponding to the query, read from the index as they are consumed.
+     *
+     * @param query the query of the search.
+     * @param sort the sort of the posts, or unsorted for the cheapest order.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities.
+     */
+    public Flux<Post> stream(String query, Sort sort, List<String> fields) {
+        log.debug("Request to stream the Posts for query {}", query);
+        return Mono
+            .fromCallable(() -> postSearchDocumentMapper.toDocumentFields(fields))
+            .flatMapMany(documentFields ->
+                postSearchRepository.stream(query, postSearchDocumentMapper.toDocumentSort(sort), documentFields)
+            )
+            .map(postSearchDocumentMapper::postSearchDocumentToPost);
+    }
+
+    /**
+     * Search for the posts matching structured criteria.
+     *
+     * @param criteria the text and filters of the search.
+     * @param pageable the pagination information.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities of the page with the number of matching entities.
+     */
+    public Mono<SearchResult<Post>> search(PostSearchCriteria criteria, Pageable pageable, List<String> fields) {
+        log.debug("Request to search for a page of Posts for criteria {}", criteria);
+        return Mono
+            .fromCallable(() -> postSearchDocumentMapper.toDocumentFields(fields))
+            .flatMap(documentFields -> postSearchRepository.search(criteria, toDocumentPageable(pageable), documentFields))
+            .map(result -> result.map(postSearchDocumentMapper::postSearchDocumentToPost))
+            .onErrorResume(SearchUnavailableException.class, e -> searchDatabase(criteria, pageable, fields, e));
+    }
+
+    /**
+     * Count the posts matching structured criteria per tag, per blog and per date interval.
+     *
+     * @param criteria the text and filters of the search.
+     * @param interval the calendar interval of the date buckets: year, quarter, month, week or day.
+     * @param size the maximum number of tag and blog buckets.
+     * @return the counts of the posts.
+     */
+    public Mono<PostFacetsDTO> aggregate(PostSearchCriteria criteria, String interval, int size) {
+        log.debug("Request to aggregate Posts per {} for criteria {}", interval, criteria);
+        return postSearchRepository.aggregate(criteria, interval, size).map(PostService::toPostFacetsDTO);
+    }
+
+    /**
+     * Search for the post corresponding to the query, returning the highlighted fragments of their title
+     * and content instead of the whole content.
+     *
+     * @param query the query of the search.
+     * @param pageable the pagination information.
+     * @return the hits of the page, with their highlights, and the number of matching entities.
+     */
+    public Mono<SearchResult<Post>> searchHighlighted(String query, Pageable pageable) {
+        log.debug("Request to search for a page of highlighted Posts for query {}", query);
+        return postSearchRepository
+            .searchHighlighted(query, toDocumentPageable(pageable))
+            .map(result -> result.map(postSearchDocumentMapper::postSearchDocumentToPost));
+    }
+
+    /**
+     * Suggest the titles of the posts starting with a prefix.
+     *
+     * @param prefix the prefix of the titles.
+     * @param size the maximum number of titles.
+     * @return the titles, best first.
+     */
+    public Mono<List<String>> suggestTitles(String prefix, int size) {
+        log.debug("Request to suggest Post titles for prefix {}", prefix);
+        return postSearchRepository.suggestTitles(prefix, size);
+    }
+
+    /**
+     * Compute the excerpt of a post: the beginning of its content as plain text, cut on a word boundary.
+     *
+     * @param content the content of the post.
+     * @return the excerpt, or {@code null} if the post has no content.
+     */
+    public static String excerptOf(String content) {
+        if (content == null) {
+            return null;
+        }
+        String text = content.replaceAll("<[^>]*>", " ").replaceAll("\\s+", " ").trim();
+        if (text.length() <= EXCERPT_LENGTH) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', EXCERPT_LENGTH - 1);
+        return text.substring(0, end > 0 ? end : EXCERPT_LENGTH - 1) + "\u2026";
+    }
+
+    /**
+     * Search for the posts matching criteria in the database instead of Elasticsearch, with its text index.
+     * The text only matches whole words (after stemming) and the relevance is coarser than in Elasticsearch.
+     */
+    private Mono<SearchResult<Post>> searchDatabase(
+        PostSearchCriteria criteria,
+        Pageable pageable,
+        List<String> fields,
+        SearchUnavailableException cause
+    ) {
+        log.warn("Elasticsearch is unavailable, searching the Posts in MongoDB: {}", cause.getMessage());
+        return postRepository
+            .findAllByCriteria(criteria, pageable, fields)
+            .collectList()
+            .zipWith(postRepository.countByCriteria(criteria))
+            .map(tuple -> SearchResult.degraded(tuple.getT1(), tuple.getT2()));
+    }
+
+    /**
+     * Reduce a query string to its words, for a text search: field names, operators and special characters
+     * are dropped.
+     */
+    static String toText(String query) {
+        return query
+            .replaceAll("[\\w.]+:", " ")
+            .replaceAll("\\b(AND|OR|NOT)\\b", " ")
+            .replaceAll("[^\\p{L}\\p{N}]+", " ")
+            .trim();
+    }
+
+    /**
+     * Index a saved post, unless the changes are indexed from the change stream.
+     */
+    private Mono<Void> index(Post post, @Nullable PostSearchDocument previous) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        PostSearchDocument postSearchDocument = postSearchDocumentMapper.postToPostSearchDocument(post);
+        if (previous == null) {
+            return elasticsearchBulkIndexer.index(postSearchDocument);
+        }
+        return elasticsearchBulkIndexer.update(postSearchDocument, previous);
+    }
+
+    private Mono<Void> unindex(Post post) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.delete(postSearchDocumentMapper.postToPostSearchDocument(post));
+    }
+
+    private void invalidateSearchResults() {
+        // the change stream indexer invalidates them once it has applied the changes
+        if (!elasticsearchChangeStreamIndexer.isEnabled()) {
+            postSearchResultCache.invalidateAll();
+        }
+    }
+
+    private Pageable toDocumentPageable(Pageable pageable) {
+        Sort sort = postSearchDocumentMapper.toDocumentSort(pageable.getSort());
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
+    }
+
+    private static PostFacetsDTO toPostFacetsDTO(SearchResult<PostSearchDocument> result) {
+        PostFacetsDTO postFacetsDTO = new PostFacetsDTO();
+        postFacetsDTO.setTotal(result.getTotalHits());
+        Aggregations aggregations = ((ElasticsearchAggregations) result.getSearchHits().getAggregations()).aggregations();
+        postFacetsDTO.setTags(toBuckets(aggregations.get(PostSearchRepository.TAGS_AGGREGATION)));
+        postFacetsDTO.setBlogs(toBuckets(aggregations.get(PostSearchRepository.BLOGS_AGGREGATION)));
+        postFacetsDTO.setDates(toBuckets(aggregations.get(PostSearchRepository.DATES_AGGREGATION)));
+        return postFacetsDTO;
+    }
+
+    private static List<PostFacetsDTO.Bucket> toBuckets(MultiBucketsAggregation aggregation) {
+        return aggregation
+            .getBuckets()
+            .stream()
+            .map(bucket -> new PostFacetsDTO.Bucket(bucket.getKeyAsString(), bucket.getDocCount()))
+            .collect(Collectors.toList());
     }
 }
@@ -3,12 +3,23 @@ package com.okta.developer.blog.service;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
 import com.okta.developer.blog.repository.TagRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.HotSuggestions;
+import com.okta.developer.blog.repository.search.PostSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResult;
 import com.okta.developer.blog.repository.search.TagSearchRepository;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -24,9 +35,38 @@ public class TagService {
 
     private final TagSearchRepository tagSearchRepository;
 
-    public TagService(TagRepository tagRepository, TagSearchRepository tagSearchRepository) {
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
+
+    private final PostSearchRepository postSearchRepository;
+
+    private final HotSuggestions hotTagSuggestions;
+
+    private final TagSearchDocumentMapper tagSearchDocumentMapper;
+
+    private final ElasticsearchPropagationService elasticsearchPropagationService;
+
+    private final ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer;
+
+    private final Disposable.Swap hotTagsRefresh = Disposables.swap();
+
+    public TagService(
+        TagRepository tagRepository,
+        TagSearchRepository tagSearchRepository,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        PostSearchRepository postSearchRepository,
+        HotSuggestions hotTagSuggestions,
+        TagSearchDocumentMapper tagSearchDocumentMapper,
+        ElasticsearchPropagationService elasticsearchPropagationService,
+        ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer
+    ) {
         this.tagRepository = tagRepository;
         this.tagSearchRepository = tagSearchRepository;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
+        this.postSearchRepository = postSearchRepository;
+        this.hotTagSuggestions = hotTagSuggestions;
+        this.tagSearchDocumentMapper = tagSearchDocumentMapper;
+        this.elasticsearchPropagationService = elasticsearchPropagationService;
+        this.elasticsearchChangeStreamIndexer = elasticsearchChangeStreamIndexer;
     }
 
     /**
@@ -37,7 +77,14 @@ public class TagService {
      */
     public Mono<Tag> save(Tag tag) {
         log.debug("Request to save Tag : {}", tag);
-        return tagRepository.save(tag).flatMap(tagSearchRepository::save);
+        if (tag.getId() == null) {
+            return tagRepository.save(tag).flatMap(savedTag -> index(savedTag).thenReturn(savedTag));
+        }
+        return tagRepository
+            .findById(tag.getId())
+            .map(Tag::getName)
+            .flatMap(previousName -> update(tag, previousName))
+            .switchIfEmpty(Mono.defer(() -> tagRepository.save(tag).flatMap(savedTag -> index(savedTag).thenReturn(savedTag))));
     }
 
     /**
@@ -51,18 +98,27 @@ public class TagService {
 
         return tagRepository
             .findById(tag.getId())
-            .map(existingTag -> {
+            .flatMap(existingTag -> {
+                String previousName = existingTag.getName();
                 if (tag.getName() != null) {
                     existingTag.setName(tag.getName());
                 }
 
-                return existingTag;
-            })
-            .flatMap(tagRepository::save)
-            .flatMap(savedTag -> {
-                tagSearchRepository.save(savedTag);
+                return update(existingTag, previousName);
+            });
+    }
 
-                return Mono.just(savedTag);
+    /**
+     * Save an existing tag and propagate its new name, if any, to the posts in the background.
+     */
+    private Mono<Tag> update(Tag tag, String previousName) {
+        return tagRepository
+            .save(tag)
+            .flatMap(savedTag -> index(savedTag).thenReturn(savedTag))
+            .doOnNext(savedTag -> {
+                if (!savedTag.getName().equals(previousName)) {
+                    elasticsearchPropagationService.propagateTagRename(savedTag, previousName);
+                }
             });
     }
 
@@ -86,14 +142,6 @@ public class TagService {
         return tagRepository.count();
     }
 
-    /**
-     * Returns the number of tags available in search repository.
-     *
-     */
-    public Mono<Long> searchCount() {
-        return tagSearchRepository.count();
-    }
-
     /**
      * Get one tag by id.
      *
@@ -113,7 +161,7 @@ public class TagService {
      */
     public Mono<Void> delete(String id) {
         log.debug("Request to delete Tag : {}", id);
-        return tagRepository.deleteById(id).then(tagSearchRepository.deleteById(id));
+        return tagRepository.deleteById(id).then(unindex(id));
     }
 
     /**
@@ -121,10 +169,75 @@ public class TagService {
      *
      * @param query the query of the search.
      * @param pageable the pagination information.
-     * @return the list of entities.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities of the page with the number of matching entities.
      */
-    public Flux<Tag> search(String query, Pageable pageable) {
+    public Mono<SearchResult<Tag>> search(String query, Pageable pageable, List<String> fields) {
         log.debug("Request to search for a page of Tags for query {}", query);
-        return tagSearchRepository.search(query, pageable);
+        return tagSearchRepository
+            .search(query, pageable, fields)
+            .map(result -> result.map(tagSearchDocumentMapper::tagSearchDocumentToTag));
+    }
+
+    /**
+     * Search for the tags corresponding to the query, one page after the other.
+     *
+     * @param query the query of the search.
+     * @param sort the sort of the results, the same for every page.
+     * @param size the size of the page.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param fields the fields to return, or all the fields if empty.
+     * @return the entities of the page with the cursor of the next page.
+     */
+    public Mono<SearchResult<Tag>> searchAfter(String query, Sort sort, int size, String cursor, List<String> fields) {
+        log.debug("Request to search for a page of Tags after cursor {} for query {}", cursor, query);
+        return tagSearchRepository
+            .searchAfter(query, sort, size, cursor, fields)
+            .map(result -> result.map(tagSearchDocumentMapper::tagSearchDocumentToTag));
+    }
+
+    /**
+     * Suggest the names of the tags starting with a prefix, from the most used tags in memory when they
+     * are enough.
+     *
+     * @param prefix the prefix of the names.
+     * @param size the maximum number of names.
+     * @return the names, best first.
+     */
+    public Mono<List<String>> suggestNames(String prefix, int size) {
+        log.debug("Request to suggest Tag names for prefix {}", prefix);
+        return hotTagSuggestions.complete(prefix, size).map(Mono::just).orElseGet(() -> tagSearchRepository.suggestNames(prefix, size));
+    }
+
+    /**
+     * Reload the most used tags, by number of posts, into memory.
+     * <p>
+     * This is scheduled to run at startup and then every {@code application.elasticsearch.search.suggest.hot-tags-refresh-interval}.
+     * A refresh still running when the next one starts is cancelled.
+     */
+    @Scheduled(fixedDelayString = "${application.elasticsearch.search.suggest.hot-tags-refresh-interval:PT5M}")
+    public void refreshHotTags() {
+        hotTagsRefresh.update(
+            postSearchRepository
+                .mostUsedTags(hotTagSuggestions.getCapacity())
+                .subscribe(hotTagSuggestions::update, e -> log.warn("Could not refresh the most used tags: {}", e.getMessage()))
+        );
+    }
+
+    /**
+     * Index a saved tag, unless the changes are indexed from the change stream.
+     */
+    private Mono<Void> index(Tag tag) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.index(tagSearchDocumentMapper.tagToTagSearchDocument(tag));
+    }
+
+    private Mono<Void> unindex(String id) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.delete(id, TagSearchDocument.class);
     }
 }
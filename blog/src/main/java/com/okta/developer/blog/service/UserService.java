@@ -5,7 +5,7 @@ import com.okta.developer.blog.domain.Authority;
 import com.okta.developer.blog.domain.User;
 import com.okta.developer.blog.repository.AuthorityRepository;
 import com.okta.developer.blog.repository.UserRepository;
-import com.okta.developer.blog.repository.search.UserSearchRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
 import com.okta.developer.blog.security.SecurityUtils;
 import com.okta.developer.blog.service.dto.AdminUserDTO;
 import com.okta.developer.blog.service.dto.UserDTO;
@@ -34,14 +34,22 @@ public class UserService {
 
     private final UserRepository userRepository;
 
-    private final UserSearchRepository userSearchRepository;
+    private final ElasticsearchBulkIndexer elasticsearchBulkIndexer;
 
     private final AuthorityRepository authorityRepository;
 
-    public UserService(UserRepository userRepository, UserSearchRepository userSearchRepository, AuthorityRepository authorityRepository) {
+    private final ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer;
+
+    public UserService(
+        UserRepository userRepository,
+        ElasticsearchBulkIndexer elasticsearchBulkIndexer,
+        AuthorityRepository authorityRepository,
+        ElasticsearchChangeStreamIndexer elasticsearchChangeStreamIndexer
+    ) {
         this.userRepository = userRepository;
-        this.userSearchRepository = userSearchRepository;
+        this.elasticsearchBulkIndexer = elasticsearchBulkIndexer;
         this.authorityRepository = authorityRepository;
+        this.elasticsearchChangeStreamIndexer = elasticsearchChangeStreamIndexer;
     }
 
     /**
@@ -68,7 +76,7 @@ public class UserService {
                 user.setImageUrl(imageUrl);
                 return saveUser(user);
             })
-            .flatMap(user -> userSearchRepository.save(user).thenReturn(user))
+            .flatMap(user -> index(user).thenReturn(user))
             .doOnNext(user -> log.debug("Changed Information for User: {}", user))
             .then();
     }
@@ -244,4 +252,14 @@ public class UserService {
         user.setActivated(activated);
         return user;
     }
+
+    /**
+     * Index a saved user, unless the changes are indexed from the change stream.
+     */
+    private Mono<Void> index(User user) {
+        if (elasticsearchChangeStreamIndexer.isEnabled()) {
+            return Mono.empty();
+        }
+        return elasticsearchBulkIndexer.index(user);
+    }
 }
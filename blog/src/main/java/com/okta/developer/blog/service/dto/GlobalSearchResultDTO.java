@@ -0,0 +1,125 @@
+package com.okta.developer.blog.service.dto;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO representing the best posts, tags, blogs and users matching a search, with the number of matches of each.
+ */
+public class GlobalSearchResultDTO {
+
+    private Section<Post> posts = new Section<>();
+
+    private Section<Tag> tags = new Section<>();
+
+    private Section<Blog> blogs = new Section<>();
+
+    private Section<UserDTO> users = new Section<>();
+
+    public Section<Post> getPosts() {
+        return posts;
+    }
+
+    public void setPosts(Section<Post> posts) {
+        this.posts = posts;
+    }
+
+    public Section<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(Section<Tag> tags) {
+        this.tags = tags;
+    }
+
+    public Section<Blog> getBlogs() {
+        return blogs;
+    }
+
+    public void setBlogs(Section<Blog> blogs) {
+        this.blogs = blogs;
+    }
+
+    public Section<UserDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(Section<UserDTO> users) {
+        this.users = users;
+    }
+
+    public static class Section<T> {
+
+        private long total;
+
+        private boolean degraded;
+
+        private List<T> items = new ArrayList<>();
+
+        public Section() {}
+
+        public Section(long total, boolean degraded, List<T> items) {
+            this.total = total;
+            this.degraded = degraded;
+            this.items = items;
+        }
+
+        /**
+         * Returns the number of matches, or its lower bound when there are too many to be counted exactly.
+         *
+         * @return the number of matches.
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        /**
+         * Tells whether the search of this section failed, in which case it has no item.
+         *
+         * @return {@code true} if the search of this section failed.
+         */
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        public void setDegraded(boolean degraded) {
+            this.degraded = degraded;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public void setItems(List<T> items) {
+            this.items = items;
+        }
+
+        // prettier-ignore
+        @Override
+        public String toString() {
+            return "Section{" +
+                "total=" + total +
+                ", degraded=" + degraded +
+                ", items=" + items +
+                "}";
+        }
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "GlobalSearchResultDTO{" +
+            "posts=" + posts +
+            ", tags=" + tags +
+            ", blogs=" + blogs +
+            ", users=" + users +
+            "}";
+    }
+}
@@ -0,0 +1,115 @@
+package com.okta.developer.blog.service.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO representing the number of posts matching a search per tag, per blog and per date interval.
+ */
+public class PostFacetsDTO {
+
+    private long total;
+
+    private List<Bucket> tags = new ArrayList<>();
+
+    private List<Bucket> blogs = new ArrayList<>();
+
+    private List<Bucket> dates = new ArrayList<>();
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    /**
+     * Returns the number of posts per tag name, most frequent first.
+     *
+     * @return the buckets of the tags.
+     */
+    public List<Bucket> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Bucket> tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Returns the number of posts per blog id, most frequent first.
+     *
+     * @return the buckets of the blogs.
+     */
+    public List<Bucket> getBlogs() {
+        return blogs;
+    }
+
+    public void setBlogs(List<Bucket> blogs) {
+        this.blogs = blogs;
+    }
+
+    /**
+     * Returns the number of posts per date interval, keyed by the start of the interval, oldest first.
+     *
+     * @return the buckets of the dates, without the intervals that have no post.
+     */
+    public List<Bucket> getDates() {
+        return dates;
+    }
+
+    public void setDates(List<Bucket> dates) {
+        this.dates = dates;
+    }
+
+    public static class Bucket {
+
+        private String key;
+
+        private long count;
+
+        public Bucket() {}
+
+        public Bucket(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        // prettier-ignore
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                "key='" + key + '\'' +
+                ", count=" + count +
+                "}";
+        }
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PostFacetsDTO{" +
+            "total=" + total +
+            ", tags=" + tags +
+            ", blogs=" + blogs +
+            ", dates=" + dates +
+            "}";
+    }
+}
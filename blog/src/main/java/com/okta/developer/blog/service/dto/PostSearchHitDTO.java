@@ -0,0 +1,118 @@
+package com.okta.developer.blog.service.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DTO representing a post matching a search, with the highlighted fragments of its {@code title} and
+ * {@code content} instead of the whole content.
+ */
+public class PostSearchHitDTO {
+
+    private String id;
+
+    private String title;
+
+    private String excerpt;
+
+    private Instant date;
+
+    private String blogId;
+
+    private String blogName;
+
+    private String blogHandle;
+
+    private Float score;
+
+    private Map<String, List<String>> highlights;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+    public void setExcerpt(String excerpt) {
+        this.excerpt = excerpt;
+    }
+
+    public Instant getDate() {
+        return date;
+    }
+
+    public void setDate(Instant date) {
+        this.date = date;
+    }
+
+    public String getBlogId() {
+        return blogId;
+    }
+
+    public void setBlogId(String blogId) {
+        this.blogId = blogId;
+    }
+
+    public String getBlogName() {
+        return blogName;
+    }
+
+    public void setBlogName(String blogName) {
+        this.blogName = blogName;
+    }
+
+    public String getBlogHandle() {
+        return blogHandle;
+    }
+
+    public void setBlogHandle(String blogHandle) {
+        this.blogHandle = blogHandle;
+    }
+
+    public Float getScore() {
+        return score;
+    }
+
+    public void setScore(Float score) {
+        this.score = score;
+    }
+
+    /**
+     * Returns the highlighted fragments by field, HTML-escaped with the matching terms wrapped in {@code <em>} tags.
+     *
+     * @return the fragments of the fields that matched.
+     */
+    public Map<String, List<String>> getHighlights() {
+        return highlights;
+    }
+
+    public void setHighlights(Map<String, List<String>> highlights) {
+        this.highlights = highlights;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PostSearchHitDTO{" +
+            "id='" + id + '\'' +
+            ", title='" + title + '\'' +
+            ", date=" + date +
+            ", score=" + score +
+            "}";
+    }
+}
@@ -0,0 +1,200 @@
+package com.okta.developer.blog.service.dto;
+
+import java.time.Instant;
+
+/**
+ * A DTO representing the progress of the propagation of a blog or tag rename to the posts embedding it.
+ */
+public class PropagationStatusDTO {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    private String id;
+
+    private String entity;
+
+    private String entityId;
+
+    private String from;
+
+    private String to;
+
+    private State state;
+
+    private long databaseUpdated;
+
+    private String taskId;
+
+    private long total;
+
+    private long updated;
+
+    private long noops;
+
+    private long versionConflicts;
+
+    private long batches;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private String error;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the kind of renamed entity, {@code blog} or {@code tag}.
+     */
+    public String getEntity() {
+        return entity;
+    }
+
+    public void setEntity(String entity) {
+        this.entity = entity;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * @return the number of posts updated in MongoDB.
+     */
+    public long getDatabaseUpdated() {
+        return databaseUpdated;
+    }
+
+    public void setDatabaseUpdated(long databaseUpdated) {
+        this.databaseUpdated = databaseUpdated;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * @return the number of post documents to update in Elasticsearch.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getNoops() {
+        return noops;
+    }
+
+    public void setNoops(long noops) {
+        this.noops = noops;
+    }
+
+    public long getVersionConflicts() {
+        return versionConflicts;
+    }
+
+    public void setVersionConflicts(long versionConflicts) {
+        this.versionConflicts = versionConflicts;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public void setBatches(long batches) {
+        this.batches = batches;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PropagationStatusDTO{" +
+            "id='" + id + '\'' +
+            ", entity='" + entity + '\'' +
+            ", entityId='" + entityId + '\'' +
+            ", from='" + from + '\'' +
+            ", to='" + to + '\'' +
+            ", state=" + state +
+            ", total=" + total +
+            ", updated=" + updated +
+            "}";
+    }
+}
@@ -0,0 +1,129 @@
+package com.okta.developer.blog.service.dto;
+
+import java.time.Instant;
+
+/**
+ * A DTO representing the progress of a consistency check between MongoDB and an Elasticsearch index.
+ */
+public class ReconcileStatusDTO {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    private String alias;
+
+    private State state;
+
+    private long chunks;
+
+    private long mismatchedChunks;
+
+    private long documents;
+
+    private long indexed;
+
+    private long deleted;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private String error;
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(long chunks) {
+        this.chunks = chunks;
+    }
+
+    public long getMismatchedChunks() {
+        return mismatchedChunks;
+    }
+
+    public void setMismatchedChunks(long mismatchedChunks) {
+        this.mismatchedChunks = mismatchedChunks;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(long documents) {
+        this.documents = documents;
+    }
+
+    public long getIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(long indexed) {
+        this.indexed = indexed;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "ReconcileStatusDTO{" +
+            "alias='" + alias + '\'' +
+            ", state=" + state +
+            ", chunks=" + chunks +
+            ", mismatchedChunks=" + mismatchedChunks +
+            ", documents=" + documents +
+            ", indexed=" + indexed +
+            ", deleted=" + deleted +
+            "}";
+    }
+}
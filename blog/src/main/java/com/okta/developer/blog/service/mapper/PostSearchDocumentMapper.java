@@ -0,0 +1,107 @@
+package com.okta.developer.blog.service.mapper;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+/**
+ * Mapper for the entity {@link Post} and its search document called {@link PostSearchDocument}.
+ * <p>
+ * Search results are mapped back to partial entities, whose blog and tags only hold the fields of the
+ * document, and the entity properties requested by clients, such as {@code blog.name}, are translated to
+ * the fields of the document.
+ */
+@Service
+public class PostSearchDocumentMapper {
+
+    private static final Map<String, List<String>> DOCUMENT_FIELDS = Map.ofEntries(
+        Map.entry("id", List.of("id")),
+        Map.entry("title", List.of("title")),
+        Map.entry("content", List.of("content")),
+        Map.entry("excerpt", List.of("excerpt")),
+        Map.entry("date", List.of("date")),
+        Map.entry("blog", List.of("blogId", "blogName", "blogHandle")),
+        Map.entry("blog.id", List.of("blogId")),
+        Map.entry("blog.name", List.of("blogName")),
+        Map.entry("blog.handle", List.of("blogHandle")),
+        Map.entry("tags", List.of("tagNames")),
+        Map.entry("tags.name", List.of("tagNames"))
+    );
+
+    private static final String FIELD_NAMES = String.join(", ", new TreeSet<>(DOCUMENT_FIELDS.keySet()));
+
+    public PostSearchDocument postToPostSearchDocument(Post post) {
+        PostSearchDocument document = new PostSearchDocument()
+            .id(post.getId())
+            .title(post.getTitle())
+            .content(post.getContent())
+            .excerpt(post.getExcerpt())
+            .date(post.getDate());
+        Blog blog = post.getBlog();
+        if (blog != null) {
+            document.blogId(blog.getId()).blogName(blog.getName()).blogHandle(blog.getHandle());
+        }
+        document.setTagNames(post.getTags().stream().map(Tag::getName).filter(Objects::nonNull).sorted().collect(Collectors.toList()));
+        return document;
+    }
+
+    public Post postSearchDocumentToPost(PostSearchDocument document) {
+        Post post = new Post()
+            .id(document.getId())
+            .title(document.getTitle())
+            .content(document.getContent())
+            .excerpt(document.getExcerpt())
+            .date(document.getDate());
+        if (document.getBlogId() != null) {
+            post.setBlog(new Blog().id(document.getBlogId()).name(document.getBlogName()).handle(document.getBlogHandle()));
+        }
+        if (document.getTagNames() != null) {
+            document.getTagNames().forEach(name -> post.getTags().add(new Tag().name(name)));
+        }
+        return post;
+    }
+
+    /**
+     * Translate the entity properties of a sort to the fields of the document.
+     *
+     * @param sort the sort on entity properties.
+     * @return the sort on document fields.
+     */
+    public Sort toDocumentSort(Sort sort) {
+        return Sort.by(
+            sort
+                .stream()
+                .map(order -> order.withProperty(DOCUMENT_FIELDS.getOrDefault(order.getProperty(), List.of(order.getProperty())).get(0)))
+                .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Translate entity properties to the fields of the document.
+     *
+     * @param properties the entity properties, such as {@code blog} or {@code blog.name}.
+     * @return the document fields.
+     * @throws IllegalArgumentException if a property is not held by the document.
+     */
+    public List<String> toDocumentFields(List<String> properties) {
+        return properties
+            .stream()
+            .flatMap(property -> {
+                List<String> fields = DOCUMENT_FIELDS.get(property);
+                if (fields == null) {
+                    throw new IllegalArgumentException("Unknown field " + property + ", the fields are " + FIELD_NAMES);
+                }
+                return fields.stream();
+            })
+            .distinct()
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,37 @@
+package com.okta.developer.blog.service.mapper;
+
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.service.dto.PostSearchHitDTO;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.stereotype.Service;
+
+/**
+ * Mapper for the search hits of the entity {@link Post} and their DTO called {@link PostSearchHitDTO}.
+ */
+@Service
+public class PostSearchHitMapper {
+
+    public List<PostSearchHitDTO> searchHitsToPostSearchHitDTOs(SearchHits<Post> searchHits) {
+        return searchHits.getSearchHits().stream().map(this::searchHitToPostSearchHitDTO).collect(Collectors.toList());
+    }
+
+    public PostSearchHitDTO searchHitToPostSearchHitDTO(SearchHit<Post> searchHit) {
+        Post post = searchHit.getContent();
+        PostSearchHitDTO postSearchHitDTO = new PostSearchHitDTO();
+        postSearchHitDTO.setId(post.getId());
+        postSearchHitDTO.setTitle(post.getTitle());
+        postSearchHitDTO.setExcerpt(post.getExcerpt());
+        postSearchHitDTO.setDate(post.getDate());
+        if (post.getBlog() != null) {
+            postSearchHitDTO.setBlogId(post.getBlog().getId());
+            postSearchHitDTO.setBlogName(post.getBlog().getName());
+            postSearchHitDTO.setBlogHandle(post.getBlog().getHandle());
+        }
+        postSearchHitDTO.setScore(Float.isNaN(searchHit.getScore()) ? null : searchHit.getScore());
+        postSearchHitDTO.setHighlights(searchHit.getHighlightFields());
+        return postSearchHitDTO;
+    }
+}
@@ -0,0 +1,20 @@
+package com.okta.developer.blog.service.mapper;
+
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import org.springframework.stereotype.Service;
+
+/**
+ * Mapper for the entity {@link Tag} and its search document called {@link TagSearchDocument}.
+ */
+@Service
+public class TagSearchDocumentMapper {
+
+    public TagSearchDocument tagToTagSearchDocument(Tag tag) {
+        return new TagSearchDocument().id(tag.getId()).name(tag.getName());
+    }
+
+    public Tag tagSearchDocumentToTag(TagSearchDocument document) {
+        return new Tag().id(document.getId()).name(document.getName());
+    }
+}
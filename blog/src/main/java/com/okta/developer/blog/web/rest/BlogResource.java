@@ -236,11 +236,34 @@ public class BlogResource {
      * to the query.
      *
      * @param query the query of the blog search.
+     * @param fields the fields of the blogs to return, all of them if empty.
      * @return the result of the search.
      */
     @GetMapping("/_search/blogs")
-    public Mono<List<Blog>> searchBlogs(@RequestParam String query) {
+    public Mono<List<Blog>> searchBlogs(
+        @RequestParam String query,
+        @RequestParam(required = false, defaultValue = "") List<String> fields
+    ) {
         log.debug("REST request to search Blogs for query {}", query);
-        return blogService.search(query).collectList();
+        return blogService
+            .search(query, fields)
+            .collectList()
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code SEARCH  /_search/blogs?query=:query} with {@code Accept: application/x-ndjson} : stream all the
+     * blogs corresponding to the query, one JSON document per line.
+     *
+     * @param query the query of the blog search.
+     * @param fields the fields of the blogs to return, all of them if empty.
+     * @return the blogs.
+     */
+    @GetMapping(value = "/_search/blogs", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Blog> streamBlogs(@RequestParam String query, @RequestParam(required = false, defaultValue = "") List<String> fields) {
+        log.debug("REST request to stream the Blogs for query {}", query);
+        return blogService
+            .stream(query, fields)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
     }
 }
@@ -2,11 +2,16 @@ package com.okta.developer.blog.web.rest;
 
 import com.okta.developer.blog.domain.Post;
 import com.okta.developer.blog.repository.PostRepository;
+import com.okta.developer.blog.repository.search.PostSearchCriteria;
+import com.okta.developer.blog.repository.search.SearchQueryGuard;
 import com.okta.developer.blog.service.PostService;
+import com.okta.developer.blog.service.dto.PostFacetsDTO;
+import com.okta.developer.blog.service.dto.PostSearchHitDTO;
+import com.okta.developer.blog.service.mapper.PostSearchHitMapper;
 import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -43,6 +48,13 @@ public class PostResource {
 
     private static final String ENTITY_NAME = "blogPost";
 
+    private static final int MAX_SUGGESTIONS = 20;
+
+    /**
+     * Header set on the responses served by the MongoDB fallback search while Elasticsearch is unavailable.
+     */
+    private static final String DEGRADED_HEADER = "X-Search-Degraded";
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -50,9 +62,20 @@ public class PostResource {
 
     private final PostRepository postRepository;
 
-    public PostResource(PostService postService, PostRepository postRepository) {
+    private final PostSearchHitMapper postSearchHitMapper;
+
+    private final SearchQueryGuard searchQueryGuard;
+
+    public PostResource(
+        PostService postService,
+        PostRepository postRepository,
+        PostSearchHitMapper postSearchHitMapper,
+        SearchQueryGuard searchQueryGuard
+    ) {
         this.postService = postService;
         this.postRepository = postRepository;
+        this.postSearchHitMapper = postSearchHitMapper;
+        this.searchQueryGuard = searchQueryGuard;
     }
 
     /**
@@ -174,18 +197,20 @@ public class PostResource {
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
      * @param eagerload flag to eager load entities from relationships (This is applicable for many-to-many).
+     * @param fields the fields of the posts to return, all of them if empty.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of posts in body.
      */
     @GetMapping("/posts")
     public Mono<ResponseEntity<List<Post>>> getAllPosts(
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
         ServerHttpRequest request,
-        @RequestParam(required = false, defaultValue = "false") boolean eagerload
+        @RequestParam(required = false, defaultValue = "false") boolean eagerload,
+        @RequestParam(required = false, defaultValue = "") List<String> fields
     ) {
         log.debug("REST request to get a page of Posts");
         return postService
             .countAll()
-            .zipWith(postService.findAll(pageable).collectList())
+            .zipWith(postService.findAll(pageable, fields).collectList())
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
@@ -232,23 +257,222 @@ public class PostResource {
     /**
      * {@code SEARCH  /_search/posts?query=:query} : search for the post corresponding
      * to the query.
+     * <p>
+     * With a {@code cursor} parameter, pages are read one after the other instead of by number, at the same
+     * cost whatever their depth: pass an empty cursor for the first page, then the cursor returned in the
+     * {@code X-Next-Cursor} header (or follow the {@code next} link) with the same query, sort and size.
+     * <p>
+     * The {@code X-Total-Count} may only be a lower bound of the number of matches, as told by the
+     * {@code X-Total-Count-Relation} header: {@code eq} for an exact count, {@code gte} for a lower bound.
      *
      * @param query the query of the post search.
+     * @param cursor the cursor of the page to get, empty for the first page.
+     * @param fields the fields of the posts to return, all of them if empty.
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
      * @return the result of the search.
      */
     @GetMapping("/_search/posts")
-    public Mono<ResponseEntity<Flux<Post>>> searchPosts(
+    public Mono<ResponseEntity<List<Post>>> searchPosts(
         @RequestParam String query,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = "") List<String> fields,
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
         ServerHttpRequest request
     ) {
+        if (cursor != null) {
+            log.debug("REST request to search for a page of Posts after cursor {} for query {}", cursor, query);
+            return postService
+                .searchAfter(
+                    query,
+                    pageable.getSort(),
+                    searchQueryGuard.pageSize(pageable.getPageSize()),
+                    cursor.isEmpty() ? null : cursor,
+                    fields
+                )
+                .map(result -> {
+                    HttpHeaders headers = SearchPaginationUtil.generateCursorPaginationHttpHeaders(
+                        UriComponentsBuilder.fromHttpRequest(request),
+                        result
+                    );
+                    return ResponseEntity.ok().headers(headers).body(result.getContent());
+                })
+                .onErrorMap(
+                    IllegalArgumentException.class,
+                    e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid")
+                );
+        }
         log.debug("REST request to search for a page of Posts for query {}", query);
+        Pageable searched = searchQueryGuard.pageable(pageable);
+        return postService
+            .search(query, searched, fields)
+            .map(result -> {
+                Page<Post> page = new PageImpl<>(result.getContent(), searched, result.getTotalHits());
+                HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    page,
+                    result.getTotalHitsRelation()
+                );
+                if (result.isDegraded()) {
+                    headers.add(DEGRADED_HEADER, "true");
+                }
+                return ResponseEntity.ok().headers(headers).body(page.getContent());
+            })
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code SEARCH  /_search/posts?query=:query} with {@code Accept: application/x-ndjson} : stream all the
+     * posts corresponding to the query, one JSON document per line.
+     * <p>
+     * There is no page limit: posts are read from the index in batches, as fast as the client reads them.
+     *
+     * @param query the query of the post search.
+     * @param fields the fields of the posts to return, all of them if empty.
+     * @param pageable the sort of the posts, the cheapest order if unsorted; the page is ignored.
+     * @return the posts.
+     */
+    @GetMapping(value = "/_search/posts", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Post> streamPosts(
+        @RequestParam String query,
+        @RequestParam(required = false, defaultValue = "") List<String> fields,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable
+    ) {
+        log.debug("REST request to stream the Posts for query {}", query);
+        return postService
+            .stream(query, pageable.getSort(), fields)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code SEARCH  /_search/posts/filter} : search for the posts matching a free text and exact filters.
+     * <p>
+     * Unlike {@code query}, the text is not parsed as a query string: it is matched against the title
+     * and content of the posts, while the blog, tags and dates only filter them.
+     *
+     * @param text the text to match, all the posts if empty.
+     * @param blogId the id of the blog of the posts.
+     * @param tags the names of the tags the posts must all have.
+     * @param from the inclusive lower bound of the date of the posts.
+     * @param to the exclusive upper bound of the date of the posts.
+     * @param fields the fields of the posts to return, all of them if empty.
+     * @param pageable the pagination information.
+     * @param request a {@link ServerHttpRequest} request.
+     * @return the result of the search.
+     */
+    @GetMapping("/_search/posts/filter")
+    public Mono<ResponseEntity<List<Post>>> searchPostsByCriteria(
+        @RequestParam(required = false) String text,
+        @RequestParam(required = false) String blogId,
+        @RequestParam(required = false, defaultValue = "") List<String> tags,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to,
+        @RequestParam(required = false, defaultValue = "") List<String> fields,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        ServerHttpRequest request
+    ) {
+        PostSearchCriteria criteria = new PostSearchCriteria().text(text).blogId(blogId).tags(tags).from(from).to(to);
+        log.debug("REST request to search for a page of Posts for criteria {}", criteria);
+        Pageable searched = searchQueryGuard.pageable(pageable);
         return postService
-            .searchCount()
-            .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
-            .map(page -> PaginationUtil.generatePaginationHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), page))
-            .map(headers -> ResponseEntity.ok().headers(headers).body(postService.search(query, pageable)));
+            .search(criteria, searched, fields)
+            .map(result -> {
+                Page<Post> page = new PageImpl<>(result.getContent(), searched, result.getTotalHits());
+                HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    page,
+                    result.getTotalHitsRelation()
+                );
+                if (result.isDegraded()) {
+                    headers.add(DEGRADED_HEADER, "true");
+                }
+                return ResponseEntity.ok().headers(headers).body(page.getContent());
+            })
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code GET  /_search/posts/facets} : count the posts matching a free text and exact filters per tag,
+     * per blog and per date interval.
+     *
+     * @param text the text to match, all the posts if empty.
+     * @param blogId the id of the blog of the posts.
+     * @param tags the names of the tags the posts must all have.
+     * @param from the inclusive lower bound of the date of the posts.
+     * @param to the exclusive upper bound of the date of the posts.
+     * @param interval the calendar interval of the date buckets: year, quarter, month, week or day.
+     * @param size the maximum number of tag and blog buckets.
+     * @return the counts of the posts.
+     */
+    @GetMapping("/_search/posts/facets")
+    public Mono<PostFacetsDTO> getPostFacets(
+        @RequestParam(required = false) String text,
+        @RequestParam(required = false) String blogId,
+        @RequestParam(required = false, defaultValue = "") List<String> tags,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to,
+        @RequestParam(defaultValue = "month") String interval,
+        @RequestParam(defaultValue = "10") int size
+    ) {
+        PostSearchCriteria criteria = new PostSearchCriteria().text(text).blogId(blogId).tags(tags).from(from).to(to);
+        log.debug("REST request to get the facets of Posts per {} for criteria {}", interval, criteria);
+        return postService
+            .aggregate(criteria, interval, size)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code SEARCH  /_search/posts?query=:query&highlight=true} : search for the post corresponding
+     * to the query, returning the fragments of their title and content that matched instead of the whole posts.
+     *
+     * @param query the query of the post search.
+     * @param pageable the pagination information.
+     * @param request a {@link ServerHttpRequest} request.
+     * @return the result of the search.
+     */
+    @GetMapping(value = "/_search/posts", params = "highlight=true")
+    public Mono<ResponseEntity<List<PostSearchHitDTO>>> searchPostsHighlighted(
+        @RequestParam String query,
+        @org.springdoc.api.annotations.ParameterObject Pageable pageable,
+        ServerHttpRequest request
+    ) {
+        log.debug("REST request to search for a page of highlighted Posts for query {}", query);
+        Pageable searched = searchQueryGuard.pageable(pageable);
+        return postService
+            .searchHighlighted(query, searched)
+            .map(result -> {
+                List<PostSearchHitDTO> hits = postSearchHitMapper.searchHitsToPostSearchHitDTOs(result.getSearchHits());
+                Page<PostSearchHitDTO> page = new PageImpl<>(hits, searched, result.getTotalHits());
+                HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    page,
+                    result.getTotalHitsRelation()
+                );
+                return ResponseEntity.ok().headers(headers).body(page.getContent());
+            })
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code GET  /_suggest/posts?prefix=:prefix} : complete a prefix with the titles of the posts, for autocompletion.
+     * <p>
+     * Suggestions are computed within a strict time budget, past which an empty list is returned. A request
+     * superseded by a new keystroke should be aborted by the client: this cancels the search as well.
+     *
+     * @param prefix the prefix to complete.
+     * @param size the maximum number of suggestions.
+     * @return the titles, best first.
+     */
+    @GetMapping("/_suggest/posts")
+    public Mono<List<String>> suggestPosts(@RequestParam String prefix, @RequestParam(defaultValue = "10") int size) {
+        log.debug("REST request to suggest Post titles for prefix {}", prefix);
+        if (size < 1 || size > MAX_SUGGESTIONS) {
+            throw new BadRequestAlertException(
+                "The number of suggestions must be between 1 and " + MAX_SUGGESTIONS,
+                ENTITY_NAME,
+                "sizeinvalid"
+            );
+        }
+        return postService.suggestTitles(prefix, size);
     }
 }
@@ -3,6 +3,7 @@ package com.okta.developer.blog.web.rest;
 import com.okta.developer.blog.repository.search.UserSearchRepository;
 import com.okta.developer.blog.service.UserService;
 import com.okta.developer.blog.service.dto.UserDTO;
+import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -72,6 +73,10 @@ public class PublicUserResource {
      */
     @GetMapping("/_search/users/{query}")
     public Mono<List<UserDTO>> search(@PathVariable String query) {
-        return userSearchRepository.search(query).map(UserDTO::new).collectList();
+        return userSearchRepository
+            .search(query)
+            .map(UserDTO::new)
+            .collectList()
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), "user", "searchinvalid"));
     }
 }
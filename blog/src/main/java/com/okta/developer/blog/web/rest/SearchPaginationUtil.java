@@ -0,0 +1,99 @@
+package com.okta.developer.blog.web.rest;
+
+import com.okta.developer.blog.repository.search.SearchResult;
+import java.text.MessageFormat;
+import org.springframework.data.domain.Page;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+import tech.jhipster.web.util.PaginationUtil;
+
+/**
+ * Utility class for the pagination headers of a search, whose total may only be a lower bound.
+ * <p>
+ * The {@code X-Total-Count-Relation} header tells whether the {@code X-Total-Count} is exact ({@code eq}) or a
+ * lower bound ({@code gte}). With a lower bound there is no {@code last} link, and a {@code next} link is given
+ * whenever the page is full: the page after it may be empty.
+ * <p>
+ * As with {@link PaginationUtil}, the commas and semicolons of the links are percent-encoded, so that the
+ * {@code Link} header can be parsed whatever the query.
+ */
+final class SearchPaginationUtil {
+
+    private static final String HEADER_X_TOTAL_COUNT = "X-Total-Count";
+
+    private static final String HEADER_X_TOTAL_COUNT_RELATION = "X-Total-Count-Relation";
+
+    private static final String HEADER_X_NEXT_CURSOR = "X-Next-Cursor";
+
+    private static final String HEADER_LINK_FORMAT = "<{0}>; rel=\"{1}\"";
+
+    private SearchPaginationUtil() {}
+
+    /**
+     * Generate the pagination headers of a page of search results.
+     *
+     * @param uriBuilder the URI of the search.
+     * @param page the page, with the total number of results.
+     * @param relation whether the total is exact or a lower bound.
+     * @param <T> the type of the results.
+     * @return the {@code X-Total-Count}, {@code X-Total-Count-Relation} and {@code Link} headers.
+     */
+    static <T> HttpHeaders generateSearchPaginationHttpHeaders(UriComponentsBuilder uriBuilder, Page<T> page, TotalHitsRelation relation) {
+        if (relation == TotalHitsRelation.EQUAL_TO) {
+            HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(uriBuilder, page);
+            headers.add(HEADER_X_TOTAL_COUNT_RELATION, relationValue(relation));
+            return headers;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HEADER_X_TOTAL_COUNT, Long.toString(page.getTotalElements()));
+        headers.add(HEADER_X_TOTAL_COUNT_RELATION, relationValue(relation));
+        int pageNumber = page.getNumber();
+        int pageSize = page.getSize();
+        StringBuilder link = new StringBuilder();
+        if (page.getNumberOfElements() == pageSize) {
+            link.append(prepareLink(uriBuilder, pageNumber + 1, pageSize, "next")).append(",");
+        }
+        if (pageNumber > 0) {
+            link.append(prepareLink(uriBuilder, pageNumber - 1, pageSize, "prev")).append(",");
+        }
+        link.append(prepareLink(uriBuilder, 0, pageSize, "first"));
+        headers.add(HttpHeaders.LINK, link.toString());
+        return headers;
+    }
+
+    /**
+     * Generate the pagination headers of a page of cursor-paginated search results.
+     *
+     * @param uriBuilder the URI of the search.
+     * @param result the page, with the cursor of the next one.
+     * @param <T> the type of the results.
+     * @return the {@code X-Total-Count}, {@code X-Total-Count-Relation}, {@code X-Next-Cursor} and {@code Link} headers.
+     */
+    static <T> HttpHeaders generateCursorPaginationHttpHeaders(UriComponentsBuilder uriBuilder, SearchResult<T> result) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HEADER_X_TOTAL_COUNT, Long.toString(result.getTotalHits()));
+        headers.add(HEADER_X_TOTAL_COUNT_RELATION, relationValue(result.getTotalHitsRelation()));
+        if (result.getNextCursor() != null) {
+            headers.add(HEADER_X_NEXT_CURSOR, result.getNextCursor());
+            String next = encodeLinkUri(uriBuilder.replaceQueryParam("cursor", result.getNextCursor()));
+            headers.add(HttpHeaders.LINK, MessageFormat.format(HEADER_LINK_FORMAT, next, "next"));
+        }
+        return headers;
+    }
+
+    private static String relationValue(TotalHitsRelation relation) {
+        return relation == TotalHitsRelation.EQUAL_TO ? "eq" : "gte";
+    }
+
+    private static String prepareLink(UriComponentsBuilder uriBuilder, int pageNumber, int pageSize, String relType) {
+        String uri = encodeLinkUri(
+            uriBuilder.replaceQueryParam("page", Integer.toString(pageNumber)).replaceQueryParam("size", Integer.toString(pageSize))
+        );
+        return MessageFormat.format(HEADER_LINK_FORMAT, uri, relType);
+    }
+
+    private static String encodeLinkUri(UriComponentsBuilder uriBuilder) {
+        return uriBuilder.toUriString().replace(",", "%2C").replace(";", "%3B");
+    }
+}
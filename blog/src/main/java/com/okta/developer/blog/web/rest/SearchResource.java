@@ -0,0 +1,49 @@
+package com.okta.developer.blog.web.rest;
+
+import com.okta.developer.blog.service.GlobalSearchService;
+import com.okta.developer.blog.service.dto.GlobalSearchResultDTO;
+import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller searching the posts, tags, blogs and users at once.
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchResource {
+
+    private final Logger log = LoggerFactory.getLogger(SearchResource.class);
+
+    private static final String ENTITY_NAME = "blogSearch";
+
+    private final GlobalSearchService globalSearchService;
+
+    public SearchResource(GlobalSearchService globalSearchService) {
+        this.globalSearchService = globalSearchService;
+    }
+
+    /**
+     * {@code SEARCH  /_search?query=:query} : search for the posts, tags, blogs and users corresponding to the
+     * query, in a single round trip to Elasticsearch.
+     * <p>
+     * Each section holds the best matches of an entity and their total number. A section whose search failed
+     * is empty and flagged as degraded, the others are returned all the same.
+     *
+     * @param query the query of the search.
+     * @param size the maximum number of items of each section, up to 20.
+     * @return the result of the search.
+     */
+    @GetMapping("/_search")
+    public Mono<GlobalSearchResultDTO> search(@RequestParam String query, @RequestParam(defaultValue = "5") int size) {
+        log.debug("REST request to search for posts, tags, blogs and users for query {}", query);
+        return globalSearchService
+            .search(query, size)
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+}
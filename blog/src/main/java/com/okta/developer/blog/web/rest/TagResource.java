@@ -2,11 +2,11 @@ package com.okta.developer.blog.web.rest;
 
 import com.okta.developer.blog.domain.Tag;
 import com.okta.developer.blog.repository.TagRepository;
+import com.okta.developer.blog.repository.search.SearchQueryGuard;
 import com.okta.developer.blog.service.TagService;
 import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -26,7 +26,6 @@ import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
 import tech.jhipster.web.util.PaginationUtil;
@@ -43,6 +42,8 @@ public class TagResource {
 
     private static final String ENTITY_NAME = "blogTag";
 
+    private static final int MAX_SUGGESTIONS = 20;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
@@ -50,9 +51,12 @@ public class TagResource {
 
     private final TagRepository tagRepository;
 
-    public TagResource(TagService tagService, TagRepository tagRepository) {
+    private final SearchQueryGuard searchQueryGuard;
+
+    public TagResource(TagService tagService, TagRepository tagRepository, SearchQueryGuard searchQueryGuard) {
         this.tagService = tagService;
         this.tagRepository = tagRepository;
+        this.searchQueryGuard = searchQueryGuard;
     }
 
     /**
@@ -228,23 +232,87 @@ public class TagResource {
     /**
      * {@code SEARCH  /_search/tags?query=:query} : search for the tag corresponding
      * to the query.
+     * <p>
+     * With a {@code cursor} parameter, pages are read one after the other instead of by number, at the same
+     * cost whatever their depth: pass an empty cursor for the first page, then the cursor returned in the
+     * {@code X-Next-Cursor} header (or follow the {@code next} link) with the same query, sort and size.
+     * <p>
+     * The {@code X-Total-Count} may only be a lower bound of the number of matches, as told by the
+     * {@code X-Total-Count-Relation} header: {@code eq} for an exact count, {@code gte} for a lower bound.
      *
      * @param query the query of the tag search.
+     * @param cursor the cursor of the page to get, empty for the first page.
+     * @param fields the fields of the tags to return, all of them if empty.
      * @param pageable the pagination information.
      * @param request a {@link ServerHttpRequest} request.
      * @return the result of the search.
      */
     @GetMapping("/_search/tags")
-    public Mono<ResponseEntity<Flux<Tag>>> searchTags(
+    public Mono<ResponseEntity<List<Tag>>> searchTags(
         @RequestParam String query,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = "") List<String> fields,
         @org.springdoc.api.annotations.ParameterObject Pageable pageable,
         ServerHttpRequest request
     ) {
+        if (cursor != null) {
+            log.debug("REST request to search for a page of Tags after cursor {} for query {}", cursor, query);
+            return tagService
+                .searchAfter(
+                    query,
+                    pageable.getSort(),
+                    searchQueryGuard.pageSize(pageable.getPageSize()),
+                    cursor.isEmpty() ? null : cursor,
+                    fields
+                )
+                .map(result -> {
+                    HttpHeaders headers = SearchPaginationUtil.generateCursorPaginationHttpHeaders(
+                        UriComponentsBuilder.fromHttpRequest(request),
+                        result
+                    );
+                    return ResponseEntity.ok().headers(headers).body(result.getContent());
+                })
+                .onErrorMap(
+                    IllegalArgumentException.class,
+                    e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid")
+                );
+        }
         log.debug("REST request to search for a page of Tags for query {}", query);
+        Pageable searched = searchQueryGuard.pageable(pageable);
         return tagService
-            .searchCount()
-            .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
-            .map(page -> PaginationUtil.generatePaginationHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), page))
-            .map(headers -> ResponseEntity.ok().headers(headers).body(tagService.search(query, pageable)));
+            .search(query, searched, fields)
+            .map(result -> {
+                Page<Tag> page = new PageImpl<>(result.getContent(), searched, result.getTotalHits());
+                HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+                    UriComponentsBuilder.fromHttpRequest(request),
+                    page,
+                    result.getTotalHitsRelation()
+                );
+                return ResponseEntity.ok().headers(headers).body(page.getContent());
+            })
+            .onErrorMap(IllegalArgumentException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "searchinvalid"));
+    }
+
+    /**
+     * {@code GET  /_suggest/tags?prefix=:prefix} : complete a prefix with the names of the tags, for autocompletion.
+     * <p>
+     * Suggestions are computed within a strict time budget, past which an empty list is returned. A request
+     * superseded by a new keystroke should be aborted by the client: this cancels the search as well.
+     *
+     * @param prefix the prefix to complete.
+     * @param size the maximum number of suggestions.
+     * @return the names, best first.
+     */
+    @GetMapping("/_suggest/tags")
+    public Mono<List<String>> suggestTags(@RequestParam String prefix, @RequestParam(defaultValue = "10") int size) {
+        log.debug("REST request to suggest Tag names for prefix {}", prefix);
+        if (size < 1 || size > MAX_SUGGESTIONS) {
+            throw new BadRequestAlertException(
+                "The number of suggestions must be between 1 and " + MAX_SUGGESTIONS,
+                ENTITY_NAME,
+                "sizeinvalid"
+            );
+        }
+        return tagService.suggestNames(prefix, size);
     }
 }
@@ -0,0 +1,69 @@
+package com.okta.developer.blog.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+import com.okta.developer.blog.repository.search.ElasticsearchIndexManager;
+import com.okta.developer.blog.service.TagService;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Checks the main configuration, which the integration tests do not load: their own {@code config/application.yml}
+ * shadows it.
+ */
+class ApplicationPropertiesTest {
+
+    private static final String MAIN_CONFIG = "src/main/resources/config/application.yml";
+
+    @Test
+    void testMainConfigBinds() throws IOException {
+        ApplicationProperties applicationProperties = new Binder(ConfigurationPropertySources.from(loadMainConfig()))
+            .bind("application", ApplicationProperties.class)
+            .get();
+
+        assertThat(applicationProperties.getElasticsearch().getReconcile().getInterval()).isEqualTo(Duration.ofHours(24));
+    }
+
+    @Test
+    void testScheduledDelaysParse() throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        loadMainConfig().forEach(environment.getPropertySources()::addLast);
+
+        for (Class<?> type : List.of(ElasticsearchIndexManager.class, TagService.class)) {
+            for (Method method : type.getDeclaredMethods()) {
+                Scheduled scheduled = method.getAnnotation(Scheduled.class);
+                if (scheduled == null) {
+                    continue;
+                }
+                for (String delay : List.of(scheduled.initialDelayString(), scheduled.fixedDelayString())) {
+                    String value = environment.resolveRequiredPlaceholders(delay);
+                    // as the ScheduledAnnotationBeanPostProcessor: an ISO-8601 duration, or else milliseconds
+                    assertThatCode(() -> {
+                            if (value.startsWith("P")) {
+                                Duration.parse(value);
+                            } else if (!value.isEmpty()) {
+                                Long.parseLong(value);
+                            }
+                        })
+                        .as("%s of %s", delay, method)
+                        .doesNotThrowAnyException();
+                }
+            }
+        }
+    }
+
+    private static List<PropertySource<?>> loadMainConfig() throws IOException {
+        return new YamlPropertySourceLoader().load("main", new FileSystemResource(MAIN_CONFIG));
+    }
+}
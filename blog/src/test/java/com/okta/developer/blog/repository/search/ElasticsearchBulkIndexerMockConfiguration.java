@@ -0,0 +1,15 @@
+package com.okta.developer.blog.repository.search;
+
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configure a Mock version of {@link ElasticsearchBulkIndexer} to test the
+ * application without starting Elasticsearch.
+ */
+@Configuration
+public class ElasticsearchBulkIndexerMockConfiguration {
+
+    @MockBean
+    private ElasticsearchBulkIndexer mockElasticsearchBulkIndexer;
+}
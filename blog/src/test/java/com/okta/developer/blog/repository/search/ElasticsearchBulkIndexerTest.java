@@ -0,0 +1,149 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.okta.developer.blog.domain.Tag;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+class ElasticsearchBulkIndexerTest {
+
+    private static final IndexCoordinates INDEX = IndexCoordinates.of("tag");
+
+    private final BlockingQueue<Sinks.One<BulkResponse>> bulkRequests = new LinkedBlockingQueue<>();
+
+    private ElasticsearchBulkIndexer bulkIndexer;
+
+    @BeforeEach
+    void setUp() {
+        ReactiveElasticsearchTemplate reactiveElasticsearchTemplate = mock(ReactiveElasticsearchTemplate.class);
+        when(reactiveElasticsearchTemplate.getElasticsearchConverter())
+            .thenReturn(new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext()));
+        when(reactiveElasticsearchTemplate.execute(any()))
+            .thenAnswer(invocation -> {
+                Sinks.One<BulkResponse> response = Sinks.one();
+                bulkRequests.add(response);
+                return response.asMono();
+            });
+        // a single slot, each operation flushed alone
+        bulkIndexer =
+            new ElasticsearchBulkIndexer(
+                reactiveElasticsearchTemplate,
+                mock(ElasticsearchIndexManager.class),
+                1,
+                Duration.ofMillis(10),
+                2,
+                1,
+                Duration.ofMillis(500)
+            );
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkIndexer.close();
+    }
+
+    @Test
+    void testWaitingOperationGetsTheFreedSlot() throws Exception {
+        CompletableFuture<Void> first = index("1");
+        Sinks.One<BulkResponse> firstBulk = nextBulkRequest();
+        CompletableFuture<Void> second = index("2");
+
+        assertThat(bulkRequests.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(second).isNotDone();
+
+        firstBulk.tryEmitError(new IOException("Connection reset"));
+
+        assertThatThrownBy(() -> first.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(BulkIndexingException.class);
+        nextBulkRequest().tryEmitError(new IOException("Connection reset"));
+        assertThatThrownBy(() -> second.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(BulkIndexingException.class);
+    }
+
+    @Test
+    void testCancelledWaitingOperationIsNotSent() throws Exception {
+        index("1");
+        Sinks.One<BulkResponse> firstBulk = nextBulkRequest();
+        Disposable cancelled = bulkIndexer.index(new Tag().id("2").name("2"), INDEX).subscribe();
+        cancelled.dispose();
+
+        firstBulk.tryEmitError(new IOException("Connection reset"));
+        CompletableFuture<Void> third = index("3");
+        nextBulkRequest().tryEmitError(new IOException("Connection reset"));
+
+        assertThatThrownBy(() -> third.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(BulkIndexingException.class);
+        assertThat(bulkRequests.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void testOperationIsRejectedWhenNoSlotIsFreed() throws Exception {
+        index("1");
+        nextBulkRequest();
+
+        assertThatThrownBy(() -> index("2").get(1, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(BulkIndexingException.class)
+            .hasMessageContaining("saturated");
+    }
+
+    @Test
+    void testIndexIfAbsentTellsWhetherTheDocumentWasCreated() throws Exception {
+        CompletableFuture<Boolean> created = bulkIndexer.indexIfAbsent(new Tag().id("1").name("1"), INDEX).toFuture();
+        nextBulkRequest().tryEmitValue(bulkResponse(BulkItemResponse.success(0, DocWriteRequest.OpType.CREATE, indexResponse("1"))));
+
+        assertThat(created.get(1, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Boolean> present = bulkIndexer.indexIfAbsent(new Tag().id("2").name("2"), INDEX).toFuture();
+        BulkItemResponse.Failure conflict = new BulkItemResponse.Failure(
+            INDEX.getIndexName(),
+            "_doc",
+            "2",
+            new IOException("version conflict, document already exists"),
+            RestStatus.CONFLICT
+        );
+        nextBulkRequest().tryEmitValue(bulkResponse(BulkItemResponse.failure(0, DocWriteRequest.OpType.CREATE, conflict)));
+
+        assertThat(present.get(1, TimeUnit.SECONDS)).isFalse();
+    }
+
+    private static BulkResponse bulkResponse(BulkItemResponse item) {
+        return new BulkResponse(new BulkItemResponse[] { item }, 1);
+    }
+
+    private static IndexResponse indexResponse(String id) {
+        return new IndexResponse(new ShardId(INDEX.getIndexName(), "_na_", 0), "_doc", id, 0, 1, 1, true);
+    }
+
+    private CompletableFuture<Void> index(String id) {
+        return bulkIndexer.index(new Tag().id(id).name(id), INDEX).toFuture();
+    }
+
+    private Sinks.One<BulkResponse> nextBulkRequest() throws InterruptedException {
+        Sinks.One<BulkResponse> bulkRequest = bulkRequests.poll(1, TimeUnit.SECONDS);
+        assertThat(bulkRequest).isNotNull();
+        return bulkRequest;
+    }
+}
@@ -0,0 +1,28 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class HotSuggestionsTest {
+
+    private final HotSuggestions hotSuggestions = new HotSuggestions(4);
+
+    @Test
+    void testPrefixIsCompletedFromMemory() {
+        hotSuggestions.update(List.of("Java", "Spring", "JHipster", "javascript", "Kotlin"));
+
+        assertThat(hotSuggestions.complete("ja", 2)).contains(List.of("Java", "javascript"));
+        assertThat(hotSuggestions.complete(" J", 3)).contains(List.of("Java", "JHipster", "javascript"));
+    }
+
+    @Test
+    void testSearchIsNeededWhenTooFewValuesMatch() {
+        hotSuggestions.update(List.of("Java", "Spring", "JHipster", "javascript", "Kotlin"));
+
+        assertThat(hotSuggestions.complete("ja", 3)).isEmpty();
+        // only the 4 most used values are kept
+        assertThat(hotSuggestions.complete("kot", 1)).isEmpty();
+    }
+}
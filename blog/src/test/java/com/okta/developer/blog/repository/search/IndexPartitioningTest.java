@@ -0,0 +1,71 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IndexPartitioningTest {
+
+    private final IndexPartitioning<PostSearchDocument> monthly = partitioning(IndexPartitioning.Interval.MONTH, 2);
+
+    @Test
+    void testPartitionOfDate() {
+        assertThat(monthly.partitionOf(Instant.parse("2022-04-30T23:59:59Z"))).isEqualTo("post-2022.04");
+        assertThat(monthly.nextPartitionOf(Instant.parse("2022-12-01T00:00:00Z"))).isEqualTo("post-2023.01");
+        assertThat(partitioning(IndexPartitioning.Interval.QUARTER, 2).partitionOf(Instant.parse("2022-06-15T00:00:00Z")))
+            .isEqualTo("post-2022.04");
+        assertThat(partitioning(IndexPartitioning.Interval.YEAR, 2).partitionOf(Instant.parse("2022-06-15T00:00:00Z")))
+            .isEqualTo("post-2022.01");
+    }
+
+    @Test
+    void testPartitionOfDocumentWithoutDateFails() {
+        assertThat(monthly.partitionOf(new PostSearchDocument().date(Instant.parse("2022-04-01T00:00:00Z")))).isEqualTo("post-2022.04");
+        assertThatThrownBy(() -> monthly.partitionOf(new PostSearchDocument())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testIsPartition() {
+        assertThat(monthly.isPartition("post-2022.04")).isTrue();
+        assertThat(monthly.isPartition("post-2022.04_v0")).isFalse();
+        assertThat(monthly.isPartition("post")).isFalse();
+        assertThat(monthly.isPartition("tag-2022.04")).isFalse();
+    }
+
+    @Test
+    void testPartitionsOverlapping() {
+        assertThat(monthly.partitionsOverlapping(Instant.parse("2022-03-15T00:00:00Z"), Instant.parse("2022-05-01T00:00:00Z"), 10))
+            .contains(List.of("post-2022.03", "post-2022.04"));
+        assertThat(monthly.partitionsOverlapping(Instant.parse("2022-05-01T00:00:00Z"), Instant.parse("2022-05-01T00:00:00Z"), 10))
+            .contains(List.of());
+        assertThat(monthly.partitionsOverlapping(Instant.parse("2022-01-01T00:00:00Z"), Instant.parse("2023-01-01T00:00:00Z"), 11))
+            .isEmpty();
+    }
+
+    @Test
+    void testOverlaps() {
+        assertThat(monthly.overlaps("post-2022.04", null, null)).isTrue();
+        assertThat(monthly.overlaps("post-2022.04", Instant.parse("2022-04-30T00:00:00Z"), null)).isTrue();
+        assertThat(monthly.overlaps("post-2022.04", Instant.parse("2022-05-01T00:00:00Z"), null)).isFalse();
+        assertThat(monthly.overlaps("post-2022.04", null, Instant.parse("2022-04-01T00:00:00Z"))).isFalse();
+        assertThat(monthly.overlaps("post-2022.04", Instant.parse("2022-03-01T00:00:00Z"), Instant.parse("2022-04-02T00:00:00Z")))
+            .isTrue();
+    }
+
+    @Test
+    void testIsMergeable() {
+        Instant now = Instant.parse("2022-06-15T00:00:00Z");
+        assertThat(monthly.isMergeable("post-2022.04", now)).isTrue();
+        assertThat(monthly.isMergeable("post-2022.05", now)).isFalse();
+        assertThat(monthly.isMergeable("post-2022.06", now)).isFalse();
+        assertThat(partitioning(IndexPartitioning.Interval.MONTH, 0).isMergeable("post-2020.01", now)).isFalse();
+    }
+
+    private static IndexPartitioning<PostSearchDocument> partitioning(IndexPartitioning.Interval interval, int mergeAfter) {
+        return new IndexPartitioning<>(PostSearchDocument.class, "post", interval, mergeAfter, PostSearchDocument::getDate);
+    }
+}
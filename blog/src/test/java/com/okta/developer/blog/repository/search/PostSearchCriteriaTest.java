@@ -0,0 +1,67 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import java.util.List;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.junit.jupiter.api.Test;
+
+class PostSearchCriteriaTest {
+
+    @Test
+    void testTextIsScoredAndEveryOtherCriterionIsAFilter() {
+        Instant from = Instant.parse("2022-01-01T00:00:00Z");
+        Instant to = Instant.parse("2022-02-01T00:00:00Z");
+        PostSearchCriteria criteria = new PostSearchCriteria()
+            .text(" spring data ")
+            .blogId("blog-id")
+            .tags(List.of("java", "elasticsearch"))
+            .from(from)
+            .to(to);
+
+        BoolQueryBuilder query = criteria.toQuery();
+
+        assertThat(query.must()).hasSize(1);
+        MultiMatchQueryBuilder text = (MultiMatchQueryBuilder) query.must().get(0);
+        assertThat(text.value()).isEqualTo("spring data");
+        assertThat(text.fields()).containsOnlyKeys("title", "content");
+        assertThat(query.filter())
+            .filteredOn(TermQueryBuilder.class::isInstance)
+            .extracting(filter -> ((TermQueryBuilder) filter).fieldName() + "=" + ((TermQueryBuilder) filter).value())
+            .containsExactly("blogId=blog-id", "tagNames=java", "tagNames=elasticsearch");
+        RangeQueryBuilder dateRange = (RangeQueryBuilder) query.filter().get(3);
+        assertThat(dateRange.fieldName()).isEqualTo("date");
+        assertThat(dateRange.from()).isEqualTo(from.toString());
+        assertThat(dateRange.includeLower()).isTrue();
+        assertThat(dateRange.to()).isEqualTo(to.toString());
+        assertThat(dateRange.includeUpper()).isFalse();
+    }
+
+    @Test
+    void testNoCriteriaMatchesEveryPost() {
+        BoolQueryBuilder query = new PostSearchCriteria().text(" ").toQuery();
+
+        assertThat(query.must()).isEmpty();
+        assertThat(query.filter()).isEmpty();
+    }
+
+    @Test
+    void testEmptyDateRangeIsRejected() {
+        Instant date = Instant.parse("2022-01-01T00:00:00Z");
+        PostSearchCriteria criteria = new PostSearchCriteria().from(date).to(date);
+
+        assertThatThrownBy(criteria::toQuery).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testEquals() {
+        assertThat(new PostSearchCriteria().text("a").tags(List.of("b")))
+            .isEqualTo(new PostSearchCriteria().text("a").tags(List.of("b")))
+            .isNotEqualTo(new PostSearchCriteria().text("a").tags(List.of("c")));
+    }
+}
@@ -0,0 +1,33 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SearchCursorTest {
+
+    @Test
+    void testEncodeDecode() {
+        SearchCursor cursor = new SearchCursor("pit-id", List.of(1.5, 1650000000000L, "post-id"));
+
+        SearchCursor decoded = SearchCursor.decode(cursor.encode());
+
+        assertThat(decoded.getPointInTimeId()).isEqualTo("pit-id");
+        assertThat(decoded.getSearchAfter()).containsExactly(1.5, 1650000000000L, "post-id");
+    }
+
+    @Test
+    void testEncodedCursorIsUrlSafe() {
+        SearchCursor cursor = new SearchCursor("a+b/c==", List.of("???>>>"));
+
+        assertThat(cursor.encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void testDecodeInvalidCursor() {
+        assertThatThrownBy(() -> SearchCursor.decode("not a cursor")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchCursor.decode("e30")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,67 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+class SearchQueryGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SearchQueryGuard searchQueryGuard = new SearchQueryGuard(100, 4, 2, 10, 50, Duration.ofSeconds(1), 1000, meterRegistry);
+
+    @Test
+    void testReasonableQueriesAreAccepted() {
+        assertThat(searchQueryGuard.queryStringQuery("title:(elastic* AND search~) -draft").fuzzyMaxExpansions()).isEqualTo(10);
+        assertThat(searchQueryGuard.queryStringQuery("\"*not a wildcard*\" date:[2022-01-01 TO *]").allowLeadingWildcard()).isFalse();
+        assertThat(searchQueryGuard.queryStringQuery("a\\*b OR c AND d")).isNotNull();
+    }
+
+    @Test
+    void testExpensiveQueriesAreRejected() {
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("*search")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("title:?earch")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("content:/sea.*h/")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("a b c d e")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("(a OR (b AND (c)))")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchQueryGuard.queryStringQuery("a".repeat(101))).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(meterRegistry.get("search.query.rejected").tag("reason", "leading_wildcard").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("search.query.rejected").tag("reason", "regexp").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testSearchIsLimited() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        searchQueryGuard.limit(source);
+
+        assertThat(source.timeout()).isEqualTo(TimeValue.timeValueSeconds(1));
+        assertThat(source.terminateAfter()).isEqualTo(1000);
+        assertThat(searchQueryGuard.pageSize(20)).isEqualTo(20);
+        assertThat(searchQueryGuard.pageSize(1000)).isEqualTo(50);
+    }
+
+    @Test
+    void testPaginatedSearchIsOnlyLimitedInTime() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        searchQueryGuard.limitTime(source);
+
+        assertThat(source.timeout()).isEqualTo(TimeValue.timeValueSeconds(1));
+        assertThat(source.terminateAfter()).isZero();
+    }
+
+    @Test
+    void testPageableIsCapped() {
+        Sort sort = Sort.by("date");
+
+        assertThat(searchQueryGuard.pageable(PageRequest.of(3, 20, sort))).isEqualTo(PageRequest.of(3, 20, sort));
+        assertThat(searchQueryGuard.pageable(PageRequest.of(3, 1000, sort))).isEqualTo(PageRequest.of(3, 50, sort));
+    }
+}
@@ -0,0 +1,140 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class SearchResultCacheTest {
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    private final SearchResultCache<String> cache = new SearchResultCache<>(2, Duration.ofSeconds(10), ticker::get);
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private final Supplier<Mono<SearchResult<String>>> search = () ->
+        Mono.fromCallable(() -> {
+            searches.incrementAndGet();
+            return emptyResult();
+        });
+
+    @Test
+    void testResultIsCached() {
+        SearchResult<String> result = cache.get("a", search).block();
+
+        assertThat(cache.get("a", search).block()).isSameAs(result);
+        assertThat(searches).hasValue(1);
+    }
+
+    @Test
+    void testConcurrentMissesShareOneSearch() {
+        Sinks.One<SearchResult<String>> response = Sinks.one();
+        Supplier<Mono<SearchResult<String>>> pendingSearch = () -> Mono.defer(() -> {
+            searches.incrementAndGet();
+            return response.asMono();
+        });
+
+        Mono<SearchResult<String>> first = cache.get("a", pendingSearch);
+        Mono<SearchResult<String>> second = cache.get("a", pendingSearch);
+        AtomicInteger completed = new AtomicInteger();
+        first.subscribe(result -> completed.incrementAndGet());
+        second.subscribe(result -> completed.incrementAndGet());
+        response.tryEmitValue(emptyResult());
+
+        assertThat(searches).hasValue(1);
+        assertThat(completed).hasValue(2);
+    }
+
+    @Test
+    void testPartialResultIsNotCached() {
+        Supplier<Mono<SearchResult<String>>> partialSearch = () ->
+            Mono.fromCallable(() -> {
+                searches.incrementAndGet();
+                return SearchResult.partial(
+                    new SearchHitsImpl<>(0, TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO, 0, null, List.of(), null, null),
+                    1L
+                );
+            });
+
+        cache.get("a", partialSearch).block();
+        cache.get("a", partialSearch).block();
+
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    void testInvalidateAllReloads() {
+        cache.get("a", search).block();
+
+        cache.invalidateAll();
+        cache.get("a", search).block();
+
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    void testExpiredResultIsReloaded() {
+        cache.get("a", search).block();
+
+        ticker.addAndGet(Duration.ofSeconds(10).toNanos());
+        cache.get("a", search).block();
+
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsEvicted() {
+        cache.get("a", search).block();
+        cache.get("b", search).block();
+        cache.get("a", search).block();
+        cache.get("c", search).block();
+
+        cache.get("a", search).block();
+        assertThat(searches).hasValue(3);
+        cache.get("b", search).block();
+        assertThat(searches).hasValue(4);
+    }
+
+    @Test
+    void testFailedSearchIsNotCached() {
+        Mono<SearchResult<String>> failed = cache.get("a", () -> Mono.error(new IllegalStateException()));
+        failed.onErrorResume(e -> Mono.empty()).block();
+
+        cache.get("a", search).block();
+
+        assertThat(searches).hasValue(1);
+    }
+
+    @Test
+    void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new SearchResultCache.Metrics(cache, "test", Tags.empty()).bindTo(registry);
+
+        cache.get("a", search).block();
+        cache.get("a", search).block();
+        cache.get("b", search).block();
+        cache.get("c", search).block();
+        cache.invalidateAll();
+
+        assertThat(registry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get("cache.evictions").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.size").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("cache.invalidations").functionCounter().count()).isEqualTo(1);
+    }
+
+    private static SearchResult<String> emptyResult() {
+        return new SearchResult<>(new SearchHitsImpl<>(0, TotalHitsRelation.EQUAL_TO, 0, null, List.of(), null, null), 1L);
+    }
+}
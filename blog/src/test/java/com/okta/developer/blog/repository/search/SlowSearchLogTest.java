@@ -0,0 +1,31 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class SlowSearchLogTest {
+
+    private final SlowSearchLog slowSearchLog = new SlowSearchLog(Duration.ofMillis(500), 2);
+
+    @Test
+    void testSearchIsSlowFromThreshold() {
+        assertThat(slowSearchLog.isSlow(Duration.ofMillis(499))).isFalse();
+        assertThat(slowSearchLog.isSlow(Duration.ofMillis(500))).isTrue();
+        assertThat(new SlowSearchLog(Duration.ZERO, 2).isSlow(Duration.ofSeconds(10))).isFalse();
+    }
+
+    @Test
+    void testLatestSlowSearchesAreKept() {
+        slowSearchLog.record(entry("post", 600));
+        slowSearchLog.record(entry("tag", 700));
+        slowSearchLog.record(entry("blog", 800));
+
+        assertThat(slowSearchLog.getEntries()).extracting(SlowSearchLog.Entry::getIndex).containsExactly("blog", "tag");
+    }
+
+    private static SlowSearchLog.Entry entry(String index, long latencyMillis) {
+        return new SlowSearchLog.Entry("search", index, "{}", 0, 10, "[]", Duration.ofMillis(latencyMillis), 10, 1, "admin");
+    }
+}
@@ -0,0 +1,74 @@
+package com.okta.developer.blog.repository.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+class SortToFieldSortBuilderConverterTest {
+
+    private static final Map<String, Object> MAPPING = Map.of(
+        "properties",
+        Map.of(
+            "id",
+            Map.of("type", "keyword"),
+            "title",
+            Map.of("type", "text", "fields", Map.of("keyword", Map.of("type", "keyword"))),
+            "content",
+            Map.of("type", "text"),
+            "date",
+            Map.of("type", "date"),
+            "imageUrl",
+            Map.of("type", "keyword", "doc_values", false),
+            "blog",
+            Map.of(
+                "type",
+                "object",
+                "properties",
+                Map.of("name", Map.of("type", "text", "fields", Map.of("keyword", Map.of("type", "keyword"))))
+            )
+        )
+    );
+
+    private final SortToFieldSortBuilderConverter converter = new SortToFieldSortBuilderConverter(MAPPING);
+
+    @Test
+    void testFieldsWithDocValuesAreSortedOnDirectly() {
+        List<FieldSortBuilder> builders = converter.convert(Sort.by(Sort.Order.desc("date"), Sort.Order.asc("id")));
+
+        assertThat(builders).extracting(FieldSortBuilder::getFieldName).containsExactly("date", "id");
+        assertThat(builders).extracting(FieldSortBuilder::order).containsExactly(SortOrder.DESC, SortOrder.ASC);
+    }
+
+    @Test
+    void testTextFieldsAreSortedOnTheirKeywordSubField() {
+        List<FieldSortBuilder> builders = converter.convert(Sort.by("title", "blog.name"));
+
+        assertThat(builders).extracting(FieldSortBuilder::getFieldName).containsExactly("title.keyword", "blog.name.keyword", "id");
+    }
+
+    @Test
+    void testIdIsAppendedAsTiebreaker() {
+        List<FieldSortBuilder> builders = converter.convert(Sort.by(Sort.Order.desc("date")));
+
+        assertThat(builders).extracting(FieldSortBuilder::getFieldName).containsExactly("date", "id");
+        assertThat(builders).extracting(FieldSortBuilder::order).containsExactly(SortOrder.DESC, SortOrder.ASC);
+        assertThat(converter.convert(Sort.by(Sort.Order.desc("id"), Sort.Order.asc("date"))))
+            .extracting(FieldSortBuilder::getFieldName)
+            .containsExactly("id", "date");
+        assertThat(converter.convert(Sort.unsorted())).isEmpty();
+    }
+
+    @Test
+    void testFieldsThatCannotBeSortedOnAreRejected() {
+        assertThatThrownBy(() -> converter.convert(Sort.by("content"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> converter.convert(Sort.by("imageUrl"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> converter.convert(Sort.by("unknown"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> converter.convert(Sort.by("blog"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.okta.developer.blog.service.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.okta.developer.blog.domain.Blog;
+import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Unit tests for {@link PostSearchDocumentMapper}.
+ */
+class PostSearchDocumentMapperTest {
+
+    private PostSearchDocumentMapper postSearchDocumentMapper;
+    private Post post;
+
+    @BeforeEach
+    public void init() {
+        postSearchDocumentMapper = new PostSearchDocumentMapper();
+        post =
+            new Post()
+                .id("post-id")
+                .title("title")
+                .content("content")
+                .excerpt("excerpt")
+                .date(Instant.ofEpochSecond(0))
+                .blog(new Blog().id("blog-id").name("name").handle("handle"))
+                .addTag(new Tag().id("tag-1").name("spring"))
+                .addTag(new Tag().id("tag-2").name("java"));
+    }
+
+    @Test
+    void postToPostSearchDocumentFlattensBlogAndTags() {
+        PostSearchDocument document = postSearchDocumentMapper.postToPostSearchDocument(post);
+
+        assertThat(document.getId()).isEqualTo("post-id");
+        assertThat(document.getExcerpt()).isEqualTo("excerpt");
+        assertThat(document.getBlogId()).isEqualTo("blog-id");
+        assertThat(document.getBlogName()).isEqualTo("name");
+        assertThat(document.getBlogHandle()).isEqualTo("handle");
+        assertThat(document.getTagNames()).containsExactly("java", "spring");
+    }
+
+    @Test
+    void postSearchDocumentToPostRebuildsPartialBlogAndTags() {
+        Post result = postSearchDocumentMapper.postSearchDocumentToPost(postSearchDocumentMapper.postToPostSearchDocument(post));
+
+        assertThat(result.getTitle()).isEqualTo("title");
+        assertThat(result.getDate()).isEqualTo(Instant.ofEpochSecond(0));
+        assertThat(result.getBlog().getId()).isEqualTo("blog-id");
+        assertThat(result.getBlog().getName()).isEqualTo("name");
+        assertThat(result.getTags()).extracting(Tag::getName).containsExactlyInAnyOrder("java", "spring");
+    }
+
+    @Test
+    void entityPropertiesAreTranslatedToDocumentFields() {
+        Sort sort = postSearchDocumentMapper.toDocumentSort(Sort.by(Sort.Order.asc("blog.name"), Sort.Order.desc("date")));
+
+        assertThat(sort).containsExactly(Sort.Order.asc("blogName"), Sort.Order.desc("date"));
+        assertThat(postSearchDocumentMapper.toDocumentFields(List.of("title", "blog", "blog.id", "tags.name")))
+            .containsExactly("title", "blogId", "blogName", "blogHandle", "tagNames");
+    }
+
+    @Test
+    void unknownPropertiesAreRejected() {
+        assertThatThrownBy(() -> postSearchDocumentMapper.toDocumentFields(List.of("title", "blogId")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("blogId");
+    }
+}
@@ -11,6 +11,7 @@ import com.okta.developer.blog.domain.Blog;
 import com.okta.developer.blog.repository.BlogRepository;
 import com.okta.developer.blog.repository.UserRepository;
 import com.okta.developer.blog.repository.search.BlogSearchRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
 import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
@@ -60,6 +61,14 @@ class BlogResourceIT {
     @Autowired
     private BlogSearchRepository mockBlogSearchRepository;
 
+    /**
+     * This indexer is mocked in the com.okta.developer.blog.repository.search test package.
+     *
+     * @see com.okta.developer.blog.repository.search.ElasticsearchBulkIndexerMockConfiguration
+     */
+    @Autowired
+    private ElasticsearchBulkIndexer mockElasticsearchBulkIndexer;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -101,8 +110,8 @@ class BlogResourceIT {
     @Test
     void createBlog() throws Exception {
         int databaseSizeBeforeCreate = blogRepository.findAll().collectList().block().size();
-        // Configure the mock search repository
-        when(mockBlogSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Create the Blog
         webTestClient
             .post()
@@ -121,7 +130,7 @@ class BlogResourceIT {
         assertThat(testBlog.getHandle()).isEqualTo(DEFAULT_HANDLE);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(1)).save(testBlog);
+        verify(mockElasticsearchBulkIndexer, times(1)).index(testBlog);
     }
 
     @Test
@@ -146,7 +155,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeCreate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
@@ -280,8 +289,8 @@ class BlogResourceIT {
 
     @Test
     void putNewBlog() throws Exception {
-        // Configure the mock search repository
-        when(mockBlogSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         blogRepository.save(blog).block();
 
@@ -308,7 +317,7 @@ class BlogResourceIT {
         assertThat(testBlog.getHandle()).isEqualTo(UPDATED_HANDLE);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository).save(testBlog);
+        verify(mockElasticsearchBulkIndexer).index(testBlog);
     }
 
     @Test
@@ -331,7 +340,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
@@ -354,7 +363,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
@@ -377,11 +386,13 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
     void partialUpdateBlogWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         blogRepository.save(blog).block();
 
@@ -412,6 +423,8 @@ class BlogResourceIT {
 
     @Test
     void fullUpdateBlogWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         blogRepository.save(blog).block();
 
@@ -460,7 +473,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
@@ -483,7 +496,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
@@ -506,14 +519,14 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(0)).save(blog);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(blog);
     }
 
     @Test
     void deleteBlog() {
-        // Configure the mock search repository
-        when(mockBlogSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
-        when(mockBlogSearchRepository.deleteById(anyString())).thenReturn(Mono.empty());
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
+        when(mockElasticsearchBulkIndexer.delete(anyString(), any())).thenReturn(Mono.empty());
         // Initialize the database
         blogRepository.save(blog).block();
 
@@ -533,7 +546,7 @@ class BlogResourceIT {
         assertThat(blogList).hasSize(databaseSizeBeforeDelete - 1);
 
         // Validate the Blog in Elasticsearch
-        verify(mockBlogSearchRepository, times(1)).deleteById(blog.getId());
+        verify(mockElasticsearchBulkIndexer, times(1)).delete(blog.getId(), Blog.class);
     }
 
     @Test
@@ -542,7 +555,7 @@ class BlogResourceIT {
         when(mockBlogSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
         // Initialize the database
         blogRepository.save(blog).block();
-        when(mockBlogSearchRepository.search("id:" + blog.getId())).thenReturn(Flux.just(blog));
+        when(mockBlogSearchRepository.search("id:" + blog.getId(), List.of())).thenReturn(Flux.just(blog));
 
         // Search the blog
         webTestClient
@@ -561,4 +574,26 @@ class BlogResourceIT {
             .jsonPath("$.[*].handle")
             .value(hasItem(DEFAULT_HANDLE));
     }
+
+    @Test
+    void streamBlogs() {
+        // Configure the mock search repository
+        when(mockBlogSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        blogRepository.save(blog).block();
+        when(mockBlogSearchRepository.stream("id:" + blog.getId(), List.of())).thenReturn(Flux.just(blog));
+
+        // Stream the blogs
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + blog.getId())
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectBodyList(Blog.class)
+            .value(blogs -> assertThat(blogs).extracting(Blog::getHandle).containsExactly(DEFAULT_HANDLE));
+    }
 }
@@ -1,31 +1,50 @@
 package com.okta.developer.blog.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
 import com.okta.developer.blog.IntegrationTest;
 import com.okta.developer.blog.domain.Post;
+import com.okta.developer.blog.domain.search.PostSearchDocument;
 import com.okta.developer.blog.repository.PostRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.PostSearchCriteria;
 import com.okta.developer.blog.repository.search.PostSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResult;
+import com.okta.developer.blog.repository.search.SearchUnavailableException;
 import com.okta.developer.blog.service.PostService;
+import com.okta.developer.blog.service.mapper.PostSearchDocumentMapper;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.clients.elasticsearch7.ElasticsearchAggregations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -72,6 +91,17 @@ class PostResourceIT {
     @Autowired
     private PostSearchRepository mockPostSearchRepository;
 
+    /**
+     * This indexer is mocked in the com.okta.developer.blog.repository.search test package.
+     *
+     * @see com.okta.developer.blog.repository.search.ElasticsearchBulkIndexerMockConfiguration
+     */
+    @Autowired
+    private ElasticsearchBulkIndexer mockElasticsearchBulkIndexer;
+
+    @Autowired
+    private PostSearchDocumentMapper postSearchDocumentMapper;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -113,8 +143,8 @@ class PostResourceIT {
     @Test
     void createPost() throws Exception {
         int databaseSizeBeforeCreate = postRepository.findAll().collectList().block().size();
-        // Configure the mock search repository
-        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Create the Post
         webTestClient
             .post()
@@ -134,7 +164,9 @@ class PostResourceIT {
         assertThat(testPost.getDate()).isEqualTo(DEFAULT_DATE);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(1)).save(testPost);
+        ArgumentCaptor<Object> indexed = ArgumentCaptor.forClass(Object.class);
+        verify(mockElasticsearchBulkIndexer, times(1)).index(indexed.capture());
+        assertThat(indexed.getValue()).usingRecursiveComparison().isEqualTo(postSearchDocumentMapper.postToPostSearchDocument(testPost));
     }
 
     @Test
@@ -159,7 +191,7 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeCreate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -230,6 +262,28 @@ class PostResourceIT {
             .value(hasItem(DEFAULT_DATE.toString()));
     }
 
+    @Test
+    void getAllPostsWithFields() {
+        // Initialize the database
+        postRepository.save(post).block();
+
+        // Get the title and date of all the posts
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?sort=id,desc&fields=title,date")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[?(@.id == '" + post.getId() + "')].title")
+            .value(hasItem(DEFAULT_TITLE))
+            .jsonPath("$.[?(@.id == '" + post.getId() + "')].date")
+            .value(hasItem(DEFAULT_DATE.toString()))
+            .jsonPath("$.[?(@.id == '" + post.getId() + "')].content")
+            .value(hasItem(nullValue()));
+    }
+
     @SuppressWarnings({ "unchecked" })
     void getAllPostsWithEagerRelationshipsIsEnabled() {
         when(postServiceMock.findAllWithEagerRelationships(any())).thenReturn(Flux.empty());
@@ -288,8 +342,8 @@ class PostResourceIT {
 
     @Test
     void putNewPost() throws Exception {
-        // Configure the mock search repository
-        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.update(any(), any())).thenReturn(Mono.empty());
         // Initialize the database
         postRepository.save(post).block();
 
@@ -317,7 +371,9 @@ class PostResourceIT {
         assertThat(testPost.getDate()).isEqualTo(UPDATED_DATE);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository).save(testPost);
+        ArgumentCaptor<Object> indexed = ArgumentCaptor.forClass(Object.class);
+        verify(mockElasticsearchBulkIndexer).update(indexed.capture(), any());
+        assertThat(indexed.getValue()).usingRecursiveComparison().isEqualTo(postSearchDocumentMapper.postToPostSearchDocument(testPost));
     }
 
     @Test
@@ -340,7 +396,7 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -363,7 +419,7 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -386,11 +442,13 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
     void partialUpdatePostWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.update(any(), any())).thenReturn(Mono.empty());
         // Initialize the database
         postRepository.save(post).block();
 
@@ -415,11 +473,14 @@ class PostResourceIT {
         Post testPost = postList.get(postList.size() - 1);
         assertThat(testPost.getTitle()).isEqualTo(DEFAULT_TITLE);
         assertThat(testPost.getContent()).isEqualTo(DEFAULT_CONTENT);
+        assertThat(testPost.getExcerpt()).isEqualTo(DEFAULT_CONTENT);
         assertThat(testPost.getDate()).isEqualTo(DEFAULT_DATE);
     }
 
     @Test
     void fullUpdatePostWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.update(any(), any())).thenReturn(Mono.empty());
         // Initialize the database
         postRepository.save(post).block();
 
@@ -469,7 +530,7 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -492,7 +553,7 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -515,14 +576,13 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(0)).save(post);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
     void deletePost() {
-        // Configure the mock search repository
-        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
-        when(mockPostSearchRepository.deleteById(anyString())).thenReturn(Mono.empty());
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.delete(any())).thenReturn(Mono.empty());
         // Initialize the database
         postRepository.save(post).block();
 
@@ -542,17 +602,19 @@ class PostResourceIT {
         assertThat(postList).hasSize(databaseSizeBeforeDelete - 1);
 
         // Validate the Post in Elasticsearch
-        verify(mockPostSearchRepository, times(1)).deleteById(post.getId());
+        ArgumentCaptor<Object> deleted = ArgumentCaptor.forClass(Object.class);
+        verify(mockElasticsearchBulkIndexer, times(1)).delete(deleted.capture());
+        assertThat(deleted.getValue()).usingRecursiveComparison().isEqualTo(postSearchDocumentMapper.postToPostSearchDocument(post));
     }
 
     @Test
     void searchPost() {
         // Configure the mock search repository
         when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
-        when(mockPostSearchRepository.count()).thenReturn(Mono.just(1L));
         // Initialize the database
         postRepository.save(post).block();
-        when(mockPostSearchRepository.search("id:" + post.getId(), PageRequest.of(0, 20))).thenReturn(Flux.just(post));
+        when(mockPostSearchRepository.search("id:" + post.getId(), PageRequest.of(0, 20), List.of()))
+            .thenReturn(Mono.just(TestUtil.searchResultOf(postSearchDocumentMapper.postToPostSearchDocument(post))));
 
         // Search the post
         webTestClient
@@ -562,6 +624,8 @@ class PostResourceIT {
             .expectStatus()
             .isOk()
             .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectHeader()
             .contentType(MediaType.APPLICATION_JSON)
             .expectBody()
             .jsonPath("$.[*].id")
@@ -573,4 +637,262 @@ class PostResourceIT {
             .jsonPath("$.[*].date")
             .value(hasItem(DEFAULT_DATE.toString()));
     }
+
+    @Test
+    void streamPosts() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        when(mockPostSearchRepository.stream("id:" + post.getId(), Sort.unsorted(), List.of()))
+            .thenReturn(Flux.just(postSearchDocumentMapper.postToPostSearchDocument(post)));
+
+        // Stream the posts
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + post.getId())
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectBodyList(Post.class)
+            .value(posts -> assertThat(posts).extracting(Post::getTitle).containsExactly(DEFAULT_TITLE));
+    }
+
+    @Test
+    void searchPostWithCursor() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        PostSearchDocument document = postSearchDocumentMapper.postToPostSearchDocument(post);
+        SearchResult<PostSearchDocument> searchResult = new SearchResult<>(
+            TestUtil.searchResultOf(document).getSearchHits(),
+            1L,
+            "next-cursor"
+        );
+        when(mockPostSearchRepository.searchAfter("id:" + post.getId(), Sort.unsorted(), 20, null, List.of()))
+            .thenReturn(Mono.just(searchResult));
+
+        // Search the first page of posts
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + post.getId() + "&cursor=")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Next-Cursor", "next-cursor")
+            .expectHeader()
+            .value(HttpHeaders.LINK, containsString("cursor=next-cursor"))
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(post.getId()));
+    }
+
+    @Test
+    void searchPostWithFields() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        PostSearchDocument projectedPost = new PostSearchDocument().id(post.getId()).title(post.getTitle());
+        when(mockPostSearchRepository.search("id:" + post.getId(), PageRequest.of(0, 20), List.of("title")))
+            .thenReturn(Mono.just(TestUtil.searchResultOf(projectedPost)));
+
+        // Search the title of the post
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + post.getId() + "&fields=title")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*].title")
+            .value(hasItem(DEFAULT_TITLE))
+            .jsonPath("$.[*].content")
+            .value(hasItem(nullValue()));
+    }
+
+    @Test
+    void searchPostWithUnknownField() {
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + post.getId() + "&fields=title,secret")
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        verify(mockPostSearchRepository, never()).search(anyString(), any(Pageable.class), anyList());
+    }
+
+    @Test
+    void searchPostHighlighted() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        PostSearchDocument hitPost = new PostSearchDocument().id(post.getId()).title(post.getTitle()).date(post.getDate());
+        SearchHit<PostSearchDocument> searchHit = new SearchHit<>(
+            null,
+            post.getId(),
+            null,
+            1.0f,
+            null,
+            Map.of("content", List.of("<em>AAAAAAAAAA</em>")),
+            hitPost
+        );
+        SearchResult<PostSearchDocument> searchResult = new SearchResult<>(
+            new SearchHitsImpl<>(1, TotalHitsRelation.EQUAL_TO, 1.0f, null, List.of(searchHit), null, null),
+            1L
+        );
+        when(mockPostSearchRepository.searchHighlighted("AAAAAAAAAA", PageRequest.of(0, 20))).thenReturn(Mono.just(searchResult));
+
+        // Search the post with highlights
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=AAAAAAAAAA&highlight=true")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(post.getId()))
+            .jsonPath("$.[*].title")
+            .value(hasItem(DEFAULT_TITLE))
+            .jsonPath("$.[*].highlights.content[0]")
+            .value(hasItem("<em>AAAAAAAAAA</em>"))
+            .jsonPath("$.[*].content")
+            .doesNotExist();
+    }
+
+    @Test
+    void searchPostByCriteria() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        PostSearchCriteria criteria = new PostSearchCriteria()
+            .text("AAAAAAAAAA")
+            .blogId("blog-id")
+            .tags(List.of("java"))
+            .from(DEFAULT_DATE.minus(30, ChronoUnit.DAYS));
+        when(mockPostSearchRepository.search(criteria, PageRequest.of(0, 20), List.of()))
+            .thenReturn(Mono.just(TestUtil.searchResultOf(postSearchDocumentMapper.postToPostSearchDocument(post))));
+
+        // Search the post
+        webTestClient
+            .get()
+            .uri(
+                ENTITY_SEARCH_API_URL +
+                "/filter?text=AAAAAAAAAA&blogId=blog-id&tags=java&from=" +
+                DEFAULT_DATE.minus(30, ChronoUnit.DAYS).toString()
+            )
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(post.getId()));
+    }
+
+    @Test
+    void searchPostByCriteriaWhenElasticsearchIsUnavailable() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        postRepository.save(post).block();
+        PostSearchCriteria criteria = new PostSearchCriteria().text("AAAAAAAAAA");
+        when(mockPostSearchRepository.search(criteria, PageRequest.of(0, 20), List.of()))
+            .thenReturn(Mono.error(new SearchUnavailableException("Elasticsearch is failing")));
+
+        // Search the post in the database
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "/filter?text=AAAAAAAAAA")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Search-Degraded", "true")
+            .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(post.getId()));
+    }
+
+    @Test
+    void getPostFacets() {
+        PostSearchCriteria criteria = new PostSearchCriteria().text("AAAAAAAAAA");
+        Aggregations aggregations = new Aggregations(
+            List.of(
+                aggregationOf(PostSearchRepository.TAGS_AGGREGATION, "java", 2),
+                aggregationOf(PostSearchRepository.BLOGS_AGGREGATION, "blog-id", 3),
+                aggregationOf(PostSearchRepository.DATES_AGGREGATION, "2022-01-01T00:00:00.000Z", 3)
+            )
+        );
+        SearchResult<PostSearchDocument> searchResult = new SearchResult<>(
+            new SearchHitsImpl<>(3, TotalHitsRelation.EQUAL_TO, 0, null, List.of(), new ElasticsearchAggregations(aggregations), null),
+            1L
+        );
+        when(mockPostSearchRepository.aggregate(criteria, "month", 10)).thenReturn(Mono.just(searchResult));
+
+        // Get the facets of the posts
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "/facets?text=AAAAAAAAAA")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.total")
+            .isEqualTo(3)
+            .jsonPath("$.tags[0].key")
+            .isEqualTo("java")
+            .jsonPath("$.tags[0].count")
+            .isEqualTo(2)
+            .jsonPath("$.blogs[0].key")
+            .isEqualTo("blog-id")
+            .jsonPath("$.dates[0].key")
+            .isEqualTo("2022-01-01T00:00:00.000Z");
+    }
+
+    private static MultiBucketsAggregation aggregationOf(String name, String key, long count) {
+        MultiBucketsAggregation.Bucket bucket = mock(MultiBucketsAggregation.Bucket.class);
+        when(bucket.getKeyAsString()).thenReturn(key);
+        when(bucket.getDocCount()).thenReturn(count);
+        MultiBucketsAggregation aggregation = mock(MultiBucketsAggregation.class);
+        when(aggregation.getName()).thenReturn(name);
+        doReturn(List.of(bucket)).when(aggregation).getBuckets();
+        return aggregation;
+    }
+
+    @Test
+    void suggestPosts() {
+        // Configure the mock search repository
+        when(mockPostSearchRepository.suggestTitles("AAA", 10)).thenReturn(Mono.just(List.of(DEFAULT_TITLE)));
+
+        // Suggest the title of the post
+        webTestClient
+            .get()
+            .uri("/api/_suggest/posts?prefix=AAA")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*]")
+            .value(hasItem(DEFAULT_TITLE));
+    }
+
+    @Test
+    void suggestPostsWithTooManySuggestions() {
+        webTestClient.get().uri("/api/_suggest/posts?prefix=AAA&size=1000").exchange().expectStatus().isBadRequest();
+    }
 }
@@ -0,0 +1,89 @@
+package com.okta.developer.blog.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.blog.repository.search.SearchResult;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+class SearchPaginationUtilTest {
+
+    private static final String BASE_URL = "/api/_search/posts?query=search";
+
+    @Test
+    void testExactTotalHasLastLink() {
+        PageImpl<String> page = new PageImpl<>(List.of("a", "b"), PageRequest.of(1, 2), 6);
+
+        HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+            UriComponentsBuilder.fromUriString(BASE_URL),
+            page,
+            TotalHitsRelation.EQUAL_TO
+        );
+
+        assertThat(headers.getFirst("X-Total-Count")).isEqualTo("6");
+        assertThat(headers.getFirst("X-Total-Count-Relation")).isEqualTo("eq");
+        assertThat(headers.getFirst(HttpHeaders.LINK)).contains("rel=\"next\"", "rel=\"prev\"", "rel=\"last\"", "rel=\"first\"");
+    }
+
+    @Test
+    void testLowerBoundTotalHasNoLastLink() {
+        PageImpl<String> page = new PageImpl<>(List.of("a", "b"), PageRequest.of(4, 2), 10);
+
+        HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+            UriComponentsBuilder.fromUriString(BASE_URL),
+            page,
+            TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO
+        );
+
+        assertThat(headers.getFirst("X-Total-Count")).isEqualTo("10");
+        assertThat(headers.getFirst("X-Total-Count-Relation")).isEqualTo("gte");
+        assertThat(headers.getFirst(HttpHeaders.LINK))
+            .isEqualTo(
+                "<" +
+                BASE_URL +
+                "&page=5&size=2>; rel=\"next\",<" +
+                BASE_URL +
+                "&page=3&size=2>; rel=\"prev\",<" +
+                BASE_URL +
+                "&page=0&size=2>; rel=\"first\""
+            );
+    }
+
+    @Test
+    void testLowerBoundTotalHasNoNextLinkAfterAPartialPage() {
+        PageImpl<String> page = new PageImpl<>(Collections.singletonList("a"), PageRequest.of(0, 2), 1);
+
+        HttpHeaders headers = SearchPaginationUtil.generateSearchPaginationHttpHeaders(
+            UriComponentsBuilder.fromUriString(BASE_URL),
+            page,
+            TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO
+        );
+
+        assertThat(headers.getFirst(HttpHeaders.LINK)).isEqualTo("<" + BASE_URL + "&page=0&size=2>; rel=\"first\"");
+    }
+
+    @Test
+    void testCursorLinkIsEncoded() {
+        SearchResult<String> result = new SearchResult<>(
+            new SearchHitsImpl<>(3, TotalHitsRelation.EQUAL_TO, Float.NaN, null, List.of(), null, null),
+            1,
+            "next-cursor"
+        );
+
+        HttpHeaders headers = SearchPaginationUtil.generateCursorPaginationHttpHeaders(
+            UriComponentsBuilder.fromUriString("/api/_search/posts?query=a,b;c&cursor="),
+            result
+        );
+
+        assertThat(headers.getFirst("X-Next-Cursor")).isEqualTo("next-cursor");
+        assertThat(headers.getFirst(HttpHeaders.LINK))
+            .isEqualTo("</api/_search/posts?query=a%2Cb%3Bc&cursor=next-cursor>; rel=\"next\"");
+    }
+}
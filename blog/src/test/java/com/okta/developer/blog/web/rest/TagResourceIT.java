@@ -1,27 +1,39 @@
 package com.okta.developer.blog.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
 import com.okta.developer.blog.IntegrationTest;
+import com.okta.developer.blog.domain.Post;
 import com.okta.developer.blog.domain.Tag;
+import com.okta.developer.blog.domain.search.TagSearchDocument;
+import com.okta.developer.blog.repository.PostRepository;
 import com.okta.developer.blog.repository.TagRepository;
+import com.okta.developer.blog.repository.search.ElasticsearchBulkIndexer;
+import com.okta.developer.blog.repository.search.PostSearchRepository;
+import com.okta.developer.blog.repository.search.SearchResult;
 import com.okta.developer.blog.repository.search.TagSearchRepository;
+import com.okta.developer.blog.service.mapper.TagSearchDocumentMapper;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -47,6 +59,9 @@ class TagResourceIT {
     @Autowired
     private TagRepository tagRepository;
 
+    @Autowired
+    private PostRepository postRepository;
+
     /**
      * This repository is mocked in the com.okta.developer.blog.repository.search test package.
      *
@@ -55,6 +70,25 @@ class TagResourceIT {
     @Autowired
     private TagSearchRepository mockTagSearchRepository;
 
+    /**
+     * This repository is mocked in the com.okta.developer.blog.repository.search test package.
+     *
+     * @see com.okta.developer.blog.repository.search.PostSearchRepositoryMockConfiguration
+     */
+    @Autowired
+    private PostSearchRepository mockPostSearchRepository;
+
+    /**
+     * This indexer is mocked in the com.okta.developer.blog.repository.search test package.
+     *
+     * @see com.okta.developer.blog.repository.search.ElasticsearchBulkIndexerMockConfiguration
+     */
+    @Autowired
+    private ElasticsearchBulkIndexer mockElasticsearchBulkIndexer;
+
+    @Autowired
+    private TagSearchDocumentMapper tagSearchDocumentMapper;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -96,8 +130,8 @@ class TagResourceIT {
     @Test
     void createTag() throws Exception {
         int databaseSizeBeforeCreate = tagRepository.findAll().collectList().block().size();
-        // Configure the mock search repository
-        when(mockTagSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Create the Tag
         webTestClient
             .post()
@@ -115,7 +149,9 @@ class TagResourceIT {
         assertThat(testTag.getName()).isEqualTo(DEFAULT_NAME);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(1)).save(testTag);
+        ArgumentCaptor<Object> indexed = ArgumentCaptor.forClass(Object.class);
+        verify(mockElasticsearchBulkIndexer, times(1)).index(indexed.capture());
+        assertThat(indexed.getValue()).usingRecursiveComparison().isEqualTo(tagSearchDocumentMapper.tagToTagSearchDocument(testTag));
     }
 
     @Test
@@ -140,7 +176,7 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeCreate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -222,8 +258,8 @@ class TagResourceIT {
 
     @Test
     void putNewTag() throws Exception {
-        // Configure the mock search repository
-        when(mockTagSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         tagRepository.save(tag).block();
 
@@ -249,7 +285,9 @@ class TagResourceIT {
         assertThat(testTag.getName()).isEqualTo(UPDATED_NAME);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository).save(testTag);
+        ArgumentCaptor<Object> indexed = ArgumentCaptor.forClass(Object.class);
+        verify(mockElasticsearchBulkIndexer).index(indexed.capture());
+        assertThat(indexed.getValue()).usingRecursiveComparison().isEqualTo(tagSearchDocumentMapper.tagToTagSearchDocument(testTag));
     }
 
     @Test
@@ -272,7 +310,7 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -295,7 +333,7 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -318,11 +356,42 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
+    }
+
+    @Test
+    void renameTagPropagatesToPosts() throws Exception {
+        // Configure the mock bulk indexer and search repository
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
+        when(mockPostSearchRepository.renameTag(DEFAULT_NAME, UPDATED_NAME)).thenReturn(Flux.empty());
+        // Initialize the database
+        tagRepository.save(tag).block();
+        Post post = new Post().title("title").content("content").date(Instant.now());
+        post.getTags().add(new Tag().id(tag.getId()).name(DEFAULT_NAME));
+        postRepository.save(post).block();
+
+        Tag partialUpdatedTag = new Tag().id(tag.getId()).name(UPDATED_NAME);
+
+        webTestClient
+            .patch()
+            .uri(ENTITY_API_URL_ID, partialUpdatedTag.getId())
+            .contentType(MediaType.valueOf("application/merge-patch+json"))
+            .bodyValue(TestUtil.convertObjectToJsonBytes(partialUpdatedTag))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        // The posts are updated in the background
+        verify(mockPostSearchRepository, timeout(5000)).renameTag(DEFAULT_NAME, UPDATED_NAME);
+        Post propagatedPost = postRepository.findById(post.getId()).block();
+        assertThat(propagatedPost.getTags()).extracting(Tag::getName).containsExactly(UPDATED_NAME);
+        postRepository.deleteById(post.getId()).block();
     }
 
     @Test
     void partialUpdateTagWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         tagRepository.save(tag).block();
 
@@ -352,6 +421,8 @@ class TagResourceIT {
 
     @Test
     void fullUpdateTagWithPatch() throws Exception {
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
         // Initialize the database
         tagRepository.save(tag).block();
 
@@ -399,7 +470,7 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -422,7 +493,7 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
@@ -445,14 +516,14 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeUpdate);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(0)).save(tag);
+        verify(mockElasticsearchBulkIndexer, times(0)).index(any());
     }
 
     @Test
     void deleteTag() {
-        // Configure the mock search repository
-        when(mockTagSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
-        when(mockTagSearchRepository.deleteById(anyString())).thenReturn(Mono.empty());
+        // Configure the mock bulk indexer
+        when(mockElasticsearchBulkIndexer.index(any())).thenReturn(Mono.empty());
+        when(mockElasticsearchBulkIndexer.delete(anyString(), any())).thenReturn(Mono.empty());
         // Initialize the database
         tagRepository.save(tag).block();
 
@@ -472,17 +543,17 @@ class TagResourceIT {
         assertThat(tagList).hasSize(databaseSizeBeforeDelete - 1);
 
         // Validate the Tag in Elasticsearch
-        verify(mockTagSearchRepository, times(1)).deleteById(tag.getId());
+        verify(mockElasticsearchBulkIndexer, times(1)).delete(tag.getId(), TagSearchDocument.class);
     }
 
     @Test
     void searchTag() {
         // Configure the mock search repository
         when(mockTagSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
-        when(mockTagSearchRepository.count()).thenReturn(Mono.just(1L));
         // Initialize the database
         tagRepository.save(tag).block();
-        when(mockTagSearchRepository.search("id:" + tag.getId(), PageRequest.of(0, 20))).thenReturn(Flux.just(tag));
+        when(mockTagSearchRepository.search("id:" + tag.getId(), PageRequest.of(0, 20), List.of()))
+            .thenReturn(Mono.just(TestUtil.searchResultOf(tagSearchDocumentMapper.tagToTagSearchDocument(tag))));
 
         // Search the tag
         webTestClient
@@ -492,6 +563,8 @@ class TagResourceIT {
             .expectStatus()
             .isOk()
             .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectHeader()
             .contentType(MediaType.APPLICATION_JSON)
             .expectBody()
             .jsonPath("$.[*].id")
@@ -499,4 +572,57 @@ class TagResourceIT {
             .jsonPath("$.[*].name")
             .value(hasItem(DEFAULT_NAME));
     }
+
+    @Test
+    void searchTagWithCursor() {
+        // Configure the mock search repository
+        when(mockTagSearchRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // Initialize the database
+        tagRepository.save(tag).block();
+        TagSearchDocument document = tagSearchDocumentMapper.tagToTagSearchDocument(tag);
+        SearchResult<TagSearchDocument> searchResult = new SearchResult<>(
+            TestUtil.searchResultOf(document).getSearchHits(),
+            1L,
+            "next-cursor"
+        );
+        when(mockTagSearchRepository.searchAfter("id:" + tag.getId(), Sort.unsorted(), 20, null, List.of()))
+            .thenReturn(Mono.just(searchResult));
+
+        // Search the first page of tags
+        webTestClient
+            .get()
+            .uri(ENTITY_SEARCH_API_URL + "?query=id:" + tag.getId() + "&cursor=")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Next-Cursor", "next-cursor")
+            .expectHeader()
+            .value(HttpHeaders.LINK, containsString("cursor=next-cursor"))
+            .expectBody()
+            .jsonPath("$.[*].id")
+            .value(hasItem(tag.getId()));
+    }
+
+    @Test
+    void suggestTags() {
+        // Configure the mock search repository
+        when(mockTagSearchRepository.suggestNames("AAA", 10)).thenReturn(Mono.just(List.of(DEFAULT_NAME)));
+
+        // Suggest the name of the tag
+        webTestClient
+            .get()
+            .uri("/api/_suggest/tags?prefix=AAA")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.[*]")
+            .value(hasItem(DEFAULT_NAME));
+    }
+
+    @Test
+    void suggestTagsWithTooManySuggestions() {
+        webTestClient.get().uri("/api/_suggest/tags?prefix=AAA&size=1000").exchange().expectStatus().isBadRequest();
+    }
 }
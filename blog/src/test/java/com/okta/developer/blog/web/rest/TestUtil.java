@@ -6,13 +6,20 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.okta.developer.blog.repository.search.SearchResult;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeDiagnosingMatcher;
 import org.hamcrest.TypeSafeMatcher;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsImpl;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
 
 /**
  * Utility class for testing REST controllers.
@@ -165,5 +172,20 @@ public final class TestUtil {
         assertThat(domainObject1).hasSameHashCodeAs(domainObject2);
     }
 
+    /**
+     * Create the search result returned by a search repository when the given entities are the only matches.
+     *
+     * @param entities the matching entities.
+     * @return the search result.
+     */
+    @SafeVarargs
+    public static <T> SearchResult<T> searchResultOf(T... entities) {
+        List<SearchHit<T>> hits = Arrays
+            .stream(entities)
+            .map(entity -> new SearchHit<>(null, null, null, 1.0f, null, null, entity))
+            .collect(Collectors.toList());
+        return new SearchResult<>(new SearchHitsImpl<>(hits.size(), TotalHitsRelation.EQUAL_TO, 1.0f, null, hits, null, null), 1L);
+    }
+
     private TestUtil() {}
 }